@@ -0,0 +1,60 @@
+package hartu.benchmarks;
+
+import hartu.protocols.constants.ActionTypes;
+import hartu.protocols.constants.MovementType;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Builds realistic task protocol messages for the benchmarks: joint values in radians with 6 decimals,
+ * positions in millimetres with 3 decimals. A fixed seed keeps them identical between runs.
+ */
+final class BenchmarkMessages
+{
+    private BenchmarkMessages() {}
+
+    /**
+     * A complete, '#'-terminated message. ACTIVATE_IO carries no points whatever {@code points} is;
+     * UNKNOWN produces a message the parser rejects, so its error path gets measured too.
+     */
+    static String command(ActionTypes actionType, int points)
+    {
+        if (actionType == ActionTypes.ACTIVATE_IO)
+        {
+            return actionType.getValue() + "|0||0|1|true|||0.5|bench-io#";
+        }
+        MovementType movementType = MovementType.fromActionType(actionType);
+        int valuesPerPoint = movementType.isCartesianMotion() ? 6 : 7;
+        return actionType.getValue() + "|" + points + "|" + points(points, valuesPerPoint) + "|0|0|false|tool|base|0.5|bench-" + points + "#";
+    }
+
+    private static String points(int points, int valuesPerPoint)
+    {
+        Random random = new Random(points * 31L + valuesPerPoint);
+        StringBuilder sb = new StringBuilder(points * valuesPerPoint * 12);
+        for (int point = 0; point < points; point++)
+        {
+            if (point > 0)
+            {
+                sb.append(',');
+            }
+            for (int value = 0; value < valuesPerPoint; value++)
+            {
+                if (value > 0)
+                {
+                    sb.append(';');
+                }
+                if (valuesPerPoint == 7 || value >= 3)
+                {
+                    sb.append(String.format(Locale.ROOT, "%.6f", (random.nextDouble() - 0.5) * 2 * Math.PI));
+                }
+                else
+                {
+                    sb.append(String.format(Locale.ROOT, "%.3f", (random.nextDouble() - 0.5) * 1600));
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
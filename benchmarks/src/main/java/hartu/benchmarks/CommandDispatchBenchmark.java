@@ -0,0 +1,66 @@
+package hartu.benchmarks;
+
+import hartu.protocols.constants.ActionTypes;
+import hartu.robot.commands.ParsedCommand;
+import hartu.robot.executor.CommandDispatcher;
+import hartu.robot.executor.SimulatedRobot;
+import hartu.robot.utils.CommandParser;
+import hartu.robot.utils.ParseCacheControl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CommandDispatcher} on a {@link SimulatedRobot}: the cost of the executor itself, handler lookup,
+ * cached frames and handing every point to the backend. The robot runs on a virtual clock, so its motions are
+ * timed but take no wall clock time. The message is parsed in full every time, with the parsed command cache off.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommandDispatchBenchmark
+{
+    @Param({"PTP_AXIS", "LIN_FRAME", "ACTIVATE_IO"})
+    public ActionTypes actionType;
+
+    @Param({"1", "100"})
+    public int points;
+
+    private String message;
+    private ParsedCommand command;
+    private CommandDispatcher<String> dispatcher;
+
+    @Setup
+    public void setUp()
+    {
+        ParseCacheControl.setEnabled(false);
+        message = BenchmarkMessages.command(actionType, points);
+        command = CommandParser.parseCommand(message);
+        dispatcher = new CommandDispatcher<>(new SimulatedRobot());
+    }
+
+    @Benchmark
+    public boolean dispatch()
+    {
+        return dispatcher.execute(command);
+    }
+
+    @Benchmark
+    public boolean parseAndDispatch()
+    {
+        return dispatcher.execute(CommandParser.parseCommand(message));
+    }
+}
@@ -0,0 +1,90 @@
+package hartu.benchmarks;
+
+import hartu.protocols.constants.ActionTypes;
+import hartu.robot.utils.CommandParser;
+import hartu.robot.utils.ParseCacheControl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CommandParser#parseCommand(String)} for every action type and message size.
+ * <p>
+ * {@code parseCommand} is the full parse, with the parsed command cache off. {@code parseCached} is the same
+ * message answered from the cache, which only holds messages up to 1024 characters: with more points it is
+ * a full parse again plus the cache key.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommandParserBenchmark
+{
+    // No values: every ActionTypes constant
+    @Param
+    public ActionTypes actionType;
+
+    @Param({"1", "10", "100", "5000"})
+    public int points;
+
+    private String message;
+
+    @Setup
+    public void setUp()
+    {
+        ParseCacheControl.setEnabled(false);
+        message = BenchmarkMessages.command(actionType, points);
+    }
+
+    /**
+     * The cache turned on and holding the benchmark message.
+     */
+    @State(Scope.Benchmark)
+    public static class WarmCache
+    {
+        @Setup
+        public void setUp(CommandParserBenchmark benchmark)
+        {
+            ParseCacheControl.setEnabled(true);
+            benchmark.parseCommand();
+        }
+
+        @TearDown
+        public void tearDown()
+        {
+            ParseCacheControl.setEnabled(false);
+        }
+    }
+
+    @Benchmark
+    public Object parseCommand()
+    {
+        try
+        {
+            return CommandParser.parseCommand(message);
+        }
+        catch (IllegalArgumentException e)
+        {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object parseCached(WarmCache cache)
+    {
+        return parseCommand();
+    }
+}
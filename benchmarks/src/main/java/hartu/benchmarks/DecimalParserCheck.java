@@ -0,0 +1,137 @@
+package hartu.benchmarks;
+
+import hartu.robot.utils.DecimalParser;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Randomized check that {@link DecimalParser} returns exactly the bits of {@link Double#parseDouble(String)},
+ * or fails with the same message, for every input. Each value is parsed from the middle of a longer text,
+ * like a field of a message. After the hand-written edge cases, each round checks 9 million values from a
+ * fixed seed:
+ * <ul>
+ * <li>2 million Double.toString of random bit patterns, every magnitude, NaN and Infinity included;</li>
+ * <li>2 million Double.toString of values up to 10^9;</li>
+ * <li>3 million random digit strings with optional sign, fraction and exponent, many beyond 53 bits;</li>
+ * <li>2 million fixed-point values with 0 to 6 decimals, like robot positions.</li>
+ * </ul>
+ *
+ *     java -cp target/benchmarks.jar hartu.benchmarks.DecimalParserCheck [rounds, default 1]
+ *
+ * Exits with 1 at the first mismatch.
+ */
+public class DecimalParserCheck
+{
+    private static final long SEED = 42;
+
+    private static final String[] EDGE_CASES = {
+            "", "-", "+", ".", "-.", "1.", ".5", "-0", "+0.0", "0e0", "1e", "1e+", "1e-", "1e400", "1e-400",
+            "NaN", "-Infinity", "0x1p3", " 1", "1 ", "1d", "1f", "1.2.3", "--1", "1e22", "1e23",
+            "9007199254740992", "9007199254740993", "9007199254740993e-5", "123456789012345678",
+            "1234567890123456789", "12e37", "12e38", "4.9e-324", "1.7976931348623157e308",
+            "00000000000000000000001.5", "0.000000000000000000000000000001", "1e99999999999", "1E5",
+            "-1.5E-3", "3.14159", "1,5", "e5", "1e5.0"
+    };
+
+    private final Random random = new Random(SEED);
+    private long checked = 0;
+
+    public static void main(String[] args)
+    {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        DecimalParserCheck check = new DecimalParserCheck();
+        for (String edgeCase : EDGE_CASES)
+        {
+            check.check(edgeCase);
+        }
+        for (int i = 0; i < 2000000 * rounds; i++)
+        {
+            check.check(Double.toString(Double.longBitsToDouble(check.random.nextLong())));
+        }
+        for (int i = 0; i < 2000000 * rounds; i++)
+        {
+            check.check(Double.toString((check.random.nextDouble() - 0.5) * Math.pow(10, check.random.nextInt(10))));
+        }
+        for (int i = 0; i < 3000000 * rounds; i++)
+        {
+            check.check(check.randomDecimal());
+        }
+        for (int i = 0; i < 2000000 * rounds; i++)
+        {
+            check.check(String.format(Locale.ROOT, "%." + check.random.nextInt(7) + "f", (check.random.nextDouble() - 0.5) * 2000));
+        }
+        System.out.println(check.checked + " values, all identical to Double.parseDouble.");
+    }
+
+    private void check(String value)
+    {
+        checked++;
+        String expected;
+        String actual;
+        try
+        {
+            expected = Long.toHexString(Double.doubleToRawLongBits(Double.parseDouble(value)));
+        }
+        catch (NumberFormatException e)
+        {
+            expected = "NumberFormatException: " + e.getMessage();
+        }
+        try
+        {
+            actual = Long.toHexString(Double.doubleToRawLongBits(DecimalParser.parseDouble("xx|" + value + "|yy", 3, 3 + value.length())));
+        }
+        catch (NumberFormatException e)
+        {
+            actual = "NumberFormatException: " + e.getMessage();
+        }
+        if (!expected.equals(actual))
+        {
+            System.out.println("Mismatch for '" + value + "' after " + checked + " values. Double.parseDouble: " + expected + ", DecimalParser: " + actual);
+            System.exit(1);
+        }
+    }
+
+    private String randomDecimal()
+    {
+        StringBuilder value = new StringBuilder();
+        int sign = random.nextInt(5);
+        if (sign == 0)
+        {
+            value.append('-');
+        }
+        else if (sign == 1)
+        {
+            value.append('+');
+        }
+        appendDigits(value, random.nextInt(12));
+        if (random.nextBoolean())
+        {
+            value.append('.');
+            appendDigits(value, random.nextInt(20));
+        }
+        if (random.nextInt(4) == 0)
+        {
+            value.append(random.nextBoolean() ? 'e' : 'E');
+            int exponentSign = random.nextInt(3);
+            if (exponentSign == 0)
+            {
+                value.append('-');
+            }
+            else if (exponentSign == 1)
+            {
+                value.append('+');
+            }
+            value.append(random.nextInt(60));
+        }
+        return value.toString();
+    }
+
+    private void appendDigits(StringBuilder value, int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            value.append((char) ('0' + random.nextInt(10)));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package hartu.benchmarks;
+
+import hartu.protocols.constants.ActionTypes;
+import hartu.robot.commands.ParsedCommand;
+import hartu.robot.utils.CommandParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ParsedCommand#toString()}, built whenever a parsed command is logged.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParsedCommandBenchmark
+{
+    @Param({"PTP_AXIS", "LIN_FRAME", "ACTIVATE_IO"})
+    public ActionTypes actionType;
+
+    @Param({"1", "10", "100", "5000"})
+    public int points;
+
+    private ParsedCommand command;
+
+    @Setup
+    public void setUp()
+    {
+        command = CommandParser.parseCommand(BenchmarkMessages.command(actionType, points));
+    }
+
+    @Benchmark
+    public String toStringCommand()
+    {
+        return command.toString();
+    }
+}
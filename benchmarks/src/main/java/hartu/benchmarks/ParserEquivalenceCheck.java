@@ -0,0 +1,178 @@
+package hartu.benchmarks;
+
+import hartu.protocols.constants.ActionTypes;
+import hartu.robot.commands.ParsedCommand;
+import hartu.robot.utils.CommandParser;
+import hartu.robot.utils.ParseCacheControl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Differential check of {@link CommandParser} against {@link SplitCommandParser}, the split-based parser it
+ * replaced: every message of the corpus must give the same command, or fail with the same exception and
+ * message, in both. The corpus is a list of hand-written edge cases plus random messages from a fixed seed,
+ * about a third of them malformed: bad numbers, wrong point or value counts, empty points, missing or extra
+ * fields, no terminator. Only syntax the split-based parser knew is generated. The parsed command cache is
+ * turned off, so every message goes through the scanner.
+ *
+ *     java -cp target/benchmarks.jar hartu.benchmarks.ParserEquivalenceCheck [random messages, default 200000]
+ *
+ * Exits with 1 after printing the first differences if there are any.
+ */
+public class ParserEquivalenceCheck
+{
+    private static final long SEED = 42;
+    private static final int DEFAULT_RANDOM_MESSAGES = 200000;
+    private static final int MAX_PRINTED_DIFFERENCES = 5;
+
+    private static final String[] EDGE_CASES = {
+            "", "#", "|||||||||#", "0|0||||||||#", "0|1|,|||||||x#",
+            "3|1|1;2;3;4;5;6|0|0|0|t|b|1|x|y#",
+            "9|0||0|1|true|||0.5|io#", "9|0||0|x|true|||0.5|io#",
+            "8|2|1;2;3;4;5;6,1;2;3;4;5;6,|0|0|0|t|b|0.5|c#",
+            "0|-1||0|0|0|t|b|0.5|n#", "100|0||0|0|0|t|b|0.5|p#",
+            "0|1|;;;;;;;|0|0|0|t|b|0.5|p#", "1|1|1;2;3;4;5;6;|0|0|0|t|b|0.5|p#",
+            "noterm"
+    };
+
+    // Numbers Double.parseDouble treats in its own way, or rejects
+    private static final String[] ODD_NUMBERS = {"", "abc", "1e3", "-0", " 2.5", "+3.", ".5", "NaN", "0x1p3"};
+
+    private final Random random = new Random(SEED);
+
+    public static void main(String[] args)
+    {
+        int randomMessages = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_RANDOM_MESSAGES;
+        ParseCacheControl.setEnabled(false);
+        List<String> corpus = new ParserEquivalenceCheck().corpus(randomMessages);
+        int rejected = 0;
+        int differences = 0;
+        for (String message : corpus)
+        {
+            String expected = parse(message, true);
+            String actual = parse(message, false);
+            if (expected.startsWith("Rejected"))
+            {
+                rejected++;
+            }
+            if (!expected.equals(actual) && differences++ < MAX_PRINTED_DIFFERENCES)
+            {
+                System.out.println("Difference for: " + message + "\n  split:   " + expected + "\n  scanner: " + actual);
+            }
+        }
+        System.out.println(corpus.size() + " messages, " + rejected + " rejected, differences: " + differences);
+        if (differences > 0)
+        {
+            System.exit(1);
+        }
+    }
+
+    private static String parse(String message, boolean split)
+    {
+        try
+        {
+            ParsedCommand command = split ? SplitCommandParser.parseCommand(message) : CommandParser.parseCommand(message);
+            return command.toString();
+        }
+        catch (Exception e)
+        {
+            return "Rejected, " + e.getClass().getName() + ": " + e.getMessage();
+        }
+    }
+
+    private List<String> corpus(int randomMessages)
+    {
+        List<String> corpus = new ArrayList<>(Arrays.asList(EDGE_CASES));
+        for (int i = 0; i < randomMessages; i++)
+        {
+            corpus.add(message() + (random.nextInt(50) == 0 ? "" : "#"));
+        }
+        return corpus;
+    }
+
+    private String message()
+    {
+        boolean malformed = random.nextInt(3) == 0;
+        int actionType = random.nextInt(10) < 8 ? random.nextInt(ActionTypes.LIN_REL_BASE.getValue() + 1) : random.nextInt(200) - 50;
+        int points = random.nextInt(5);
+        ActionTypes type = ActionTypes.fromValue(actionType);
+        boolean axis = type == ActionTypes.PTP_AXIS || type == ActionTypes.LIN_AXIS || type == ActionTypes.CIRC_AXIS || type == ActionTypes.PTP_AXIS_C;
+        int valuesPerPoint = axis ? 7 : 6;
+
+        StringBuilder targetPoints = new StringBuilder();
+        int writtenPoints = malformed && random.nextInt(5) == 0 ? points + random.nextInt(3) - 1 : points;
+        for (int i = 0; i < writtenPoints; i++)
+        {
+            if (i > 0)
+            {
+                targetPoints.append(',');
+            }
+            targetPoints.append(point(valuesPerPoint, malformed));
+        }
+        if (malformed && random.nextInt(8) == 0)
+        {
+            targetPoints.append(",,");
+        }
+        if (malformed && random.nextInt(15) == 0)
+        {
+            targetPoints.insert(0, ",");
+        }
+
+        String[] fields = {
+                malformed && random.nextInt(15) == 0 ? oddNumber() : String.valueOf(actionType),
+                malformed && random.nextInt(15) == 0 ? oddNumber() : String.valueOf(points),
+                targetPoints.toString(),
+                String.valueOf(random.nextInt(3)),
+                malformed && random.nextInt(5) == 0 ? oddNumber() : String.valueOf(random.nextInt(4)),
+                random.nextBoolean() ? "true" : random.nextBoolean() ? "TRUE" : "no",
+                random.nextBoolean() ? "tool1" : "",
+                random.nextBoolean() ? "base" : "",
+                malformed && random.nextInt(4) == 0 ? oddNumber() : String.valueOf(random.nextDouble() * 1.5),
+                "id" + random.nextInt(1000)
+        };
+        int fieldCount = malformed && random.nextInt(10) == 0 ? random.nextInt(12) : fields.length + (random.nextInt(10) == 0 ? 1 : 0);
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < fieldCount; i++)
+        {
+            if (i > 0)
+            {
+                message.append('|');
+            }
+            message.append(i < fields.length ? fields[i] : "extra");
+        }
+        return message.toString();
+    }
+
+    private String point(int valuesPerPoint, boolean malformed)
+    {
+        int values = malformed && random.nextInt(4) == 0 ? valuesPerPoint + random.nextInt(3) - 1 : valuesPerPoint;
+        StringBuilder point = new StringBuilder();
+        for (int i = 0; i < values; i++)
+        {
+            if (i > 0)
+            {
+                point.append(';');
+            }
+            // Millimetres with 3 decimals, the common case
+            point.append(malformed && random.nextInt(10) == 0 ? oddNumber() : String.valueOf(Math.round((random.nextDouble() - 0.5) * 2e6) / 1000.0));
+        }
+        if (malformed && random.nextInt(10) == 0)
+        {
+            point.append(";;");
+        }
+        return point.toString();
+    }
+
+    private String oddNumber()
+    {
+        int pick = random.nextInt(ODD_NUMBERS.length + 5);
+        if (pick < ODD_NUMBERS.length)
+        {
+            return ODD_NUMBERS[pick];
+        }
+        return String.valueOf((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(8) - 3));
+    }
+}
@@ -0,0 +1,212 @@
+package hartu.benchmarks;
+
+import hartu.protocols.constants.ActionTypes;
+import hartu.protocols.constants.MessagePartIndex;
+import hartu.protocols.constants.MovementType;
+import hartu.robot.commands.MotionParameters;
+import hartu.robot.commands.ParsedCommand;
+import hartu.robot.commands.io.IoCommandData;
+import hartu.robot.commands.positions.AxisPosition;
+import hartu.robot.commands.positions.CartesianPosition;
+import hartu.robot.communication.server.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link hartu.robot.utils.CommandParser} as it was before the in-place scanner: String.split and
+ * Double.parseDouble on every field. Kept unchanged as the reference {@link ParserEquivalenceCheck} compares
+ * the current parser against.
+ */
+final class SplitCommandParser
+{
+    private static final String PRIMARY_DELIMITER = "\\|";
+    private static final String SECONDARY_DELIMITER = ";";
+    private static final String MULTI_POINT_DELIMITER = ",";
+    private static final String MESSAGE_TERMINATOR = "#";
+
+    private SplitCommandParser() {}
+
+    static ParsedCommand parseCommand(String commandString) {
+        if (!commandString.endsWith(MESSAGE_TERMINATOR)) {
+            String errorMsg = "Command string must end with '" + MESSAGE_TERMINATOR + "'. Received: " + commandString;
+            Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+            throw new IllegalArgumentException(errorMsg);
+        }
+        return parseMessage(commandString.substring(0, commandString.length() - MESSAGE_TERMINATOR.length()));
+    }
+
+    /**
+     * Parses a message whose terminator has already been stripped by the frame decoder.
+     */
+    static ParsedCommand parseMessage(String cleanCommand) {
+        Logger.getInstance().log("PARSER", "Attempting to parse command: " + cleanCommand);
+
+        String[] parts = cleanCommand.split(PRIMARY_DELIMITER, -1);
+
+        final int EXPECTED_MIN_PARTS = MessagePartIndex.values().length;
+        if (parts.length < EXPECTED_MIN_PARTS) {
+            String errorMsg = "Invalid number of parts. Expected at least " + EXPECTED_MIN_PARTS + ", got " + parts.length + ". Command: " + cleanCommand + MESSAGE_TERMINATOR;
+            Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+            throw new IllegalArgumentException(errorMsg);
+        }
+
+        ActionTypes actionType;
+        int numPoints;
+        String id;
+        try {
+            actionType = ActionTypes.fromValue(Integer.parseInt(parts[MessagePartIndex.ACTION_TYPE.getIndex()]));
+            numPoints = Integer.parseInt(parts[MessagePartIndex.NUM_POINTS.getIndex()]);
+            id = parts[MessagePartIndex.ID.getIndex()];
+        } catch (NumberFormatException e) {
+            String errorMsg = "Invalid number format for ActionType, NumPoints, or ID: " + e.getMessage();
+            Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+            throw new IllegalArgumentException(errorMsg, e);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            String errorMsg = "Missing ActionType, NumPoints, or ID part in command string: " + e.getMessage();
+            Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+            throw new IllegalArgumentException(errorMsg, e);
+        }
+
+        boolean isContinuous = MovementType.fromActionType(actionType).isContinuous();
+
+        String tool = "";
+        String base = "";
+        double speedOverride = 0.0;
+        try {
+            tool = parts[MessagePartIndex.TOOL.getIndex()];
+            base = parts[MessagePartIndex.BASE.getIndex()];
+            speedOverride = Double.parseDouble(parts[MessagePartIndex.SPEED_OVERRIDE.getIndex()]);
+        } catch (NumberFormatException e) {
+            Logger.getInstance().log("PARSER", "Warning: Could not parse MotionParameters (NumberFormat). Using defaults. " + e.getMessage());
+        } catch (ArrayIndexOutOfBoundsException e) {
+            Logger.getInstance().log("PARSER", "Warning: MotionParameters fields missing (ArrayIndexOutOfBounds). Using defaults. " + e.getMessage());
+        }
+        MotionParameters motionParameters = new MotionParameters(speedOverride, tool, base, isContinuous, numPoints);
+
+        List<AxisPosition> axisTargetPoints = null;
+        List<CartesianPosition> cartesianTargetPoints = null;
+        IoCommandData ioCommandData = null;
+        Integer programId = null;
+
+        switch (actionType) {
+            case PTP_AXIS:
+            case PTP_AXIS_C:
+            case LIN_AXIS:
+            case CIRC_AXIS:
+                try {
+                    axisTargetPoints = parseAxisPositions(parts[MessagePartIndex.TARGET_POINTS.getIndex()]);
+                    if (axisTargetPoints.size() != numPoints) {
+                        String errorMsg = "Parsed NUM_POINTS (" + numPoints + ") does not match actual parsed axis points (" + axisTargetPoints.size() + ").";
+                        Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+                        throw new IllegalArgumentException(errorMsg);
+                    }
+                    return ParsedCommand.forAxisMovement(actionType, id, axisTargetPoints, motionParameters);
+                } catch (ArrayIndexOutOfBoundsException e) {
+                    String errorMsg = "Missing TARGET_POINTS part for Axis movement: " + e.getMessage();
+                    Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+                    throw new IllegalArgumentException(errorMsg, e);
+                }
+
+            case PTP_FRAME:
+            case PTP_FRAME_C:
+            case LIN_FRAME:
+            case LIN_FRAME_C:
+            case LIN_REL_TOOL:
+            case LIN_REL_BASE:
+            case CIRC_FRAME:
+                try {
+                    cartesianTargetPoints = parseCartesianPositions(parts[MessagePartIndex.TARGET_POINTS.getIndex()]);
+                    if (cartesianTargetPoints.size() != numPoints) {
+                        String errorMsg = "Parsed NUM_POINTS (" + numPoints + ") does not match actual parsed Cartesian points (" + cartesianTargetPoints.size() + ").";
+                        Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+                        throw new IllegalArgumentException(errorMsg);
+                    }
+                    return ParsedCommand.forCartesianMovement(actionType, id, cartesianTargetPoints, motionParameters);
+                } catch (ArrayIndexOutOfBoundsException e) {
+                    String errorMsg = "Missing TARGET_POINTS part for Cartesian movement: " + e.getMessage();
+                    Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+                    throw new IllegalArgumentException(errorMsg, e);
+                }
+
+            case ACTIVATE_IO:
+                try {
+                    int ioPoint = 0; //TODO: Handle ioPoint instead of hardcoding for testing
+                    int ioPin = Integer.parseInt(parts[MessagePartIndex.IO_PIN.getIndex()]);
+                    boolean ioState = Boolean.parseBoolean(parts[MessagePartIndex.IO_STATE.getIndex()]);
+                    ioCommandData = new IoCommandData(ioPoint, ioPin, ioState);
+                    return ParsedCommand.forIo(actionType, id, ioCommandData);
+                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    String errorMsg = "Invalid IO command data format for ACTIVATE_IO: " + e.getMessage();
+                    Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+                    throw new IllegalArgumentException(errorMsg, e);
+                }
+
+            case UNKNOWN:
+            default:
+                String errorMsg = "Unknown or unsupported ActionType: " + actionType.getValue() + " in command: " + cleanCommand + MESSAGE_TERMINATOR;
+                Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+                throw new IllegalArgumentException(errorMsg);
+        }
+    }
+
+    private static List<AxisPosition> parseAxisPositions(String axisPositionsString) {
+        List<AxisPosition> positions = new ArrayList<>();
+        String[] individualPointStrings = axisPositionsString.split(MULTI_POINT_DELIMITER);
+
+        for (String pointString : individualPointStrings) {
+            String[] jointValues = pointString.split(SECONDARY_DELIMITER);
+            if (jointValues.length != 7) {
+                String errorMsg = "Invalid axis position format: Expected 7 joint values (J1-J7), got " + jointValues.length + " in point string: " + pointString;
+                Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+                throw new IllegalArgumentException(errorMsg);
+            }
+
+            try {
+                double j1 = Double.parseDouble(jointValues[0]);
+                double j2 = Double.parseDouble(jointValues[1]);
+                double j3 = Double.parseDouble(jointValues[2]);
+                double j4 = Double.parseDouble(jointValues[3]);
+                double j5 = Double.parseDouble(jointValues[4]);
+                double j6 = Double.parseDouble(jointValues[5]);
+                double j7 = Double.parseDouble(jointValues[6]);
+                positions.add(new AxisPosition(j1, j2, j3, j4, j5, j6, j7));
+            } catch (NumberFormatException e) {
+                String errorMsg = "Invalid number format in axis positions: " + e.getMessage() + " for point string: " + pointString;
+                Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+                throw new IllegalArgumentException(errorMsg, e);
+            }
+        }
+        return positions;
+    }
+
+    private static List<CartesianPosition> parseCartesianPositions(String cartesianPositionsString) {
+        List<CartesianPosition> positions = new ArrayList<>();
+        String[] individualPointStrings = cartesianPositionsString.split(MULTI_POINT_DELIMITER);
+
+        for (String pointString : individualPointStrings) {
+            String[] values = pointString.split(SECONDARY_DELIMITER);
+            if (values.length != 6) {
+                String errorMsg = "Invalid Cartesian position format: Expected 6 values (X;Y;Z;A;B;C), got " + values.length + " in point string: " + pointString;
+                Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+                throw new IllegalArgumentException(errorMsg);
+            }
+
+            try {
+                double x = Double.parseDouble(values[0]);
+                double y = Double.parseDouble(values[1]);
+                double z = Double.parseDouble(values[2]);
+                double a = Double.parseDouble(values[3]);
+                double b = Double.parseDouble(values[4]);
+                double c = Double.parseDouble(values[5]);
+                positions.add(new CartesianPosition(x, y, z, a, b, c));
+            } catch (NumberFormatException e) {
+                String errorMsg = "Invalid number format in Cartesian positions: " + e.getMessage() + " for point string: " + pointString;
+                Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+                throw new IllegalArgumentException(errorMsg, e);
+            }
+        }
+        return positions;
+    }
+}
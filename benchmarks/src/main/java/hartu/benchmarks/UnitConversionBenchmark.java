@@ -0,0 +1,111 @@
+package hartu.benchmarks;
+
+import hartu.robot.utils.AngularUnit;
+import hartu.robot.utils.LinearUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link LinearUnit} and {@link AngularUnit} conversions, per converted value, over a trajectory-sized
+ * array so the loop shape matches converting the points of one large command.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UnitConversionBenchmark
+{
+    private static final int VALUES = 6000;
+
+    @Param({"M", "INCH"})
+    public LinearUnit linearUnit;
+
+    private double[] values;
+    private double[] converted;
+
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(42);
+        values = new double[VALUES];
+        converted = new double[VALUES];
+        for (int i = 0; i < VALUES; i++)
+        {
+            values[i] = (random.nextDouble() - 0.5) * 2;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public double[] linearToMillimetres()
+    {
+        for (int i = 0; i < VALUES; i++)
+        {
+            converted[i] = linearUnit.convertTo(values[i], LinearUnit.MM);
+        }
+        return converted;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public double[] radiansToDegrees()
+    {
+        for (int i = 0; i < VALUES; i++)
+        {
+            converted[i] = AngularUnit.RADIAN.convertTo(values[i], AngularUnit.DEGREE);
+        }
+        return converted;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public double[] linearToMillimetresInPlace()
+    {
+        System.arraycopy(values, 0, converted, 0, VALUES);
+        linearUnit.convertInPlace(converted, 0, VALUES, 1, LinearUnit.MM);
+        return converted;
+    }
+
+    /**
+     * One coordinate of back to back Cartesian points, six values apart, as done for every declared unit.
+     * Converted there and back so the values stay put without copying the whole array.
+     */
+    @Benchmark
+    @OperationsPerInvocation(2 * (VALUES / 6))
+    public double[] linearToMillimetresStrided()
+    {
+        linearUnit.convertInPlace(values, 0, VALUES / 6, 6, LinearUnit.MM);
+        LinearUnit.MM.convertInPlace(values, 0, VALUES / 6, 6, linearUnit);
+        return values;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VALUES)
+    public double[] radiansToDegreesInPlace()
+    {
+        System.arraycopy(values, 0, converted, 0, VALUES);
+        AngularUnit.RADIAN.convertInPlace(converted, 0, VALUES, 1, AngularUnit.DEGREE);
+        return converted;
+    }
+
+    @Benchmark
+    public LinearUnit linearFromString()
+    {
+        return LinearUnit.fromString("inch");
+    }
+}
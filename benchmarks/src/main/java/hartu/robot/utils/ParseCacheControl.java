@@ -0,0 +1,21 @@
+package hartu.robot.utils;
+
+/**
+ * Lets the benchmarks and checks reach the package-private switch of the parsed command cache, so they can
+ * time or compare the full parse instead of cache hits. Part of the benchmark module only, the robot never
+ * turns the cache off.
+ */
+public final class ParseCacheControl
+{
+    private ParseCacheControl()
+    {
+    }
+
+    /**
+     * Turns the cache of {@link CommandParser} on or off, emptying it either way.
+     */
+    public static void setEnabled(boolean enabled)
+    {
+        CommandParser.setParseCacheEnabled(enabled);
+    }
+}
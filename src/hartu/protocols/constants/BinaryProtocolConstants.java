@@ -0,0 +1,52 @@
+package hartu.protocols.constants;
+
+import java.nio.ByteOrder;
+
+/**
+ * Layout of the compact binary task protocol, selected per session with "PROTOCOL|BINARY#".
+ * <p>
+ * Every frame is a little-endian int32 payload length followed by the payload; there is no terminator.
+ * A command payload is a fixed 32-byte header, then the ID, tool and base as ASCII, then
+ * NUM_POINTS points of 7 (axis) or 6 (Cartesian) IEEE-754 doubles:
+ * <pre>
+ *  0  int16   action type          16  int32   IO point
+ *  2  uint8   flags (bit 0: IO on) 20  int32   IO pin
+ *  3  uint8   reserved             24  uint16  ID length
+ *  4  int32   number of points     26  uint16  tool length
+ *  8  float64 speed override       28  uint16  base length
+ *                                  30  uint16  reserved
+ * </pre>
+ * A response payload is a uint8 response type (FREE or BUSY), a uint8 success flag, a uint16 ID length and the ID.
+ */
+public class BinaryProtocolConstants
+{
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    public static final int LENGTH_PREFIX_SIZE = 4;
+
+    public static final int COMMAND_HEADER_SIZE = 32;
+
+    public static final int OFFSET_ACTION_TYPE = 0;
+    public static final int OFFSET_FLAGS = 2;
+    public static final int OFFSET_NUM_POINTS = 4;
+    public static final int OFFSET_SPEED_OVERRIDE = 8;
+    public static final int OFFSET_IO_POINT = 16;
+    public static final int OFFSET_IO_PIN = 20;
+    public static final int OFFSET_ID_LENGTH = 24;
+    public static final int OFFSET_TOOL_LENGTH = 26;
+    public static final int OFFSET_BASE_LENGTH = 28;
+
+    public static final int FLAG_IO_STATE = 0x01;
+
+    public static final int AXIS_VALUES_PER_POINT = 7;
+
+    public static final int CARTESIAN_VALUES_PER_POINT = 6;
+
+    public static final int RESPONSE_HEADER_SIZE = 4;
+
+    public static final byte RESPONSE_FREE = 1;
+
+    public static final byte RESPONSE_BUSY = 2;
+
+    private BinaryProtocolConstants() {}
+}
@@ -1,5 +1,8 @@
 package hartu.protocols.constants;
 
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
 public class ProtocolConstants
 {
 
@@ -13,10 +16,55 @@ public class ProtocolConstants
 
     public static final String MULTI_POINT_DELIMITER = ",";
 
+    // Sent instead of FREE when a pipelined command is refused because the command queue is full: "BUSY|<id>#"
+    public static final String BUSY_RESPONSE_PREFIX = "BUSY|";
+
+    // Streamed continuous motion, fields needed to start before the points:
+    // "STREAM|<action type>|<num points>|<tool>|<base>|<speed override>|<id>|<point>,<point>,...#"
+    public static final String STREAM_MESSAGE_PREFIX = "STREAM|";
+
+    // Trajectory upload to the off-heap store, acknowledged with "FREE|<trajectory id>#":
+    // "STORE|<trajectory id>|<AXIS or FRAME>|<num points>|<point>,<point>,...#"
+    // Commands then run it with "@<trajectory id>" as their target points.
+    public static final String STORE_MESSAGE_PREFIX = "STORE|";
+
+    // Drops a stored trajectory once the commands running it are done: "RELEASE|<trajectory id>#"
+    public static final String RELEASE_MESSAGE_PREFIX = "RELEASE|";
+
+    // Trajectory upload to the content-addressed cache, answered with "CACHED|<content hash>#":
+    // "CACHE|<AXIS or FRAME>|<num points>|<point>,<point>,...#"
+    // Commands then run it with "$<content hash>" as their target points.
+    public static final String CACHE_MESSAGE_PREFIX = "CACHE|";
+
+    public static final String CACHED_RESPONSE_PREFIX = "CACHED|";
+
+    // Sent instead of FREE when a command names a hash that is not cached (any more): "MISS|<id>#".
+    // The client uploads the trajectory again and resends the command.
+    public static final String MISS_RESPONSE_PREFIX = "MISS|";
+
+    // Command latency query, answered in order with the commands: "LATENCY|#" for all action types,
+    // "LATENCY|<action type>#" for one, "LATENCY|RESET#" to start over. Answered with
+    // "LATENCY|<action type>,<interval>,<count>,<p50 us>,<p90 us>,<p99 us>,<max us>;...#"
+    public static final String LATENCY_MESSAGE_PREFIX = "LATENCY|";
+
+    public static final String LATENCY_RESET = "RESET";
+
+    public static final char LOG_LINE_TERMINATOR = '\n';
+
+    public static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    // Wire format negotiation, sent by a task client after INITIAL_TASK_CLIENT_RESPONSE: "PROTOCOL|BINARY#"
+    public static final String PROTOCOL_NEGOTIATION_PREFIX = "PROTOCOL|";
+
+    public static final String PROTOCOL_ASCII = "ASCII";
+
+    public static final String PROTOCOL_BINARY = "BINARY";
+
     public enum ListenerType
     { // Renamed from ClientType
         TASK_LISTENER("Task Listener", 0),
-        LOG_LISTENER("Log Listener", 1);
+        LOG_LISTENER("Log Listener", 1),
+        TELEMETRY_LISTENER("Telemetry Listener", 2);
 
         private final String name;
         private final int value;
@@ -0,0 +1,34 @@
+package hartu.protocols.constants;
+
+import java.nio.ByteOrder;
+
+/**
+ * Layout of the UDP setpoint stream used for teleoperation and visual servoing.
+ * <p>
+ * Every datagram carries exactly one setpoint, little-endian:
+ * <pre>
+ *  0  int64   sequence number, strictly increasing per stream
+ *  8  int64   sender timestamp in nanoseconds (opaque to the server, echoed for latency measurements)
+ * 16  uint8   setpoint type, see {@link #TYPE_AXIS} and {@link #TYPE_CARTESIAN}
+ * 17  7 bytes reserved
+ * 24  float64[7] values: J1..J7 in radians, or X;Y;Z in mm and A;B;C in radians (last slot unused)
+ * </pre>
+ */
+public class SetpointProtocolConstants
+{
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    public static final int OFFSET_SEQUENCE = 0;
+    public static final int OFFSET_SENDER_TIMESTAMP = 8;
+    public static final int OFFSET_TYPE = 16;
+    public static final int OFFSET_VALUES = 24;
+
+    public static final int VALUE_SLOTS = 7;
+
+    public static final int PACKET_SIZE = OFFSET_VALUES + VALUE_SLOTS * 8;
+
+    public static final byte TYPE_AXIS = 0;
+    public static final byte TYPE_CARTESIAN = 1;
+
+    private SetpointProtocolConstants() {}
+}
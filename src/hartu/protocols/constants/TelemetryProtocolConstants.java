@@ -0,0 +1,52 @@
+package hartu.protocols.constants;
+
+import java.nio.ByteOrder;
+
+/**
+ * Layout of the robot state telemetry stream.
+ * <p>
+ * Frames are length-prefixed like the binary task protocol (little-endian int32 payload length).
+ * Every sample carries {@link #VALUE_COUNT} values quantized to int32: J1..J7 measured positions,
+ * J1..J7 external torques, then the TCP pose X;Y;Z;A;B;C. A payload starts with a 16-byte header:
+ * <pre>
+ *  0  uint8   frame type, {@link #FRAME_KEYFRAME} or {@link #FRAME_DELTA}
+ *  1  uint8   value count
+ *  2  uint16  reserved
+ *  4  int32   sample sequence number (gaps show downsampling or skipped frames)
+ *  8  int64   sample time in microseconds since the epoch
+ * </pre>
+ * A keyframe continues with all values as int32. A delta frame continues with an int32 bit mask of the
+ * values that changed since the previous frame of the same subscriber, followed by one zigzag varint
+ * difference per set bit, lowest bit first.
+ */
+public class TelemetryProtocolConstants
+{
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    public static final int LENGTH_PREFIX_SIZE = 4;
+
+    public static final int HEADER_SIZE = 16;
+
+    public static final int OFFSET_FRAME_TYPE = 0;
+    public static final int OFFSET_VALUE_COUNT = 1;
+    public static final int OFFSET_SEQUENCE = 4;
+    public static final int OFFSET_TIMESTAMP = 8;
+
+    public static final byte FRAME_KEYFRAME = 1;
+    public static final byte FRAME_DELTA = 2;
+
+    public static final int JOINT_COUNT = 7;
+    public static final int POSE_VALUE_COUNT = 6;
+    public static final int VALUE_COUNT = 2 * JOINT_COUNT + POSE_VALUE_COUNT;
+
+    // Quantization steps: 1 microradian, 1 mNm, 1 micrometer
+    public static final double ANGLE_SCALE = 1.0e6;
+    public static final double TORQUE_SCALE = 1.0e3;
+    public static final double POSITION_SCALE = 1.0e3;
+
+    // Control lines a telemetry client may send, '\n' terminated
+    public static final String RATE_REQUEST_PREFIX = "RATE|";
+    public static final String KEYFRAME_REQUEST = "KEYFRAME";
+
+    private TelemetryProtocolConstants() {}
+}
@@ -12,31 +12,53 @@ public class ParsedCommand
     private final ActionTypes actionType;
     private final String id;
 
-    private final List<AxisPosition> axisTargetPoints;
-    private final List<CartesianPosition> cartesianTargetPoints;
+    private final TrajectoryBuffer trajectory;
     private final MotionParameters motionParameters;
+    private final StreamingTrajectory streamingTrajectory;
     private final IoCommandData ioCommandData;
     private final Integer programId;
 
-    private ParsedCommand(ActionTypes actionType, String id, List<AxisPosition> axisTargetPoints, List<CartesianPosition> cartesianTargetPoints, MotionParameters motionParameters, IoCommandData ioCommandData, Integer programId)
+    private ParsedCommand(ActionTypes actionType, String id, TrajectoryBuffer trajectory, StreamingTrajectory streamingTrajectory, MotionParameters motionParameters, IoCommandData ioCommandData, Integer programId)
     {
         this.actionType = actionType;
         this.id = id;
-        this.axisTargetPoints = axisTargetPoints;
-        this.cartesianTargetPoints = cartesianTargetPoints;
+        this.trajectory = trajectory;
+        this.streamingTrajectory = streamingTrajectory;
         this.motionParameters = motionParameters;
         this.ioCommandData = ioCommandData;
         this.programId = programId;
     }
 
+    /**
+     * A motion over the points of {@code trajectory}, axis or Cartesian.
+     */
+    public static ParsedCommand forMovement(ActionTypes actionType, String id, TrajectoryBuffer trajectory, MotionParameters motionParameters)
+    {
+        return new ParsedCommand(actionType, id, trajectory, null, motionParameters, null, null);
+    }
+
+    /**
+     * Copies the points into a {@link TrajectoryBuffer}; prefer {@link #forMovement} when the values are already in an array.
+     */
     public static ParsedCommand forAxisMovement(ActionTypes actionType, String id, List<AxisPosition> axisTargetPoints, MotionParameters motionParameters)
     {
-        return new ParsedCommand(actionType, id, axisTargetPoints, null, motionParameters, null, null);
+        return forMovement(actionType, id, TrajectoryBuffer.fromAxisPositions(axisTargetPoints), motionParameters);
     }
 
+    /**
+     * Copies the points into a {@link TrajectoryBuffer}; prefer {@link #forMovement} when the values are already in an array.
+     */
     public static ParsedCommand forCartesianMovement(ActionTypes actionType, String id, List<CartesianPosition> cartesianTargetPoints, MotionParameters motionParameters)
     {
-        return new ParsedCommand(actionType, id, null, cartesianTargetPoints, motionParameters, null, null);
+        return forMovement(actionType, id, TrajectoryBuffer.fromCartesianPositions(cartesianTargetPoints), motionParameters);
+    }
+
+    /**
+     * A motion whose points are still arriving. Its trajectory is null, the points are read from the streaming trajectory.
+     */
+    public static ParsedCommand forStreamedMovement(ActionTypes actionType, String id, StreamingTrajectory streamingTrajectory, MotionParameters motionParameters)
+    {
+        return new ParsedCommand(actionType, id, null, streamingTrajectory, motionParameters, null, null);
     }
 
     public static ParsedCommand forIo(ActionTypes actionType, String id, IoCommandData ioCommandData)
@@ -49,6 +71,14 @@ public class ParsedCommand
         return new ParsedCommand(actionType, id, null, null, null, null, programId);
     }
 
+    /**
+     * The same command under another ID. Everything else is shared, which is safe since commands are immutable.
+     */
+    public ParsedCommand withId(String newId)
+    {
+        return new ParsedCommand(actionType, newId, trajectory, streamingTrajectory, motionParameters, ioCommandData, programId);
+    }
+
     public ActionTypes getActionType()
     {
         return actionType;
@@ -59,14 +89,33 @@ public class ParsedCommand
         return id;
     }
 
+    /**
+     * The target points, or null for streamed motions and non-motion commands.
+     */
+    public TrajectoryBuffer getTrajectory()
+    {
+        return trajectory;
+    }
+
+    /**
+     * Read-only view of the axis target points, or null if this is not an axis motion.
+     */
     public List<AxisPosition> getAxisTargetPoints()
     {
-        return axisTargetPoints;
+        return trajectory != null && !trajectory.isCartesian() ? trajectory.asAxisPositions() : null;
     }
 
+    /**
+     * Read-only view of the Cartesian target points, or null if this is not a Cartesian motion.
+     */
     public List<CartesianPosition> getCartesianTargetPoints()
     {
-        return cartesianTargetPoints;
+        return trajectory != null && trajectory.isCartesian() ? trajectory.asCartesianPositions() : null;
+    }
+
+    public StreamingTrajectory getStreamingTrajectory()
+    {
+        return streamingTrajectory;
     }
 
     public MotionParameters getMotionParameters()
@@ -86,7 +135,12 @@ public class ParsedCommand
 
     public boolean isMovementCommand()
     {
-        return (axisTargetPoints != null || cartesianTargetPoints != null) && programId == null;
+        return (trajectory != null || streamingTrajectory != null) && programId == null;
+    }
+
+    public boolean isStreamed()
+    {
+        return streamingTrajectory != null;
     }
 
     public boolean isIoCommand()
@@ -119,28 +173,41 @@ public class ParsedCommand
         if (isMovementCommand())
         {
             sb.append("  --- Movement Command ---\n");
-            if (axisTargetPoints != null && !axisTargetPoints.isEmpty())
+            if (trajectory != null && trajectory.isStored())
             {
-                sb.append("  Axis Target Points (").append(axisTargetPoints.size()).append("):\n");
-                for (int i = 0; i < axisTargetPoints.size(); i++)
-                {
-                    AxisPosition pos = axisTargetPoints.get(i);
-                    sb.append("    Point ").append(i + 1).append(": J1=").append(pos.getJ1()).append(", J2=").append(pos.getJ2()).append(
-                            ", J3=").append(pos.getJ3()).append(", J4=").append(pos.getJ4()).append(", J5=").append(pos.getJ5()).append(
-                            ", J6=").append(pos.getJ6()).append(", J7=").append(pos.getJ7()).append("\n");
-                }
+                // Stored paths are long and logged with every command running them, the ID identifies the points
+                sb.append("  Stored Trajectory: ").append(trajectory.getStoredId()).append(" (").append(trajectory.getPointCount()).append(
+                        trajectory.isCartesian() ? " Cartesian" : " axis").append(" points)\n");
             }
-            if (cartesianTargetPoints != null && !cartesianTargetPoints.isEmpty())
+            else if (trajectory != null && trajectory.getPointCount() > 0)
             {
-                sb.append("  Cartesian Target Points (").append(cartesianTargetPoints.size()).append("):\n");
-                for (int i = 0; i < cartesianTargetPoints.size(); i++)
+                int points = trajectory.getPointCount();
+                if (!trajectory.isCartesian())
+                {
+                    sb.append("  Axis Target Points (").append(points).append("):\n");
+                    for (int i = 0; i < points; i++)
+                    {
+                        sb.append("    Point ").append(i + 1).append(": J1=").append(trajectory.get(i, 0)).append(", J2=").append(trajectory.get(i, 1)).append(
+                                ", J3=").append(trajectory.get(i, 2)).append(", J4=").append(trajectory.get(i, 3)).append(", J5=").append(trajectory.get(i, 4)).append(
+                                ", J6=").append(trajectory.get(i, 5)).append(", J7=").append(trajectory.get(i, 6)).append("\n");
+                    }
+                }
+                else
                 {
-                    CartesianPosition pos = cartesianTargetPoints.get(i);
-                    sb.append("    Point ").append(i + 1).append(": X=").append(pos.getX()).append(", Y=").append(pos.getY()).append(
-                            ", Z=").append(pos.getZ()).append(", A=").append(pos.getA()).append(", B=").append(pos.getB()).append(
-                            ", C=").append(pos.getC()).append("\n");
+                    sb.append("  Cartesian Target Points (").append(points).append("):\n");
+                    for (int i = 0; i < points; i++)
+                    {
+                        sb.append("    Point ").append(i + 1).append(": X=").append(trajectory.get(i, 0)).append(", Y=").append(trajectory.get(i, 1)).append(
+                                ", Z=").append(trajectory.get(i, 2)).append(", A=").append(trajectory.get(i, 3)).append(", B=").append(trajectory.get(i, 4)).append(
+                                ", C=").append(trajectory.get(i, 5)).append("\n");
+                    }
                 }
             }
+            if (streamingTrajectory != null)
+            {
+                sb.append("  Streamed Target Points: ").append(streamingTrajectory.getAvailablePoints()).append(" of ").append(
+                        streamingTrajectory.getExpectedPoints()).append(" received\n");
+            }
             if (motionParameters != null)
             {
                 sb.append("  Motion Parameters:\n");
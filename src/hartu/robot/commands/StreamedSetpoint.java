@@ -0,0 +1,72 @@
+package hartu.robot.commands;
+
+import java.util.Arrays;
+
+/**
+ * One setpoint received on the UDP setpoint stream. Immutable, so the receiver can publish it
+ * to the servo executor through a single reference without copying.
+ */
+public class StreamedSetpoint
+{
+    private final long sequence;
+    private final long senderTimestampNanos;
+    private final long receivedNanos;
+    private final boolean cartesian;
+    private final double[] values;
+
+    public StreamedSetpoint(long sequence, long senderTimestampNanos, long receivedNanos, boolean cartesian, double[] values)
+    {
+        this.sequence = sequence;
+        this.senderTimestampNanos = senderTimestampNanos;
+        this.receivedNanos = receivedNanos;
+        this.cartesian = cartesian;
+        this.values = values;
+    }
+
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    public long getSenderTimestampNanos()
+    {
+        return senderTimestampNanos;
+    }
+
+    /**
+     * {@link System#nanoTime()} at which the datagram was taken off the socket.
+     */
+    public long getReceivedNanos()
+    {
+        return receivedNanos;
+    }
+
+    public boolean isCartesian()
+    {
+        return cartesian;
+    }
+
+    /**
+     * Returns the value at the given slot: joint index for axis setpoints, X;Y;Z;A;B;C for Cartesian ones.
+     */
+    public double getValue(int index)
+    {
+        return values[index];
+    }
+
+    public int getValueCount()
+    {
+        return values.length;
+    }
+
+    public double[] getValues()
+    {
+        return values.clone();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "StreamedSetpoint {seq=" + sequence + ", " + (cartesian ? "CARTESIAN" : "AXIS") + " " + Arrays.toString(values) + "}";
+    }
+}
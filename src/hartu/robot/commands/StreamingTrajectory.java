@@ -0,0 +1,208 @@
+package hartu.robot.commands;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Target points of a streamed motion command that grow while the message is still being received.
+ * <p>
+ * The receiving side appends points as they are decoded and finally marks the trajectory complete, or
+ * failed if the rest of the message turns out to be invalid or never arrives. The executor may start on
+ * the first points right away and uses {@link #awaitPoints} to wait for the next ones.
+ */
+public class StreamingTrajectory
+{
+    private static final int INITIAL_POINT_CAPACITY = 64;
+
+    private final int valuesPerPoint;
+    private final int expectedPoints;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    // All guarded by lock
+    private double[] values;
+    private int availablePoints = 0;
+    private boolean complete = false;
+    private String failure = null;
+
+    /**
+     * @param valuesPerPoint 7 for axis motions, 6 for Cartesian motions.
+     * @param expectedPoints NUM_POINTS announced by the client.
+     */
+    public StreamingTrajectory(int valuesPerPoint, int expectedPoints)
+    {
+        this.valuesPerPoint = valuesPerPoint;
+        this.expectedPoints = expectedPoints;
+        this.values = new double[valuesPerPoint * Math.max(1, Math.min(expectedPoints, INITIAL_POINT_CAPACITY))];
+    }
+
+    public int getValuesPerPoint()
+    {
+        return valuesPerPoint;
+    }
+
+    public int getExpectedPoints()
+    {
+        return expectedPoints;
+    }
+
+    /**
+     * Appends one point, {@code pointValues} holds {@link #getValuesPerPoint()} values.
+     * @return false if the trajectory has failed meanwhile; the point is dropped.
+     */
+    public boolean appendPoint(double[] pointValues)
+    {
+        lock.lock();
+        try
+        {
+            if (complete)
+            {
+                throw new IllegalStateException("Trajectory is already complete.");
+            }
+            if (failure != null)
+            {
+                return false;
+            }
+            int offset = availablePoints * valuesPerPoint;
+            if (offset + valuesPerPoint > values.length)
+            {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            System.arraycopy(pointValues, 0, values, offset, valuesPerPoint);
+            availablePoints++;
+            changed.signalAll();
+            return true;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks the end of the message: no more points will be appended.
+     */
+    public void complete()
+    {
+        lock.lock();
+        try
+        {
+            if (failure == null)
+            {
+                complete = true;
+                changed.signalAll();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks the trajectory as unusable. The points already available stay readable. Only the first failure is kept.
+     */
+    public void fail(String reason)
+    {
+        lock.lock();
+        try
+        {
+            if (failure == null && !complete)
+            {
+                failure = reason;
+                changed.signalAll();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until at least {@code minPoints} points are available, the trajectory is complete or failed,
+     * or the timeout expires.
+     * @return The number of points available on return.
+     */
+    public int awaitPoints(int minPoints, long timeout, TimeUnit unit) throws InterruptedException
+    {
+        lock.lock();
+        try
+        {
+            long nanos = unit.toNanos(timeout);
+            while (availablePoints < minPoints && !complete && failure == null && nanos > 0)
+            {
+                nanos = changed.awaitNanos(nanos);
+            }
+            return availablePoints;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public int getAvailablePoints()
+    {
+        lock.lock();
+        try
+        {
+            return availablePoints;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copies point {@code index} (0-based, below {@link #getAvailablePoints()}) into {@code target}.
+     */
+    public void getPoint(int index, double[] target)
+    {
+        lock.lock();
+        try
+        {
+            if (index < 0 || index >= availablePoints)
+            {
+                throw new IndexOutOfBoundsException("Point " + index + " not available, " + availablePoints + " received so far.");
+            }
+            System.arraycopy(values, index * valuesPerPoint, target, 0, valuesPerPoint);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    public boolean isComplete()
+    {
+        lock.lock();
+        try
+        {
+            return complete;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reason the trajectory failed, or null.
+     */
+    public String getFailure()
+    {
+        lock.lock();
+        try
+        {
+            return failure;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+}
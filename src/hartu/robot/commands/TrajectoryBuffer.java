@@ -0,0 +1,281 @@
+package hartu.robot.commands;
+
+import hartu.robot.commands.positions.AxisPosition;
+import hartu.robot.commands.positions.CartesianPosition;
+
+import java.nio.DoubleBuffer;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Target points of a motion command, stored back to back in one {@code double[]}: J1..J7 per point for
+ * axis motions, X, Y, Z, A, B, C per point for Cartesian motions.
+ * <p>
+ * Read-only. Executors and batch math read the values directly with {@link #get(int, int)} or
+ * {@link #getPoint(int, double[])}; {@link #asAxisPositions()} and {@link #asCartesianPositions()} give the
+ * familiar per-point objects for existing callers, created on access.
+ * <p>
+ * A buffer taken from the {@link TrajectoryStore} reads the stored points in place, off the heap, and must be
+ * given back with {@link #release()} once the command running it is done.
+ */
+public final class TrajectoryBuffer
+{
+    public static final int AXIS_VALUES_PER_POINT = 7;
+    public static final int CARTESIAN_VALUES_PER_POINT = 6;
+
+    private final boolean cartesian;
+    private final double[] values;
+    private final int pointCount;
+    // Set instead of values for stored trajectories
+    private final TrajectoryStore.Entry storeEntry;
+    private final AtomicBoolean released;
+
+    private TrajectoryBuffer(boolean cartesian, double[] values, int pointCount)
+    {
+        int valuesPerPoint = cartesian ? CARTESIAN_VALUES_PER_POINT : AXIS_VALUES_PER_POINT;
+        if (pointCount < 0 || (long) pointCount * valuesPerPoint > values.length)
+        {
+            throw new IllegalArgumentException("Point count " + pointCount + " does not fit " + values.length + " values of " + valuesPerPoint + " per point.");
+        }
+        this.cartesian = cartesian;
+        this.values = values;
+        this.pointCount = pointCount;
+        this.storeEntry = null;
+        this.released = null;
+    }
+
+    private TrajectoryBuffer(TrajectoryStore.Entry storeEntry)
+    {
+        this.cartesian = storeEntry.cartesian;
+        this.values = null;
+        this.pointCount = storeEntry.pointCount;
+        this.storeEntry = storeEntry;
+        this.released = new AtomicBoolean(false);
+    }
+
+    /**
+     * A view of a stored trajectory whose reference has already been taken by the store.
+     */
+    static TrajectoryBuffer ofStored(TrajectoryStore.Entry storeEntry)
+    {
+        return new TrajectoryBuffer(storeEntry);
+    }
+
+    /**
+     * Wraps the first {@code pointCount} axis points of {@code values} without copying. The caller hands the
+     * array over and must not change it afterwards.
+     */
+    public static TrajectoryBuffer ofAxis(double[] values, int pointCount)
+    {
+        return new TrajectoryBuffer(false, values, pointCount);
+    }
+
+    /**
+     * Wraps the first {@code pointCount} Cartesian points of {@code values} without copying. The caller hands
+     * the array over and must not change it afterwards.
+     */
+    public static TrajectoryBuffer ofCartesian(double[] values, int pointCount)
+    {
+        return new TrajectoryBuffer(true, values, pointCount);
+    }
+
+    public static TrajectoryBuffer fromAxisPositions(List<AxisPosition> positions)
+    {
+        double[] values = new double[positions.size() * AXIS_VALUES_PER_POINT];
+        int offset = 0;
+        for (AxisPosition position : positions)
+        {
+            values[offset++] = position.getJ1();
+            values[offset++] = position.getJ2();
+            values[offset++] = position.getJ3();
+            values[offset++] = position.getJ4();
+            values[offset++] = position.getJ5();
+            values[offset++] = position.getJ6();
+            values[offset++] = position.getJ7();
+        }
+        return ofAxis(values, positions.size());
+    }
+
+    public static TrajectoryBuffer fromCartesianPositions(List<CartesianPosition> positions)
+    {
+        double[] values = new double[positions.size() * CARTESIAN_VALUES_PER_POINT];
+        int offset = 0;
+        for (CartesianPosition position : positions)
+        {
+            values[offset++] = position.getX();
+            values[offset++] = position.getY();
+            values[offset++] = position.getZ();
+            values[offset++] = position.getA();
+            values[offset++] = position.getB();
+            values[offset++] = position.getC();
+        }
+        return ofCartesian(values, positions.size());
+    }
+
+    public boolean isCartesian()
+    {
+        return cartesian;
+    }
+
+    public int getPointCount()
+    {
+        return pointCount;
+    }
+
+    public int getValuesPerPoint()
+    {
+        return cartesian ? CARTESIAN_VALUES_PER_POINT : AXIS_VALUES_PER_POINT;
+    }
+
+    /**
+     * Whether the points are read from the {@link TrajectoryStore}.
+     */
+    public boolean isStored()
+    {
+        return storeEntry != null;
+    }
+
+    /**
+     * ID the points are stored under, or null for points parsed with the command.
+     */
+    public String getStoredId()
+    {
+        return storeEntry != null ? storeEntry.id : null;
+    }
+
+    /**
+     * Gives back the reference a stored trajectory was acquired with; its points must not be read afterwards.
+     * Only the first call has an effect, and none at all for points parsed with the command.
+     */
+    public void release()
+    {
+        if (storeEntry != null && released.compareAndSet(false, true))
+        {
+            storeEntry.store.releaseEntry(storeEntry);
+        }
+    }
+
+    /**
+     * Value {@code index} of point {@code point}: the joint for axis points, X..C for Cartesian points.
+     */
+    public double get(int point, int index)
+    {
+        int valuesPerPoint = getValuesPerPoint();
+        if (point < 0 || point >= pointCount || index < 0 || index >= valuesPerPoint)
+        {
+            throw new IndexOutOfBoundsException("Point " + point + ", value " + index + " outside " + pointCount + " points of " + valuesPerPoint + " values.");
+        }
+        return value(point * valuesPerPoint + index);
+    }
+
+    /**
+     * Copies one point into {@code target}, which needs room for {@link #getValuesPerPoint()} values.
+     */
+    public void getPoint(int point, double[] target)
+    {
+        if (point < 0 || point >= pointCount)
+        {
+            throw new IndexOutOfBoundsException("Point " + point + " outside " + pointCount + " points.");
+        }
+        int valuesPerPoint = getValuesPerPoint();
+        if (values != null)
+        {
+            System.arraycopy(values, point * valuesPerPoint, target, 0, valuesPerPoint);
+            return;
+        }
+        for (int i = 0; i < valuesPerPoint; i++)
+        {
+            target[i] = storeEntry.values.get(point * valuesPerPoint + i);
+        }
+    }
+
+    /**
+     * Copies every value into {@code target} from its current position on, for the {@link TrajectoryStore}.
+     */
+    void copyTo(DoubleBuffer target)
+    {
+        int count = pointCount * getValuesPerPoint();
+        if (values != null)
+        {
+            target.put(values, 0, count);
+            return;
+        }
+        for (int i = 0; i < count; i++)
+        {
+            target.put(storeEntry.values.get(i));
+        }
+    }
+
+    private double value(int i)
+    {
+        return values != null ? values[i] : storeEntry.values.get(i);
+    }
+
+    /**
+     * Read-only view of the axis points; each {@code get} creates a new {@link AxisPosition}.
+     * @throws IllegalStateException for a Cartesian trajectory.
+     */
+    public List<AxisPosition> asAxisPositions()
+    {
+        if (cartesian)
+        {
+            throw new IllegalStateException("Cartesian trajectory has no axis positions.");
+        }
+        return new AxisPositionView();
+    }
+
+    /**
+     * Read-only view of the Cartesian points; each {@code get} creates a new {@link CartesianPosition}.
+     * @throws IllegalStateException for an axis trajectory.
+     */
+    public List<CartesianPosition> asCartesianPositions()
+    {
+        if (!cartesian)
+        {
+            throw new IllegalStateException("Axis trajectory has no Cartesian positions.");
+        }
+        return new CartesianPositionView();
+    }
+
+    private final class AxisPositionView extends AbstractList<AxisPosition> implements RandomAccess
+    {
+        @Override
+        public AxisPosition get(int point)
+        {
+            if (point < 0 || point >= pointCount)
+            {
+                throw new IndexOutOfBoundsException("Point " + point + " outside " + pointCount + " points.");
+            }
+            int i = point * AXIS_VALUES_PER_POINT;
+            return new AxisPosition(value(i), value(i + 1), value(i + 2), value(i + 3), value(i + 4), value(i + 5), value(i + 6));
+        }
+
+        @Override
+        public int size()
+        {
+            return pointCount;
+        }
+    }
+
+    private final class CartesianPositionView extends AbstractList<CartesianPosition> implements RandomAccess
+    {
+        @Override
+        public CartesianPosition get(int point)
+        {
+            if (point < 0 || point >= pointCount)
+            {
+                throw new IndexOutOfBoundsException("Point " + point + " outside " + pointCount + " points.");
+            }
+            int i = point * CARTESIAN_VALUES_PER_POINT;
+            return new CartesianPosition(value(i), value(i + 1), value(i + 2), value(i + 3), value(i + 4), value(i + 5));
+        }
+
+        @Override
+        public int size()
+        {
+            return pointCount;
+        }
+    }
+}
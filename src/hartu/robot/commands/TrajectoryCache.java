@@ -0,0 +1,207 @@
+package hartu.robot.commands;
+
+import hartu.robot.communication.server.Logger;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parsed and validated trajectories addressed by a hash of their content, for paths that are run over and over.
+ * <p>
+ * A client uploads a path once and gets back its hash; from then on a short command naming the hash runs it
+ * with that command's own tool, base and speed, without sending or parsing the points again. The cache is
+ * bounded in bytes and evicts the least recently used trajectory first. Points are kept off the heap in a
+ * {@link TrajectoryStore} of their own, so evicting a trajectory that a queued command still runs only frees
+ * it once that command is done.
+ * <p>
+ * The hash covers the kind of points (axis or Cartesian), their number and the exact bits of every value,
+ * see {@link #contentHash(TrajectoryBuffer)}. Uploading points that are already cached only marks them as used.
+ */
+public final class TrajectoryCache
+{
+    public static final int DEFAULT_CAPACITY_BYTES = 8 * 1024 * 1024;
+
+    private static final int BYTES_PER_VALUE = 8;
+
+    private static TrajectoryCache instance;
+
+    private final int capacityBytes;
+    private final TrajectoryStore store;
+
+    // All guarded by this. Hash to size in bytes, in access order: the first entry is the least recently used
+    private final LinkedHashMap<String, Integer> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int usedBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long uploads = 0;
+    private long repeatedUploads = 0;
+    private long evictions = 0;
+
+    public TrajectoryCache(int capacityBytes)
+    {
+        this.capacityBytes = capacityBytes;
+        // Headroom for trajectories evicted while queued commands still run them
+        this.store = new TrajectoryStore((int) Math.min(Integer.MAX_VALUE, capacityBytes * 3L / 2));
+    }
+
+    public static synchronized TrajectoryCache getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new TrajectoryCache(DEFAULT_CAPACITY_BYTES);
+        }
+        return instance;
+    }
+
+    /**
+     * Caches {@code points} and returns their content hash, evicting least recently used trajectories as needed.
+     * @throws IllegalArgumentException if there are no points, they can never fit, or their hash collides with other cached points.
+     */
+    public synchronized String put(TrajectoryBuffer points)
+    {
+        if (points.getPointCount() == 0)
+        {
+            throw new IllegalArgumentException("Cached trajectory has no points.");
+        }
+        String hash = contentHash(points);
+        if (entries.get(hash) != null)
+        {
+            TrajectoryBuffer cached = store.acquire(hash);
+            boolean sameContent = sameContent(cached, points);
+            cached.release();
+            if (!sameContent)
+            {
+                throw new IllegalArgumentException("Hash " + hash + " of the uploaded trajectory collides with a different cached trajectory.");
+            }
+            repeatedUploads++;
+            return hash;
+        }
+
+        long bytes = (long) points.getPointCount() * points.getValuesPerPoint() * BYTES_PER_VALUE;
+        if (bytes > capacityBytes)
+        {
+            throw new IllegalArgumentException("Trajectory of " + bytes + " bytes exceeds the cache capacity of " + capacityBytes + " bytes.");
+        }
+        while (usedBytes + bytes > capacityBytes)
+        {
+            evictLeastRecentlyUsed();
+        }
+        while (true)
+        {
+            try
+            {
+                store.store(hash, points);
+                break;
+            }
+            catch (IllegalArgumentException e)
+            {
+                // Fragmented, or evicted regions are still held by running commands
+                if (entries.isEmpty())
+                {
+                    throw e;
+                }
+                evictLeastRecentlyUsed();
+            }
+        }
+        entries.put(hash, (int) bytes);
+        usedBytes += bytes;
+        uploads++;
+        return hash;
+    }
+
+    /**
+     * The cached trajectory, read in place, or null on a miss. The caller gives it back with
+     * {@link TrajectoryBuffer#release()}.
+     */
+    public synchronized TrajectoryBuffer acquire(String hash)
+    {
+        if (entries.get(hash) == null)
+        {
+            misses++;
+            return null;
+        }
+        hits++;
+        return store.acquire(hash);
+    }
+
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    public synchronized String getStatistics()
+    {
+        long lookups = hits + misses;
+        return "Trajectories: " + entries.size() + ", used: " + usedBytes + "/" + capacityBytes + " bytes, hits: " + hits + ", misses: " + misses
+               + (lookups > 0 ? " (hit rate " + (100 * hits / lookups) + "%)" : "") + ", uploads: " + uploads + ", repeated uploads: " + repeatedUploads + ", evictions: " + evictions;
+    }
+
+    private void evictLeastRecentlyUsed()
+    {
+        Iterator<Map.Entry<String, Integer>> eldest = entries.entrySet().iterator();
+        Map.Entry<String, Integer> entry = eldest.next();
+        eldest.remove();
+        usedBytes -= entry.getValue();
+        evictions++;
+        store.release(entry.getKey());
+        // Tagged logging
+        Logger.getInstance().log("CACHE", "Evicted trajectory " + entry.getKey() + ". " + getStatistics());
+    }
+
+    /**
+     * 64-bit hash of the points as 16 lowercase hex digits: starting from {@code 0x9E3779B97F4A7C15 ^ (pointCount << 1 | cartesian)},
+     * every value's IEEE 754 bits {@code v} are folded in with {@code h = rotl(h ^ (v * 0x87C37B91114253D5), 31) * 0x4CF5AD432745937F},
+     * then the MurmurHash3 finalizer is applied. Clients may compute it themselves to skip waiting for the upload reply.
+     */
+    public static String contentHash(TrajectoryBuffer points)
+    {
+        long h = 0x9E3779B97F4A7C15L ^ ((long) points.getPointCount() << 1 | (points.isCartesian() ? 1 : 0));
+        int valuesPerPoint = points.getValuesPerPoint();
+        for (int point = 0; point < points.getPointCount(); point++)
+        {
+            for (int i = 0; i < valuesPerPoint; i++)
+            {
+                long v = Double.doubleToLongBits(points.get(point, i));
+                h = Long.rotateLeft(h ^ (v * 0x87C37B91114253D5L), 31) * 0x4CF5AD432745937FL;
+            }
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+
+        String hex = Long.toHexString(h);
+        StringBuilder sb = new StringBuilder(16);
+        for (int i = hex.length(); i < 16; i++)
+        {
+            sb.append('0');
+        }
+        return sb.append(hex).toString();
+    }
+
+    private static boolean sameContent(TrajectoryBuffer a, TrajectoryBuffer b)
+    {
+        if (a.isCartesian() != b.isCartesian() || a.getPointCount() != b.getPointCount())
+        {
+            return false;
+        }
+        for (int point = 0; point < a.getPointCount(); point++)
+        {
+            for (int i = 0; i < a.getValuesPerPoint(); i++)
+            {
+                if (Double.doubleToLongBits(a.get(point, i)) != Double.doubleToLongBits(b.get(point, i)))
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,220 @@
+package hartu.robot.commands;
+
+import hartu.robot.communication.server.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Named trajectories kept outside the Java heap, for long paths that are uploaded once and run many times.
+ * <p>
+ * All points live in one direct buffer, reserved when the first trajectory is stored and carved into one
+ * region per trajectory. Storing and releasing only moves region bounds, and a command running a stored
+ * trajectory reads the region in place, so large paths neither copy points nor leave garbage behind while
+ * the robot moves.
+ * <p>
+ * Trajectories are reference counted. The store holds one reference from {@link #store} until
+ * {@link #release(String)} or until the ID is stored again; every {@link #acquire(String)} adds one that the
+ * returned buffer gives back with {@link TrajectoryBuffer#release()}. A region is reused only once its last
+ * reference is gone, so releasing a trajectory never pulls it from under a command that is still running it.
+ */
+public final class TrajectoryStore
+{
+    public static final int DEFAULT_CAPACITY_BYTES = 32 * 1024 * 1024;
+
+    private static final int BYTES_PER_VALUE = 8;
+
+    private static TrajectoryStore instance;
+
+    private final int capacityBytes;
+
+    // All guarded by this
+    private ByteBuffer arena;
+    private final Map<String, Entry> entries = new HashMap<>();
+    // Free regions by offset, in bytes; adjacent regions are merged
+    private final TreeMap<Integer, Integer> freeRegions = new TreeMap<>();
+    private int usedBytes = 0;
+    private int highWaterMark = 0;
+
+    public TrajectoryStore(int capacityBytes)
+    {
+        if (capacityBytes < BYTES_PER_VALUE)
+        {
+            throw new IllegalArgumentException("Trajectory store capacity must be at least " + BYTES_PER_VALUE + " bytes. Got " + capacityBytes);
+        }
+        // Whole values only
+        this.capacityBytes = capacityBytes - capacityBytes % BYTES_PER_VALUE;
+    }
+
+    public static synchronized TrajectoryStore getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new TrajectoryStore(DEFAULT_CAPACITY_BYTES);
+        }
+        return instance;
+    }
+
+    /**
+     * Copies {@code points} into the store under {@code id}. A trajectory already stored under the same ID is
+     * replaced; commands still running it keep reading the old points until they release them.
+     * @throws IllegalArgumentException if the ID is empty, there are no points, or there is no free region large enough.
+     */
+    public synchronized void store(String id, TrajectoryBuffer points)
+    {
+        if (id == null || id.isEmpty())
+        {
+            throw new IllegalArgumentException("Stored trajectory ID cannot be empty.");
+        }
+        if (points.getPointCount() == 0)
+        {
+            throw new IllegalArgumentException("Stored trajectory '" + id + "' has no points.");
+        }
+        long bytes = (long) points.getPointCount() * points.getValuesPerPoint() * BYTES_PER_VALUE;
+        int offset = bytes <= capacityBytes ? allocate((int) bytes) : -1;
+        if (offset < 0)
+        {
+            throw new IllegalArgumentException("No room for trajectory '" + id + "' of " + bytes + " bytes. " + getStatistics());
+        }
+
+        ByteBuffer region = arena.duplicate();
+        region.limit(offset + (int) bytes).position(offset);
+        DoubleBuffer values = region.slice().order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        points.copyTo(values);
+
+        Entry previous = entries.put(id, new Entry(this, id, points.isCartesian(), points.getPointCount(), offset, (int) bytes, values));
+        if (previous != null)
+        {
+            releaseEntry(previous);
+        }
+        // Tagged logging
+        Logger.getInstance().log("STORE", "Stored trajectory '" + id + "': " + points.getPointCount() + (points.isCartesian() ? " Cartesian" : " axis") + " points" + (previous != null ? ", replacing the previous one" : "") + ". " + getStatistics());
+    }
+
+    /**
+     * The trajectory stored under {@code id}, read in place, or null if there is none. The caller owns one
+     * reference and gives it back with {@link TrajectoryBuffer#release()}.
+     */
+    public synchronized TrajectoryBuffer acquire(String id)
+    {
+        Entry entry = entries.get(id);
+        if (entry == null)
+        {
+            return null;
+        }
+        entry.references++;
+        return TrajectoryBuffer.ofStored(entry);
+    }
+
+    /**
+     * Drops the store's own reference to the trajectory and forgets its ID. Returns false if nothing was stored under it.
+     */
+    public synchronized boolean release(String id)
+    {
+        Entry entry = entries.remove(id);
+        if (entry == null)
+        {
+            return false;
+        }
+        releaseEntry(entry);
+        // Tagged logging
+        Logger.getInstance().log("STORE", "Released trajectory '" + id + "'" + (entry.references > 0 ? ", freed once the " + entry.references + " command(s) running it are done" : "") + ". " + getStatistics());
+        return true;
+    }
+
+    public synchronized boolean contains(String id)
+    {
+        return entries.containsKey(id);
+    }
+
+    public synchronized String getStatistics()
+    {
+        return "Trajectories: " + entries.size() + ", used: " + usedBytes + "/" + capacityBytes + " bytes, high-water mark: " + highWaterMark + " bytes, free regions: " + freeRegions.size();
+    }
+
+    synchronized void releaseEntry(Entry entry)
+    {
+        if (--entry.references == 0)
+        {
+            free(entry.offset, entry.bytes);
+        }
+    }
+
+    /**
+     * First fit. Returns the offset of the region, or -1 if no free region is large enough.
+     */
+    private int allocate(int bytes)
+    {
+        if (arena == null)
+        {
+            arena = ByteBuffer.allocateDirect(capacityBytes).order(ByteOrder.nativeOrder());
+            freeRegions.put(0, capacityBytes);
+        }
+        for (Map.Entry<Integer, Integer> region : freeRegions.entrySet())
+        {
+            int offset = region.getKey();
+            int length = region.getValue();
+            if (length >= bytes)
+            {
+                freeRegions.remove(offset);
+                if (length > bytes)
+                {
+                    freeRegions.put(offset + bytes, length - bytes);
+                }
+                usedBytes += bytes;
+                highWaterMark = Math.max(highWaterMark, usedBytes);
+                return offset;
+            }
+        }
+        return -1;
+    }
+
+    private void free(int offset, int bytes)
+    {
+        usedBytes -= bytes;
+        int start = offset;
+        int end = offset + bytes;
+        Map.Entry<Integer, Integer> before = freeRegions.floorEntry(offset);
+        if (before != null && before.getKey() + before.getValue() == start)
+        {
+            start = before.getKey();
+            freeRegions.remove(start);
+        }
+        Integer afterLength = freeRegions.remove(end);
+        if (afterLength != null)
+        {
+            end += afterLength;
+        }
+        freeRegions.put(start, end - start);
+    }
+
+    /**
+     * One stored trajectory. {@link #references} is guarded by the store.
+     */
+    static final class Entry
+    {
+        final TrajectoryStore store;
+        final String id;
+        final boolean cartesian;
+        final int pointCount;
+        final int offset;
+        final int bytes;
+        final DoubleBuffer values;
+        int references = 1;
+
+        private Entry(TrajectoryStore store, String id, boolean cartesian, int pointCount, int offset, int bytes, DoubleBuffer values)
+        {
+            this.store = store;
+            this.id = id;
+            this.cartesian = cartesian;
+            this.pointCount = pointCount;
+            this.offset = offset;
+            this.bytes = bytes;
+            this.values = values;
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package hartu.robot.communication.client;
 
+import hartu.protocols.constants.BinaryProtocolConstants;
 import hartu.protocols.constants.ProtocolConstants;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 
 public class ClientClass {
     private Socket clientSocket;
@@ -45,6 +50,47 @@ public class ClientClass {
         return messageBuilder.toString();
     }
 
+    /**
+     * Asks the server to switch this session's wire format, e.g. to {@link ProtocolConstants#PROTOCOL_BINARY}.
+     * Must be called after the initial FREE|0# and before any command is sent.
+     * @return The protocol the server agreed on.
+     */
+    public String negotiateProtocol(String protocol) throws IOException {
+        sendMessage(ProtocolConstants.PROTOCOL_NEGOTIATION_PREFIX + protocol);
+        String reply = readMessage();
+        if (!reply.startsWith(ProtocolConstants.PROTOCOL_NEGOTIATION_PREFIX)) {
+            throw new IOException("Unexpected reply to protocol negotiation: " + reply);
+        }
+        return reply.substring(ProtocolConstants.PROTOCOL_NEGOTIATION_PREFIX.length());
+    }
+
+    /**
+     * Sends a frame built by {@link hartu.robot.utils.BinaryCommandEncoder}, including its length prefix.
+     */
+    public void sendBinaryFrame(ByteBuffer frame) throws IOException {
+        OutputStream rawOut = clientSocket.getOutputStream();
+        rawOut.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+        rawOut.flush();
+    }
+
+    /**
+     * Reads one binary frame and returns its payload without the length prefix, in protocol byte order.
+     * Reads straight from the socket: the server sends nothing between the negotiation reply and the
+     * first binary response, so no binary bytes can be stuck in the text reader's buffer.
+     */
+    public ByteBuffer readBinaryFrame() throws IOException {
+        DataInputStream rawIn = new DataInputStream(clientSocket.getInputStream());
+        byte[] prefix = new byte[BinaryProtocolConstants.LENGTH_PREFIX_SIZE];
+        rawIn.readFully(prefix);
+        int payloadLength = ByteBuffer.wrap(prefix).order(BinaryProtocolConstants.BYTE_ORDER).getInt();
+        if (payloadLength < 0) {
+            throw new EOFException("Invalid binary frame length: " + payloadLength);
+        }
+        byte[] payload = new byte[payloadLength];
+        rawIn.readFully(payload);
+        return ByteBuffer.wrap(payload).order(BinaryProtocolConstants.BYTE_ORDER);
+    }
+
     public void close() throws IOException {
         if (in != null) {
             in.close();
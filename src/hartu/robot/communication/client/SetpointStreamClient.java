@@ -0,0 +1,136 @@
+package hartu.robot.communication.client;
+
+import hartu.protocols.constants.SetpointProtocolConstants;
+import hartu.robot.communication.server.SetpointStreamServer;
+import hartu.robot.executor.ServoSetpointExecutor;
+import hartu.robot.executor.ServoTarget;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sender side of the UDP setpoint stream. Running {@link #main(String[])} streams setpoints over loopback
+ * to a local {@link SetpointStreamServer} and {@link ServoSetpointExecutor} and prints the end-to-end latency,
+ * so the stream can be measured without a robot.
+ */
+public class SetpointStreamClient {
+    private final DatagramChannel channel;
+    private final ByteBuffer packet;
+    private long nextSequence = 1;
+
+    public SetpointStreamClient(String serverIp, int serverPort) throws IOException {
+        this.channel = DatagramChannel.open();
+        this.channel.connect(new InetSocketAddress(serverIp, serverPort));
+        this.packet = ByteBuffer.allocateDirect(SetpointProtocolConstants.PACKET_SIZE).order(SetpointProtocolConstants.BYTE_ORDER);
+    }
+
+    /**
+     * @param jointValues J1..J7 in radians.
+     * @return The sequence number of the sent setpoint.
+     */
+    public long sendAxisSetpoint(double[] jointValues) throws IOException {
+        return send(SetpointProtocolConstants.TYPE_AXIS, jointValues);
+    }
+
+    /**
+     * @param pose X;Y;Z in mm, A;B;C in radians.
+     * @return The sequence number of the sent setpoint.
+     */
+    public long sendCartesianSetpoint(double[] pose) throws IOException {
+        return send(SetpointProtocolConstants.TYPE_CARTESIAN, pose);
+    }
+
+    private long send(byte type, double[] values) throws IOException {
+        if (values.length > SetpointProtocolConstants.VALUE_SLOTS) {
+            throw new IllegalArgumentException("A setpoint holds at most " + SetpointProtocolConstants.VALUE_SLOTS + " values. Got " + values.length);
+        }
+        long sequence = nextSequence++;
+        packet.clear();
+        packet.putLong(SetpointProtocolConstants.OFFSET_SEQUENCE, sequence);
+        packet.putLong(SetpointProtocolConstants.OFFSET_SENDER_TIMESTAMP, System.nanoTime());
+        packet.put(SetpointProtocolConstants.OFFSET_TYPE, type);
+        for (int i = 0; i < SetpointProtocolConstants.VALUE_SLOTS; i++) {
+            packet.putDouble(SetpointProtocolConstants.OFFSET_VALUES + i * 8, i < values.length ? values[i] : 0.0);
+        }
+        channel.write(packet);
+        return sequence;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Loopback latency test. Arguments: [rate in Hz, default 250] [duration in seconds, default 10].
+     */
+    public static void main(String[] args) throws Exception {
+        int rateHz = args.length > 0 ? Integer.parseInt(args[0]) : 250;
+        int durationSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int setpointCount = rateHz * durationSeconds;
+
+        final long[] latencies = new long[setpointCount];
+        final int[] recorded = new int[1];
+        final long[] sentNanos = new long[setpointCount + 1];
+
+        SetpointStreamServer server = new SetpointStreamServer(0);
+        // The first joint value carries the sequence number, so the target can look up when it was sent
+        ServoTarget recordingTarget = new ServoTarget() {
+            @Override
+            public void setJointDestination(double[] jointValues) {
+                long now = System.nanoTime();
+                int sequence = (int) jointValues[0];
+                if (recorded[0] < latencies.length && sequence > 0 && sequence < sentNanos.length) {
+                    latencies[recorded[0]++] = now - sentNanos[sequence];
+                }
+            }
+
+            @Override
+            public void setCartesianDestination(double x, double y, double z, double a, double b, double c) {
+            }
+        };
+        ServoSetpointExecutor executor = new ServoSetpointExecutor(server, recordingTarget, 100, TimeUnit.MILLISECONDS);
+        server.start();
+        executor.start();
+
+        SetpointStreamClient client = new SetpointStreamClient("127.0.0.1", server.getLocalPort());
+        double[] joints = new double[7];
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / rateHz;
+        long nextSend = System.nanoTime();
+        for (int i = 1; i <= setpointCount; i++) {
+            joints[0] = i;
+            sentNanos[i] = System.nanoTime();
+            client.sendAxisSetpoint(joints);
+            nextSend += periodNanos;
+            long sleep = nextSend - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+            }
+        }
+        Thread.sleep(200);
+        client.close();
+        executor.stop();
+        server.stop();
+
+        long[] sorted = Arrays.copyOf(latencies, recorded[0]);
+        Arrays.sort(sorted);
+        System.out.println("Sent " + setpointCount + " setpoints at " + rateHz + " Hz. " + server.getStatistics());
+        System.out.println(executor.getStatistics());
+        if (sorted.length > 0) {
+            long sum = 0;
+            for (long latency : sorted) {
+                sum += latency;
+            }
+            System.out.println("Send-to-apply latency over " + sorted.length + " setpoints: min " + micros(sorted[0])
+                    + " us, avg " + micros(sum / sorted.length) + " us, p50 " + micros(sorted[sorted.length / 2])
+                    + " us, p99 " + micros(sorted[(int) (sorted.length * 0.99)]) + " us, max " + micros(sorted[sorted.length - 1]) + " us");
+        }
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,116 @@
+package hartu.robot.communication.client;
+
+import hartu.protocols.constants.ProtocolConstants;
+import hartu.protocols.constants.TelemetryProtocolConstants;
+import hartu.robot.telemetry.RobotStateSample;
+import hartu.robot.telemetry.TelemetryFrameDecoder;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Receives the robot state telemetry stream. Running {@link #main(String[])} prints the received samples
+ * together with the achieved rate and bytes per sample.
+ */
+public class TelemetryClient {
+    private final String serverIp;
+    private final int serverPort;
+    private final TelemetryFrameDecoder decoder = new TelemetryFrameDecoder();
+    private Socket clientSocket;
+    private DataInputStream in;
+    private OutputStream out;
+    private long bytesReceived;
+
+    public TelemetryClient(String serverIp, int serverPort) {
+        this.serverIp = serverIp;
+        this.serverPort = serverPort;
+    }
+
+    public void connect() throws IOException {
+        clientSocket = new Socket(serverIp, serverPort);
+        clientSocket.setTcpNoDelay(true);
+        in = new DataInputStream(clientSocket.getInputStream());
+        out = clientSocket.getOutputStream();
+    }
+
+    /**
+     * Asks the server to downsample this client's stream to roughly the given rate.
+     */
+    public void requestRate(double rateHz) throws IOException {
+        sendLine(TelemetryProtocolConstants.RATE_REQUEST_PREFIX + rateHz);
+    }
+
+    public void requestKeyframe() throws IOException {
+        sendLine(TelemetryProtocolConstants.KEYFRAME_REQUEST);
+    }
+
+    private void sendLine(String line) throws IOException {
+        out.write((line + ProtocolConstants.LOG_LINE_TERMINATOR).getBytes(ProtocolConstants.CHARSET));
+        out.flush();
+    }
+
+    /**
+     * Blocks until the next complete sample has been received and decoded into {@code sample}.
+     * Delta frames received before the first keyframe are skipped.
+     */
+    public void readSample(RobotStateSample sample) throws IOException {
+        while (true) {
+            byte[] prefix = new byte[TelemetryProtocolConstants.LENGTH_PREFIX_SIZE];
+            in.readFully(prefix);
+            int length = ByteBuffer.wrap(prefix).order(TelemetryProtocolConstants.BYTE_ORDER).getInt();
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            bytesReceived += prefix.length + length;
+            if (decoder.decode(ByteBuffer.wrap(payload), sample)) {
+                return;
+            }
+        }
+    }
+
+    public int getLastSequence() {
+        return decoder.getLastSequence();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public void close() throws IOException {
+        if (clientSocket != null) {
+            clientSocket.close();
+        }
+    }
+
+    /**
+     * Arguments: server IP, port [, rate in Hz] [, number of samples, default 500].
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: TelemetryClient <server ip> <port> [rate Hz] [samples]");
+            return;
+        }
+        TelemetryClient client = new TelemetryClient(args[0], Integer.parseInt(args[1]));
+        client.connect();
+        if (args.length > 2) {
+            client.requestRate(Double.parseDouble(args[2]));
+        }
+        int sampleCount = args.length > 3 ? Integer.parseInt(args[3]) : 500;
+
+        RobotStateSample sample = new RobotStateSample();
+        long start = System.nanoTime();
+        for (int i = 0; i < sampleCount; i++) {
+            client.readSample(sample);
+            if (i % 50 == 0) {
+                System.out.println("#" + client.getLastSequence() + " joints " + Arrays.toString(sample.getJointPositions())
+                        + " torques " + Arrays.toString(sample.getExternalTorques()) + " tcp " + Arrays.toString(sample.getTcpPose()));
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1.0e9;
+        System.out.println("Received " + sampleCount + " samples at " + Math.round(sampleCount / seconds) + " Hz, "
+                + (client.getBytesReceived() / sampleCount) + " bytes per sample on average.");
+        client.close();
+    }
+}
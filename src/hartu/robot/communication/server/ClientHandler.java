@@ -1,20 +1,90 @@
 package hartu.robot.communication.server;
 
+import hartu.protocols.constants.ActionTypes;
 import hartu.protocols.constants.ProtocolConstants;
 import hartu.protocols.constants.ProtocolConstants.ListenerType;
 import hartu.robot.commands.ParsedCommand;
+import hartu.robot.commands.TrajectoryCache;
+import hartu.robot.commands.TrajectoryStore;
+import hartu.robot.utils.BinaryCommandEncoder;
+import hartu.robot.utils.BinaryCommandParser;
 import hartu.robot.utils.CommandParser;
+import hartu.robot.utils.StreamingCommandParser;
+import hartu.robot.utils.TrajectoryCacheMissException;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class ClientHandler implements Runnable
+/**
+ * Protocol logic for one client session. Frames arrive on the event loop thread via
+ * {@link #onFrameReceived(ByteBuffer)}; complete task messages are then processed one at a time
+ * on the shared task worker pool so that waiting for command execution never stalls the event loop.
+ * <p>
+ * In pipelined mode the handler does not wait for a command to finish before taking the next message;
+ * each command is acknowledged with its own {@code FREE|<id>#} as soon as it completes, in completion order.
+ * If the command queue is full the command is refused right away with {@code BUSY|<id>#}; the client
+ * should wait for one of its outstanding FREE replies before sending it again.
+ * <p>
+ * Continuous motions may also be sent as {@code STREAM|...#} (see {@link StreamingCommandParser}): their points
+ * are decoded on the event loop as the bytes arrive, and the command is queued once the configured lookahead of
+ * points is in, while the rest of the message is still on its way.
+ * <p>
+ * Long paths can be uploaded once with {@code STORE|...#} and run by any number of commands as
+ * {@code @<trajectory id>} (see {@link TrajectoryStore}) until {@code RELEASE|...#}. Paths sent over and over
+ * can instead be uploaded with {@code CACHE|...#} and run by content hash as {@code $<hash>}
+ * (see {@link TrajectoryCache}); a command naming a hash that has been evicted is answered with {@code MISS|<id>#}.
+ * <p>
+ * A task client may switch its session to the binary wire format by sending {@code PROTOCOL|BINARY#}
+ * before its first command; from the server's {@code PROTOCOL|BINARY#} reply on, frames in both
+ * directions are length-prefixed binary (see {@link hartu.protocols.constants.BinaryProtocolConstants}).
+ * <p>
+ * Every queued command is stamped as it passes each {@link CommandStage} and added to the
+ * {@link CommandLatencyTracker} once acknowledged; an ASCII client reads the histograms with {@code LATENCY|...#}.
+ */
+public class ClientHandler implements CommandCompletionListener
 {
     private final ClientSession clientSession;
+    private final Executor taskExecutor;
+    private final boolean pipelined;
+    private final IClientHandlerCallback clientHandlerCallback;
+    private final CommandCompletionListener resultRouter;
+    private final AtomicInteger inFlightCommands;
+    private final Queue<TaskMessage> pendingMessages;
+    private final AtomicBoolean draining;
+    private final Runnable drainTask;
+    private volatile TelemetrySubscriber telemetrySubscriber;
+    private volatile int streamingLookahead = StreamingCommandParser.DEFAULT_LOOKAHEAD;
+    // Streamed command currently being received, only touched from the event loop thread (and on disconnect)
+    private volatile StreamingCommandParser streamParser;
 
-    public ClientHandler(ClientSession clientSession)
+    /**
+     * @param resultRouter Receives the completion of pipelined commands and routes it back to the
+     *                     originating handler by session ID; null to acknowledge on this handler directly.
+     */
+    public ClientHandler(ClientSession clientSession, Executor taskExecutor, boolean pipelined, IClientHandlerCallback callback, CommandCompletionListener resultRouter)
     {
         this.clientSession = clientSession;
+        this.taskExecutor = taskExecutor;
+        this.pipelined = pipelined;
+        this.clientHandlerCallback = callback;
+        this.resultRouter = resultRouter != null ? resultRouter : this;
+        this.inFlightCommands = new AtomicInteger(0);
+        this.pendingMessages = new ConcurrentLinkedQueue<>();
+        this.draining = new AtomicBoolean(false);
+        this.drainTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                drainPendingMessages();
+            }
+        };
     }
 
     public ClientSession getClientSession()
@@ -24,171 +94,607 @@ public class ClientHandler implements Runnable
 
     public void sendMessage(String message)
     {
-        if (clientSession.getWriter() != null)
+        clientSession.send(message);
+    }
+
+    void setTelemetrySubscriber(TelemetrySubscriber telemetrySubscriber)
+    {
+        this.telemetrySubscriber = telemetrySubscriber;
+    }
+
+    void setStreamingLookahead(int streamingLookahead)
+    {
+        this.streamingLookahead = streamingLookahead;
+    }
+
+    public boolean isPipelined()
+    {
+        return pipelined;
+    }
+
+    /**
+     * Number of commands submitted by this client whose acknowledgement has not been sent yet.
+     */
+    public int getInFlightCommands()
+    {
+        return inFlightCommands.get();
+    }
+
+    /**
+     * Acknowledges a pipelined command. Runs on the executor's thread; the write itself is queued on the event loop.
+     */
+    @Override
+    public void onCommandCompleted(CommandResultHolder resultHolder)
+    {
+        int remaining = inFlightCommands.decrementAndGet();
+        String commandId = resultHolder.getCommand().getId();
+        // Tagged logging
+        Logger.getInstance().log("COMM", "ClientHandler (" + clientSession.getClientType().getName() + " - " + clientSession.getRemoteAddress() + "): Command ID " + commandId + " execution finished. Success: " + resultHolder.isSuccess() + ". Still in flight: " + remaining);
+        sendResponse(commandId, resultHolder.isSuccess());
+        resultHolder.markStage(CommandStage.ACKNOWLEDGED);
+        CommandLatencyTracker.getInstance().record(resultHolder);
+    }
+
+    public void close() throws IOException
+    {
+        clientSession.close();
+        // Tagged logging
+        Logger.getInstance().log("COMM", "ClientHandler (" + clientSession.getClientType().getName() + "): Client session closed for " + clientSession.getRemoteAddress());
+    }
+
+    /**
+     * Called on the event loop thread for every complete frame, without its terminator.
+     * The frame is only valid for the duration of the call.
+     */
+    void onFrameReceived(ByteBuffer frame)
+    {
+        if (clientSession.getClientType() == ListenerType.TASK_LISTENER && clientSession.isBinaryFraming())
+        {
+            // The frame dies with the next read, keep a compact heap copy for the worker
+            ByteBuffer payload = ByteBuffer.allocate(frame.remaining());
+            payload.put(frame);
+            payload.flip();
+            onTaskMessage(new TaskMessage(null, payload));
+            return;
+        }
+        if (clientSession.getClientType() == ListenerType.TASK_LISTENER && (streamParser != null || StreamingCommandParser.isStreamedMessage(frame)))
         {
-            clientSession.getWriter().print(message);
-            clientSession.getWriter().flush();
+            onStreamedBytes(frame, true);
+            return;
+        }
+
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        String receivedMessage = new String(bytes, ProtocolConstants.CHARSET);
+
+        if (clientSession.getClientType() == ListenerType.TASK_LISTENER)
+        {
+            if (receivedMessage.startsWith(ProtocolConstants.PROTOCOL_NEGOTIATION_PREFIX))
+            {
+                onProtocolNegotiation(receivedMessage.substring(ProtocolConstants.PROTOCOL_NEGOTIATION_PREFIX.length()));
+                return;
+            }
+            onTaskMessage(new TaskMessage(receivedMessage, null));
+        }
+        else if (clientSession.getClientType() == ListenerType.TELEMETRY_LISTENER)
+        {
+            TelemetrySubscriber subscriber = telemetrySubscriber;
+            if (subscriber != null)
+            {
+                subscriber.onRequest(receivedMessage);
+            }
         }
         else
         {
-            // Tagged logging
-            Logger.getInstance().log("COMM", "ClientHandler (" + clientSession.getClientType().getName() + "): Attempted to send message before PrintWriter was initialized.");
+            // Log clients send plain lines, tolerate CRLF line endings
+            if (receivedMessage.endsWith("\r"))
+            {
+                receivedMessage = receivedMessage.substring(0, receivedMessage.length() - 1);
+            }
+            onLogMessage(receivedMessage);
+        }
+    }
+
+    /**
+     * Called on the event loop thread after every read with the start of the task message that has not
+     * been terminated yet. Only streamed commands are decoded before their terminator arrives.
+     */
+    void onPartialFrame(ByteBuffer partialFrame)
+    {
+        if (streamParser != null || StreamingCommandParser.isStreamedMessage(partialFrame))
+        {
+            onStreamedBytes(partialFrame, false);
         }
     }
 
-    public String readMessage() throws IOException
+    /**
+     * Feeds the part of a streamed message not seen yet to its parser. {@code message} always starts at the
+     * beginning of the message, so the bytes already consumed are skipped.
+     */
+    private void onStreamedBytes(ByteBuffer message, boolean messageComplete)
     {
-        StringBuilder messageBuilder = new StringBuilder();
-        int charCode;
-        while ((charCode = clientSession.getReader().read()) != -1)
+        StreamingCommandParser parser = streamParser;
+        if (parser == null)
+        {
+            parser = new StreamingCommandParser(streamingLookahead);
+            streamParser = parser;
+        }
+        if (messageComplete)
+        {
+            streamParser = null;
+        }
+        message.position(message.position() + parser.getConsumedBytes());
+        try
+        {
+            ParsedCommand readyCommand = parser.feed(message);
+            if (messageComplete)
+            {
+                ParsedCommand lastChance = parser.finish();
+                readyCommand = readyCommand != null ? readyCommand : lastChance;
+            }
+            if (readyCommand != null)
+            {
+                onTaskMessage(new TaskMessage(readyCommand, null, null));
+            }
+        }
+        catch (IllegalArgumentException e)
         {
-            char c = (char) charCode;
-            if (c == ProtocolConstants.MESSAGE_TERMINATOR.charAt(0))
+            // Once handed out, the executor finds the trajectory failed and completes the command unsuccessfully
+            if (!parser.isHandedOut())
             {
-                break;
+                onTaskMessage(new TaskMessage(null, parser.getId(), e.getMessage()));
             }
-            messageBuilder.append(c);
         }
-        return messageBuilder.toString();
     }
 
-    public void close() throws IOException
+    /**
+     * Handles "PROTOCOL|&lt;format&gt;" on the event loop thread, so the framing switches before the next frame is decoded.
+     */
+    private void onProtocolNegotiation(String requestedProtocol)
+    {
+        String listenerName = clientSession.getClientType().getName();
+        String clientAddress = clientSession.getRemoteAddress();
+        boolean idle = pendingMessages.isEmpty() && !draining.get() && inFlightCommands.get() == 0;
+
+        if (ProtocolConstants.PROTOCOL_BINARY.equalsIgnoreCase(requestedProtocol.trim()) && idle)
+        {
+            // The reply still goes out in ASCII, everything after it is binary
+            sendMessage(ProtocolConstants.PROTOCOL_NEGOTIATION_PREFIX + ProtocolConstants.PROTOCOL_BINARY + ProtocolConstants.MESSAGE_TERMINATOR);
+            try
+            {
+                clientSession.switchToBinaryFraming();
+            }
+            catch (IOException e)
+            {
+                Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Error switching to binary protocol: " + e.getMessage());
+                clientSession.handleDisconnect();
+                return;
+            }
+            // Tagged logging
+            Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Switched to binary protocol.");
+            return;
+        }
+
+        if (!ProtocolConstants.PROTOCOL_ASCII.equalsIgnoreCase(requestedProtocol.trim()))
+        {
+            // Tagged logging
+            Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Protocol '" + requestedProtocol + "' refused" + (idle ? " (unsupported)" : " (commands in flight)") + ". Staying on ASCII.");
+        }
+        sendMessage(ProtocolConstants.PROTOCOL_NEGOTIATION_PREFIX + ProtocolConstants.PROTOCOL_ASCII + ProtocolConstants.MESSAGE_TERMINATOR);
+    }
+
+    /**
+     * Called once when the underlying session has been closed by either side.
+     */
+    void onDisconnected()
     {
-        clientSession.close();
         // Tagged logging
-        Logger.getInstance().log("COMM", "ClientHandler (" + clientSession.getClientType().getName() + "): Client session closed for " + clientSession.getRemoteAddress());
+        Logger.getInstance().log("COMM", "ClientHandler (" + clientSession.getClientType().getName() + "): Terminated for client " + clientSession.getRemoteAddress());
+        StreamingCommandParser parser = streamParser;
+        if (parser != null)
+        {
+            parser.abort("Client disconnected before the streamed command was complete.");
+        }
+        if (clientHandlerCallback != null)
+        {
+            clientHandlerCallback.onClientDisconnected(this, clientSession.getClientType());
+        }
     }
 
-    @Override
-    public void run()
+    private void onTaskMessage(TaskMessage taskMessage)
+    {
+        pendingMessages.add(taskMessage);
+        scheduleDrain();
+    }
+
+    private void scheduleDrain()
+    {
+        if (draining.compareAndSet(false, true))
+        {
+            taskExecutor.execute(drainTask);
+        }
+    }
+
+    private void drainPendingMessages()
+    {
+        try
+        {
+            TaskMessage message;
+            while ((message = pendingMessages.poll()) != null && !clientSession.isClosed())
+            {
+                processTaskMessage(message);
+            }
+        }
+        finally
+        {
+            draining.set(false);
+            // A message may have arrived between the last poll and clearing the flag
+            if (!pendingMessages.isEmpty() && !clientSession.isClosed())
+            {
+                scheduleDrain();
+            }
+        }
+    }
+
+    private void processTaskMessage(TaskMessage taskMessage)
     {
         String clientAddress = clientSession.getRemoteAddress();
         String listenerName = clientSession.getClientType().getName();
+        if (taskMessage.text != null && (taskMessage.text.startsWith(ProtocolConstants.STORE_MESSAGE_PREFIX) || taskMessage.text.startsWith(ProtocolConstants.RELEASE_MESSAGE_PREFIX)))
+        {
+            // Handled in order with the commands, so a command right after an upload finds its trajectory
+            processTrajectoryStoreMessage(taskMessage.text);
+            return;
+        }
+        if (taskMessage.text != null && taskMessage.text.startsWith(ProtocolConstants.CACHE_MESSAGE_PREFIX))
+        {
+            processTrajectoryCacheUpload(taskMessage.text);
+            return;
+        }
+        if (taskMessage.text != null && taskMessage.text.startsWith(ProtocolConstants.LATENCY_MESSAGE_PREFIX))
+        {
+            processLatencyQuery(taskMessage.text.substring(ProtocolConstants.LATENCY_MESSAGE_PREFIX.length()).trim());
+            return;
+        }
         // Tagged logging
-        Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + "): Started for client " + clientAddress + " (Session ID: " + clientSession.getSessionId() + ")");
+        if (!Logger.getInstance().isEnabled("COMM"))
+        {
+            // Nothing to build
+        }
+        else if (taskMessage.streamedCommand != null)
+        {
+            Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Received streamed command ID " + taskMessage.streamedCommand.getId() + ", " + taskMessage.streamedCommand.getStreamingTrajectory().getAvailablePoints() + " of " + taskMessage.streamedCommand.getMotionParameters().getNumPoints() + " points so far.");
+        }
+        else if (taskMessage.streamError != null)
+        {
+            // Reported as a parsing error below
+        }
+        else if (taskMessage.binaryPayload != null)
+        {
+            Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Received binary command of " + taskMessage.binaryPayload.remaining() + " bytes.");
+        }
+        else
+        {
+            Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Received: " + taskMessage.text);
+        }
+
+        String commandId = taskMessage.streamId != null ? taskMessage.streamId : "N/A";
+        boolean executionSuccess = false; // Declared outside try-catch for proper scope
+        CommandResultHolder completedHolder = null;
 
         try
         {
-            if (clientSession.getClientType() == ListenerType.TASK_LISTENER)
+            ParsedCommand parsedCommand = parseTaskMessage(taskMessage);
+            long parsedNanos = System.nanoTime();
+            commandId = parsedCommand.getId();
+            // Tagged logging, and removed redundant '\n'. Only built when someone listens, it spans every point
+            if (Logger.getInstance().isEnabled("COMM"))
+            {
+                Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Successfully parsed command: " + parsedCommand.toString());
+            }
+
+            if (pipelined)
             {
-                StringBuilder messageBuilder = new StringBuilder();
-                int charCode;
-                while ((charCode = clientSession.getReader().read()) != -1)
+                CommandResultHolder resultHolder = new CommandResultHolder(parsedCommand, clientSession.getSessionId(), resultRouter);
+                resultHolder.setStageNanos(CommandStage.RECEIVED, taskMessage.receivedNanos);
+                resultHolder.setStageNanos(CommandStage.PARSED, parsedNanos);
+                int inFlight = inFlightCommands.incrementAndGet();
+                if (!CommandQueue.offerCommand(resultHolder))
                 {
-                    char c = (char) charCode;
-                    if (c == ProtocolConstants.MESSAGE_TERMINATOR.charAt(0))
+                    inFlightCommands.decrementAndGet();
+                    if (parsedCommand.isStreamed())
                     {
-                        String receivedMessage = messageBuilder.toString();
-                        // Tagged logging
-                        Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Received: " + receivedMessage);
-
-                        String commandId = "N/A";
-                        boolean executionSuccess = false; // Declared outside try-catch for proper scope
-
-                        try
-                        {
-                            ParsedCommand parsedCommand = CommandParser.parseCommand(receivedMessage + ProtocolConstants.MESSAGE_TERMINATOR);
-                            commandId = parsedCommand.getId();
-                            // Tagged logging, and removed redundant '\n'
-                            Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Successfully parsed command: " + parsedCommand.toString());
-
-                            CommandResultHolder resultHolder = new CommandResultHolder(parsedCommand);
-                            CommandQueue.putCommand(resultHolder);
-
-                            // Tagged logging
-                            Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Waiting for command ID " + commandId + " to execute...");
-
-                            boolean awaited = resultHolder.getLatch().await(60, TimeUnit.SECONDS);
-
-                            if (awaited)
-                            {
-                                executionSuccess = resultHolder.isSuccess();
-                                // Tagged logging
-                                Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Command ID " + commandId + " execution finished. Success: " + executionSuccess);
-                            }
-                            else
-                            {
-                                // Tagged logging
-                                Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Command ID " + commandId + " execution TIMED OUT.");
-                                executionSuccess = false; // Ensure it's false on timeout
-                            }
-
-                        }
-                        catch (IllegalArgumentException e)
-                        {
-                            // Tagged logging
-                            Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Parsing Error: " + e.getMessage());
-                            executionSuccess = false;
-                        }
-                        catch (InterruptedException e)
-                        {
-                            Thread.currentThread().interrupt();
-                            // Tagged logging
-                            Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Interrupted while waiting for command execution: " + e.getMessage());
-                            executionSuccess = false;
-                        }
-                        catch (Exception e)
-                        {
-                            // Tagged logging
-                            Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Unexpected error during command processing: " + e.getMessage());
-                            executionSuccess = false;
-                        }
-
-                        String responseToClient;
-                        if (executionSuccess)
-                        {
-                            responseToClient = "FREE|" + commandId + ProtocolConstants.MESSAGE_TERMINATOR;
-                        }
-                        else
-                        {
-                            responseToClient = "FREE|" + commandId + ProtocolConstants.MESSAGE_TERMINATOR;
-                        }
-                        sendMessage(responseToClient);
-                        // Tagged logging
-                        Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Sent response: " + responseToClient);
-
-                        messageBuilder.setLength(0);
+                        // Stops decoding the rest of the message
+                        parsedCommand.getStreamingTrajectory().fail("Refused, command queue full.");
                     }
-                    else
+                    if (parsedCommand.getTrajectory() != null)
                     {
-                        messageBuilder.append(c);
+                        parsedCommand.getTrajectory().release();
                     }
+                    sendBusyResponse(commandId);
+                    return;
                 }
+                // Tagged logging
+                Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Command ID " + commandId + " queued. In flight: " + inFlight);
+                // Acknowledged from onCommandCompleted, go on with the next message right away
+                return;
+            }
+
+            CommandResultHolder resultHolder = new CommandResultHolder(parsedCommand, clientSession.getSessionId(), null);
+            resultHolder.setStageNanos(CommandStage.RECEIVED, taskMessage.receivedNanos);
+            resultHolder.setStageNanos(CommandStage.PARSED, parsedNanos);
+            CommandQueue.putCommand(resultHolder);
+
+            // Tagged logging
+            Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Waiting for command ID " + commandId + " to execute...");
+
+            boolean awaited = resultHolder.getLatch().await(60, TimeUnit.SECONDS);
+
+            if (awaited)
+            {
+                executionSuccess = resultHolder.isSuccess();
+                completedHolder = resultHolder;
+                // Tagged logging
+                Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Command ID " + commandId + " execution finished. Success: " + executionSuccess);
             }
-            else if (clientSession.getClientType() == ListenerType.LOG_LISTENER)
+            else
             {
-                String inputLine;
-                while ((inputLine = clientSession.getReader().readLine()) != null)
-                {
-                    // Tagged logging
-                    Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Received: " + inputLine);
-                    if ("bye".equalsIgnoreCase(inputLine.trim()))
-                    {
-                        // Tagged logging
-                        Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Client sent 'bye'.");
-                        break;
-                    }
-                }
+                // Tagged logging
+                Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Command ID " + commandId + " execution TIMED OUT.");
+                executionSuccess = false; // Ensure it's false on timeout
             }
+
         }
-        catch (IOException e)
+        catch (TrajectoryCacheMissException e)
         {
             // Tagged logging
-            Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): I/O error (client disconnected): " + e.getMessage());
+            Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Command ID " + e.getCommandId() + " names trajectory " + e.getHash() + ", which is not cached. Sent MISS.");
+            sendMessage(ProtocolConstants.MISS_RESPONSE_PREFIX + e.getCommandId() + ProtocolConstants.MESSAGE_TERMINATOR);
+            return;
         }
-        finally
+        catch (IllegalArgumentException e)
+        {
+            // Tagged logging
+            Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Parsing Error: " + e.getMessage());
+            executionSuccess = false;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            // Tagged logging
+            Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Interrupted while waiting for command execution: " + e.getMessage());
+            executionSuccess = false;
+        }
+        catch (Exception e)
+        {
+            // Tagged logging
+            Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Unexpected error during command processing: " + e.getMessage());
+            executionSuccess = false;
+        }
+
+        sendResponse(commandId, executionSuccess);
+        if (completedHolder != null)
+        {
+            completedHolder.markStage(CommandStage.ACKNOWLEDGED);
+            CommandLatencyTracker.getInstance().record(completedHolder);
+        }
+    }
+
+    /**
+     * Uploads ("STORE|...") or releases ("RELEASE|...") a trajectory in the {@link TrajectoryStore} and
+     * acknowledges it with FREE and the trajectory ID, like a command.
+     */
+    private void processTrajectoryStoreMessage(String message)
+    {
+        String clientAddress = clientSession.getRemoteAddress();
+        String listenerName = clientSession.getClientType().getName();
+        boolean upload = message.startsWith(ProtocolConstants.STORE_MESSAGE_PREFIX);
+        int idStart = upload ? ProtocolConstants.STORE_MESSAGE_PREFIX.length() : ProtocolConstants.RELEASE_MESSAGE_PREFIX.length();
+        int idEnd = upload ? message.indexOf('|', idStart) : message.length();
+        if (idEnd < 0)
+        {
+            idEnd = message.length();
+        }
+        String trajectoryId = message.substring(idStart, idEnd);
+        boolean success = false;
+        try
+        {
+            if (upload)
+            {
+                TrajectoryStore.getInstance().store(trajectoryId, CommandParser.parseTrajectoryUpload(message, Math.min(idEnd + 1, message.length())));
+                success = true;
+            }
+            else
+            {
+                success = TrajectoryStore.getInstance().release(trajectoryId);
+            }
+            // Tagged logging
+            Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): " + (upload ? "Stored" : success ? "Released" : "Nothing to release for") + " trajectory " + trajectoryId + ".");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Tagged logging
+            Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): " + (upload ? "Upload" : "Release") + " of trajectory " + trajectoryId + " failed: " + e.getMessage());
+        }
+        sendResponse(trajectoryId, success);
+    }
+
+    /**
+     * Uploads a trajectory to the {@link TrajectoryCache} and answers with its content hash, "CACHED|&lt;hash&gt;#".
+     * An invalid upload is answered like an unparsable command.
+     */
+    private void processTrajectoryCacheUpload(String message)
+    {
+        String clientAddress = clientSession.getRemoteAddress();
+        String listenerName = clientSession.getClientType().getName();
+        String hash;
+        try
+        {
+            hash = TrajectoryCache.getInstance().put(CommandParser.parseTrajectoryUpload(message, ProtocolConstants.CACHE_MESSAGE_PREFIX.length()));
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Tagged logging
+            Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Trajectory upload to the cache failed: " + e.getMessage());
+            sendResponse("N/A", false);
+            return;
+        }
+        String response = ProtocolConstants.CACHED_RESPONSE_PREFIX + hash + ProtocolConstants.MESSAGE_TERMINATOR;
+        sendMessage(response);
+        // Tagged logging
+        Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Sent response: " + response + " " + TrajectoryCache.getInstance().getStatistics());
+    }
+
+    /**
+     * Answers "LATENCY|&lt;action type or empty&gt;#" with the {@link CommandLatencyTracker} records, or clears them for "LATENCY|RESET#".
+     * An unknown action type gets an empty answer.
+     */
+    private void processLatencyQuery(String query)
+    {
+        String records;
+        if (ProtocolConstants.LATENCY_RESET.equalsIgnoreCase(query))
+        {
+            CommandLatencyTracker.getInstance().reset();
+            records = "";
+        }
+        else if (query.isEmpty())
+        {
+            records = CommandLatencyTracker.getInstance().getRecords(null);
+        }
+        else
         {
+            ActionTypes actionType = ActionTypes.UNKNOWN;
             try
             {
-                close();
+                actionType = ActionTypes.valueOf(query.toUpperCase());
             }
-            catch (IOException e)
+            catch (IllegalArgumentException e)
             {
-                // Tagged logging
-                Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Error closing client session: " + e.getMessage());
+                // Answered with no records
             }
+            records = actionType != ActionTypes.UNKNOWN ? CommandLatencyTracker.getInstance().getRecords(actionType) : "";
+        }
+        sendMessage(ProtocolConstants.LATENCY_MESSAGE_PREFIX + records + ProtocolConstants.MESSAGE_TERMINATOR);
+        // Tagged logging
+        Logger.getInstance().log("COMM", "ClientHandler (" + clientSession.getClientType().getName() + " - " + clientSession.getRemoteAddress() + "): Answered latency query '" + query + "'.");
+    }
+
+    private static ParsedCommand parseTaskMessage(TaskMessage taskMessage)
+    {
+        if (taskMessage.streamedCommand != null)
+        {
+            return taskMessage.streamedCommand;
+        }
+        if (taskMessage.streamError != null)
+        {
+            throw new IllegalArgumentException(taskMessage.streamError);
+        }
+        return taskMessage.binaryPayload != null
+               ? BinaryCommandParser.parseCommand(taskMessage.binaryPayload)
+               : CommandParser.parseMessage(taskMessage.text);
+    }
+
+    private void sendResponse(String commandId, boolean executionSuccess)
+    {
+        if (clientSession.isBinaryFraming())
+        {
+            clientSession.send(BinaryCommandEncoder.encodeFree(commandId, executionSuccess));
+            // Tagged logging
+            Logger.getInstance().log("COMM", "ClientHandler (" + clientSession.getClientType().getName() + " - " + clientSession.getRemoteAddress() + "): Sent binary response: FREE " + commandId);
+            return;
+        }
+
+        String responseToClient;
+        if (executionSuccess)
+        {
+            responseToClient = "FREE|" + commandId + ProtocolConstants.MESSAGE_TERMINATOR;
+        }
+        else
+        {
+            responseToClient = "FREE|" + commandId + ProtocolConstants.MESSAGE_TERMINATOR;
+        }
+        sendMessage(responseToClient);
+        // Tagged logging
+        Logger.getInstance().log("COMM", "ClientHandler (" + clientSession.getClientType().getName() + " - " + clientSession.getRemoteAddress() + "): Sent response: " + responseToClient);
+    }
+
+    private void sendBusyResponse(String commandId)
+    {
+        if (clientSession.isBinaryFraming())
+        {
+            clientSession.send(BinaryCommandEncoder.encodeBusy(commandId));
         }
+        else
+        {
+            sendMessage(ProtocolConstants.BUSY_RESPONSE_PREFIX + commandId + ProtocolConstants.MESSAGE_TERMINATOR);
+        }
+        // Tagged logging
+        Logger.getInstance().log("COMM", "ClientHandler (" + clientSession.getClientType().getName() + " - " + clientSession.getRemoteAddress() + "): Command ID " + commandId + " refused, command queue full. Sent BUSY. " + CommandQueue.getStatistics());
+    }
+
+    private void onLogMessage(String inputLine)
+    {
+        String clientAddress = clientSession.getRemoteAddress();
+        String listenerName = clientSession.getClientType().getName();
         // Tagged logging
-        Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + "): Terminated for client " + clientAddress);
+        Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Received: " + inputLine);
+        if (inputLine.startsWith(LogSubscriber.SUBSCRIBE_PREFIX))
+        {
+            LogSubscriber subscriber = Logger.getInstance().getSubscriber(this);
+            if (subscriber == null)
+            {
+                return;
+            }
+            try
+            {
+                subscriber.subscribe(inputLine.trim());
+                // Tagged logging
+                Logger.getInstance().log("LOGGER", "Subscription updated: " + subscriber);
+            }
+            catch (IllegalArgumentException e)
+            {
+                // Tagged logging
+                Logger.getInstance().log("LOGGER", "Error: Invalid subscription from " + clientAddress + ": " + e.getMessage());
+            }
+            return;
+        }
+        if ("bye".equalsIgnoreCase(inputLine.trim()))
+        {
+            // Tagged logging
+            Logger.getInstance().log("COMM", "ClientHandler (" + listenerName + " - " + clientAddress + "): Client sent 'bye'.");
+            clientSession.handleDisconnect();
+        }
+    }
+
+    /**
+     * A task message waiting for the worker: ASCII text without terminator, a binary payload, or a streamed
+     * command that is already parsed (or failed to parse) up to its lookahead.
+     */
+    private static final class TaskMessage
+    {
+        final String text;
+        final ByteBuffer binaryPayload;
+        final ParsedCommand streamedCommand;
+        final String streamId;
+        final String streamError;
+        final long receivedNanos = System.nanoTime();
+
+        TaskMessage(String text, ByteBuffer binaryPayload)
+        {
+            this.text = text;
+            this.binaryPayload = binaryPayload;
+            this.streamedCommand = null;
+            this.streamId = null;
+            this.streamError = null;
+        }
+
+        TaskMessage(ParsedCommand streamedCommand, String streamId, String streamError)
+        {
+            this.text = null;
+            this.binaryPayload = null;
+            this.streamedCommand = streamedCommand;
+            this.streamId = streamedCommand != null ? streamedCommand.getId() : streamId;
+            this.streamError = streamError;
+        }
     }
 }
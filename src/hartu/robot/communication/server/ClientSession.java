@@ -2,45 +2,89 @@ package hartu.robot.communication.server;
 
 import hartu.protocols.constants.ProtocolConstants;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ClientSession
 {
-    private final Socket socket;
-    private final PrintWriter writer;
-    private final BufferedReader reader;
+    private final SocketChannel channel;
+    private final ServerEventLoop eventLoop;
     private final ProtocolConstants.ListenerType clientType;
     private final String sessionId;
     private final String clientName;
+    private final String remoteAddress;
 
-    public ClientSession(Socket socket, ProtocolConstants.ListenerType clientType, String clientName) throws IOException
+    // Only touched from the event loop thread
+    private FrameDecoder frameDecoder;
+    private SelectionKey selectionKey;
+    private ClientHandler handler;
+
+    // Written by any thread, drained by the event loop
+    private final Queue<ByteBuffer> writeQueue;
+    private final AtomicBoolean flushScheduled;
+    // Bytes handed to send() but not yet written to the socket
+    private final AtomicLong queuedBytes;
+    private final AtomicBoolean closed;
+    private final AtomicBoolean disconnectNotified;
+    private volatile boolean binaryFraming;
+    private final Runnable flushTask;
+
+    public ClientSession(SocketChannel channel, ProtocolConstants.ListenerType clientType, String clientName, ServerEventLoop eventLoop) throws IOException
     {
-        this.socket = socket;
-        this.writer = new PrintWriter(socket.getOutputStream(), true);
-        this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        this.channel = channel;
+        this.eventLoop = eventLoop;
         this.clientType = clientType;
         this.sessionId = UUID.randomUUID().toString();
         this.clientName = clientName;
+        this.remoteAddress = resolveRemoteAddress(channel);
+        this.frameDecoder = new DelimitedFrameDecoder(clientType == ProtocolConstants.ListenerType.TASK_LISTENER
+                                                      ? ProtocolConstants.MESSAGE_TERMINATOR.charAt(0)
+                                                      : ProtocolConstants.LOG_LINE_TERMINATOR);
+        this.writeQueue = new ConcurrentLinkedQueue<>();
+        this.flushScheduled = new AtomicBoolean(false);
+        this.queuedBytes = new AtomicLong(0);
+        this.closed = new AtomicBoolean(false);
+        this.disconnectNotified = new AtomicBoolean(false);
+        this.flushTask = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    handleWritable();
+                }
+                catch (IOException e)
+                {
+                    Logger.getInstance().log("COMM", "ClientSession (" + ClientSession.this.clientName + "): Write error (client disconnected): " + e.getMessage());
+                    handleDisconnect();
+                }
+            }
+        };
+        channel.configureBlocking(false);
     }
 
-    public Socket getSocket()
-    {
-        return socket;
-    }
-
-    public PrintWriter getWriter()
+    /**
+     * Registers the session with the event loop. Must be called from the event loop thread.
+     */
+    void register(ClientHandler handler) throws IOException
     {
-        return writer;
+        this.handler = handler;
+        this.selectionKey = eventLoop.register(channel, SelectionKey.OP_READ, this);
     }
 
-    public BufferedReader getReader()
+    public SocketChannel getChannel()
     {
-        return reader;
+        return channel;
     }
 
     public ProtocolConstants.ListenerType getClientType()
@@ -58,68 +102,167 @@ public class ClientSession
         return clientName;
     }
 
-    public void close() throws IOException
+    public boolean isClosed()
     {
-        Logger.getInstance().log(
-                "COMM",
-                "ClientSession (" + clientName + "): Attempting to close session streams and socket."
-                                );
-        // Close writer first to signal end of stream to client
-        if (writer != null)
+        return closed.get();
+    }
+
+    /**
+     * Queues a message for sending. Safe to call from any thread; the actual socket write
+     * happens on the event loop, so the caller never blocks on a slow client.
+     */
+    public void send(String message)
+    {
+        send(ByteBuffer.wrap(message.getBytes(ProtocolConstants.CHARSET)));
+    }
+
+    /**
+     * Queues an already encoded frame for sending. The buffer must not be modified afterwards.
+     */
+    public void send(ByteBuffer frame)
+    {
+        if (closed.get())
         {
-            try
-            {
-                writer.close();
-                Logger.getInstance().log("COMM", "ClientSession (" + clientName + "): PrintWriter closed.");
-            }
-            catch (Exception e)
-            {
-                Logger.getInstance().log(
-                        "COMM",
-                        "ClientSession (" + clientName + "): Error closing PrintWriter: " + e.getMessage()
-                                        );
-            }
+            return;
         }
-        // Close reader next
-        if (reader != null)
+        queuedBytes.addAndGet(frame.remaining());
+        writeQueue.add(frame);
+        if (flushScheduled.compareAndSet(false, true))
         {
-            try
-            {
-                reader.close();
-                Logger.getInstance().log("COMM", "ClientSession (" + clientName + "): BufferedReader closed.");
-            }
-            catch (Exception e)
-            {
-                Logger.getInstance().log(
-                        "COMM",
-                        "ClientSession (" + clientName + "): Error closing BufferedReader: " + e.getMessage()
-                                        );
-            }
+            eventLoop.execute(flushTask);
         }
-        // Close socket last
-        if (socket != null && !socket.isClosed())
+    }
+
+    /**
+     * Number of bytes queued by {@link #send} that the client has not taken off the socket yet.
+     */
+    public long getQueuedBytes()
+    {
+        return queuedBytes.get();
+    }
+
+    public boolean isBinaryFraming()
+    {
+        return binaryFraming;
+    }
+
+    /**
+     * Switches the inbound stream from '#'-terminated frames to length-prefixed binary frames.
+     * Bytes already received after the current frame are carried over. Must be called from the event loop thread.
+     */
+    void switchToBinaryFraming() throws IOException
+    {
+        FrameDecoder binaryDecoder = new LengthPrefixedFrameDecoder();
+        ByteBuffer leftover = frameDecoder.remainingBytes();
+        while (leftover.hasRemaining())
         {
-            try
-            {
-                socket.close();
-                Logger.getInstance().log("COMM", "ClientSession (" + clientName + "): Socket closed.");
-            }
-            catch (Exception e)
+            ByteBuffer target = binaryDecoder.getReadBuffer();
+            int chunk = Math.min(target.remaining(), leftover.remaining());
+            ByteBuffer slice = leftover.duplicate();
+            slice.limit(slice.position() + chunk);
+            target.put(slice);
+            leftover.position(leftover.position() + chunk);
+        }
+        frameDecoder = binaryDecoder;
+        binaryFraming = true;
+    }
+
+    void handleReadable() throws IOException
+    {
+        int bytesRead = channel.read(frameDecoder.getReadBuffer());
+        if (bytesRead == -1)
+        {
+            Logger.getInstance().log("COMM", "ClientSession (" + clientName + "): End of stream (client disconnected).");
+            handleDisconnect();
+            return;
+        }
+        ByteBuffer frame;
+        while (!closed.get() && (frame = frameDecoder.nextFrame()) != null)
+        {
+            handler.onFrameReceived(frame);
+        }
+        if (!closed.get() && clientType == ProtocolConstants.ListenerType.TASK_LISTENER && !binaryFraming)
+        {
+            // Lets a streamed command be decoded before its terminator has arrived
+            handler.onPartialFrame(frameDecoder.remainingBytes());
+        }
+    }
+
+    void handleWritable() throws IOException
+    {
+        // Cleared before draining: a send() racing with us schedules another flush instead of being lost
+        flushScheduled.set(false);
+        if (closed.get())
+        {
+            return;
+        }
+
+        ByteBuffer pending;
+        while ((pending = writeQueue.peek()) != null)
+        {
+            queuedBytes.addAndGet(-channel.write(pending));
+            if (pending.hasRemaining())
             {
-                Logger.getInstance().log(
-                        "COMM",
-                        "ClientSession (" + clientName + "): Error closing Socket: " + e.getMessage()
-                                        );
+                // Socket buffer full, resume once the selector reports the channel writable again
+                selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
             }
+            writeQueue.poll();
         }
-        Logger.getInstance().log("COMM", "ClientSession (" + clientName + "): Session closure attempt complete.");
+        selectionKey.interestOps(SelectionKey.OP_READ);
+    }
+
+    void handleDisconnect()
+    {
+        if (!disconnectNotified.compareAndSet(false, true))
+        {
+            return;
+        }
+        try
+        {
+            close();
+        }
+        catch (IOException e)
+        {
+            Logger.getInstance().log("COMM", "ClientSession (" + clientName + "): Error closing session: " + e.getMessage());
+        }
+        if (handler != null)
+        {
+            handler.onDisconnected();
+        }
+    }
+
+    public void close() throws IOException
+    {
+        if (!closed.compareAndSet(false, true))
+        {
+            return;
+        }
+        Logger.getInstance().log("COMM", "ClientSession (" + clientName + "): Closing channel.");
+        writeQueue.clear();
+        // Closing the channel also cancels its selection key
+        channel.close();
+        Logger.getInstance().log("COMM", "ClientSession (" + clientName + "): Channel closed.");
     }
 
     public String getRemoteAddress()
     {
-        if (socket != null && socket.getInetAddress() != null)
+        return remoteAddress;
+    }
+
+    private static String resolveRemoteAddress(SocketChannel channel)
+    {
+        try
+        {
+            SocketAddress address = channel.getRemoteAddress();
+            if (address instanceof InetSocketAddress && ((InetSocketAddress) address).getAddress() != null)
+            {
+                return ((InetSocketAddress) address).getAddress().getHostAddress();
+            }
+        }
+        catch (IOException e)
         {
-            return socket.getInetAddress().getHostAddress();
+            // Fall through to "Unknown"
         }
         return "Unknown";
     }
@@ -0,0 +1,10 @@
+package hartu.robot.communication.server;
+
+/**
+ * Notified by a {@link CommandResultHolder} once its command has finished executing.
+ * Called on the executor's thread, so implementations must return quickly.
+ */
+public interface CommandCompletionListener
+{
+    void onCommandCompleted(CommandResultHolder resultHolder);
+}
@@ -0,0 +1,145 @@
+package hartu.robot.communication.server;
+
+import hartu.protocols.constants.ActionTypes;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where the time goes between a task command arriving and its FREE going out, per {@link ActionTypes}.
+ * <p>
+ * Every acknowledged command adds the time between each two consecutive {@link CommandStage}s it was stamped
+ * with to a {@link LatencyHistogram} of that interval ("parse", "queue", "execute", ...), plus the whole
+ * way from receiving to acknowledging it as "total". Commands refused or failing to parse never reach the
+ * queue and are not counted. Histograms for an action type are only created once one is recorded.
+ */
+public final class CommandLatencyTracker
+{
+    private static final CommandStage[] STAGES = CommandStage.values();
+
+    private static CommandLatencyTracker instance;
+
+    // All guarded by this. Indexed by the stage an interval ends at; index 0, RECEIVED, holds the total
+    private final Map<ActionTypes, LatencyHistogram[]> histograms = new EnumMap<>(ActionTypes.class);
+    private long recordedCommands = 0;
+
+    public static synchronized CommandLatencyTracker getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new CommandLatencyTracker();
+        }
+        return instance;
+    }
+
+    /**
+     * Adds the stage timestamps of an acknowledged command. An interval missing either of its stamps is left out.
+     */
+    public synchronized void record(CommandResultHolder resultHolder)
+    {
+        ActionTypes actionType = resultHolder.getCommand().getActionType();
+        LatencyHistogram[] intervals = histograms.get(actionType);
+        if (intervals == null)
+        {
+            intervals = new LatencyHistogram[STAGES.length];
+            for (int i = 0; i < intervals.length; i++)
+            {
+                intervals[i] = new LatencyHistogram();
+            }
+            histograms.put(actionType, intervals);
+        }
+        for (int i = 1; i < STAGES.length; i++)
+        {
+            long from = resultHolder.getStageNanos(STAGES[i - 1]);
+            long to = resultHolder.getStageNanos(STAGES[i]);
+            if (from != 0 && to != 0)
+            {
+                intervals[i].record(to - from);
+            }
+        }
+        long received = resultHolder.getStageNanos(CommandStage.RECEIVED);
+        long acknowledged = resultHolder.getStageNanos(CommandStage.ACKNOWLEDGED);
+        if (received != 0 && acknowledged != 0)
+        {
+            intervals[0].record(acknowledged - received);
+        }
+        recordedCommands++;
+    }
+
+    public synchronized long getRecordedCommands()
+    {
+        return recordedCommands;
+    }
+
+    public synchronized void reset()
+    {
+        histograms.clear();
+        recordedCommands = 0;
+    }
+
+    /**
+     * One human readable line per action type and interval recorded so far,
+     * e.g. "PTP_AXIS queue: n 120, p50 46 us, p90 61 us, p99 97 us, max 130 us".
+     */
+    public synchronized List<String> getSummary()
+    {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<ActionTypes, LatencyHistogram[]> entry : histograms.entrySet())
+        {
+            LatencyHistogram[] intervals = entry.getValue();
+            for (int i = 1; i <= intervals.length; i++)
+            {
+                // The total goes last
+                int index = i % intervals.length;
+                if (intervals[index].getCount() > 0)
+                {
+                    lines.add(entry.getKey().name() + " " + STAGES[index].getIntervalName() + ": " + intervals[index]);
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * The histograms of one action type, or all if null, as records separated by
+     * {@link hartu.protocols.constants.ProtocolConstants#SECONDARY_DELIMITER}:
+     * "&lt;action type&gt;,&lt;interval&gt;,&lt;count&gt;,&lt;p50 us&gt;,&lt;p90 us&gt;,&lt;p99 us&gt;,&lt;max us&gt;".
+     */
+    public synchronized String getRecords(ActionTypes actionType)
+    {
+        StringBuilder records = new StringBuilder();
+        for (Map.Entry<ActionTypes, LatencyHistogram[]> entry : histograms.entrySet())
+        {
+            if (actionType != null && entry.getKey() != actionType)
+            {
+                continue;
+            }
+            LatencyHistogram[] intervals = entry.getValue();
+            for (int i = 1; i <= intervals.length; i++)
+            {
+                int index = i % intervals.length;
+                LatencyHistogram histogram = intervals[index];
+                if (histogram.getCount() == 0)
+                {
+                    continue;
+                }
+                if (records.length() > 0)
+                {
+                    records.append(';');
+                }
+                records.append(entry.getKey().name()).append(',').append(STAGES[index].getIntervalName()).append(',').append(histogram.getCount())
+                       .append(',').append(micros(histogram.getValueAtPercentile(50))).append(',').append(micros(histogram.getValueAtPercentile(90)))
+                       .append(',').append(micros(histogram.getValueAtPercentile(99))).append(',').append(micros(histogram.getMaxNanos()));
+            }
+        }
+        return records.toString();
+    }
+
+    private static long micros(long nanos)
+    {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -1,59 +1,405 @@
 package hartu.robot.communication.server;
 
-import hartu.robot.commands.ParsedCommand;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Queue of commands waiting for the robot executor.
+ * <p>
+ * Every task session gets its own bounded queue so one busy client cannot starve the others.
+ * The executor side pulls from the session queues in weighted round-robin order: a session with
+ * weight N may hand out up to N consecutive commands before the next non-empty session gets its turn.
+ * Commands without a session ID go to a shared default queue.
+ * <p>
+ * On top of the session capacities the whole queue is bounded by {@link #setCapacity(int)}.
+ * {@link #putCommand} blocks while there is no room, {@link #offerCommand} refuses the command instead
+ * so the caller can tell the client to back off. Current depth and high-water marks are kept for monitoring.
+ */
 public class CommandQueue {
 
-    private static final BlockingQueue<CommandResultHolder> queue = new LinkedBlockingQueue<>();
+    public static final String DEFAULT_SESSION_ID = "default";
+    public static final int DEFAULT_SESSION_CAPACITY = 256;
+    public static final int DEFAULT_SESSION_WEIGHT = 1;
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final ReentrantLock lock = new ReentrantLock();
+    private static final Condition notEmpty = lock.newCondition();
+    private static final Condition notFull = lock.newCondition();
+
+    // All guarded by lock
+    private static final Map<String, SessionQueue> sessionQueues = new HashMap<>();
+    private static final List<SessionQueue> schedule = new ArrayList<>();
+    private static int scheduleIndex = 0;
+    private static int creditsLeft = 0;
+    private static int totalSize = 0;
+    private static int capacity = DEFAULT_CAPACITY;
+    private static int highWaterMark = 0;
+    private static long rejectedCount = 0;
+
+    static {
+        registerSession(DEFAULT_SESSION_ID, DEFAULT_SESSION_WEIGHT, DEFAULT_SESSION_CAPACITY);
+    }
 
     private CommandQueue() {}
 
+    /**
+     * Creates (or reconfigures) the queue of a session.
+     * @param weight Number of consecutive commands the session may hand out per round, at least 1.
+     * @param capacity Maximum number of queued commands for the session; putCommand blocks beyond it.
+     */
+    public static void registerSession(String sessionId, int weight, int capacity) {
+        if (weight < 1 || capacity < 1) {
+            throw new IllegalArgumentException("Session weight and capacity must be at least 1. Got weight " + weight + ", capacity " + capacity);
+        }
+        lock.lock();
+        try {
+            SessionQueue sessionQueue = sessionQueues.get(sessionId);
+            if (sessionQueue == null) {
+                sessionQueue = new SessionQueue(sessionId, weight, capacity);
+                sessionQueues.put(sessionId, sessionQueue);
+                schedule.add(sessionQueue);
+            } else {
+                sessionQueue.weight = weight;
+                sessionQueue.capacity = capacity;
+                sessionQueue.retired = false;
+                notFull.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        Logger.getInstance().log("QUEUE", "Registered session " + sessionId + " with weight " + weight + " and capacity " + capacity + ".");
+    }
+
+    /**
+     * Removes a session's queue. Commands it still holds are executed first; the queue disappears once drained.
+     */
+    public static void unregisterSession(String sessionId) {
+        if (DEFAULT_SESSION_ID.equals(sessionId)) {
+            return;
+        }
+        int pending;
+        lock.lock();
+        try {
+            SessionQueue sessionQueue = sessionQueues.get(sessionId);
+            if (sessionQueue == null) {
+                return;
+            }
+            pending = sessionQueue.commands.size();
+            sessionQueue.retired = true;
+            if (pending == 0) {
+                removeLocked(sessionQueue);
+            }
+        } finally {
+            lock.unlock();
+        }
+        Logger.getInstance().log("QUEUE", "Unregistered session " + sessionId + ". Commands still pending: " + pending);
+    }
+
+    /**
+     * Sets the maximum number of commands queued over all sessions together.
+     */
+    public static void setCapacity(int newCapacity) {
+        if (newCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1. Got " + newCapacity);
+        }
+        lock.lock();
+        try {
+            capacity = newCapacity;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        Logger.getInstance().log("QUEUE", "Queue capacity set to " + newCapacity + ".");
+    }
+
+    public static int getCapacity() {
+        lock.lock();
+        try {
+            return capacity;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a command, waiting as long as its session queue or the whole queue is full.
+     */
     public static void putCommand(CommandResultHolder resultHolder) {
+        String sessionId = sessionIdOf(resultHolder);
+        int sessionSize;
+        int queueSize;
+        lock.lock();
         try {
-            queue.put(resultHolder);
-            Logger.getInstance().log("QUEUE", "Added command ID " + resultHolder.getCommand().getId() + " to queue. Queue size: " + queue.size());
+            SessionQueue sessionQueue;
+            while (true) {
+                // Looked up again after every wait, the session may have been unregistered meanwhile
+                sessionQueue = targetQueueLocked(sessionId);
+                if (hasRoomLocked(sessionQueue)) {
+                    break;
+                }
+                notFull.await();
+            }
+            sessionSize = enqueueLocked(sessionQueue, resultHolder);
+            queueSize = totalSize;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             Logger.getInstance().log("QUEUE", "Error: Interrupted while trying to put command: " + e.getMessage());
+            return;
+        } finally {
+            lock.unlock();
+        }
+        Logger.getInstance().log("QUEUE", "Added command ID " + resultHolder.getCommand().getId() + " from session " + sessionId + " to queue. Session queue size: " + sessionSize + ", total: " + queueSize);
+    }
+
+    /**
+     * Adds a command only if its session queue and the whole queue have room, without waiting.
+     * @return false if the command was refused because the queue is full.
+     */
+    public static boolean offerCommand(CommandResultHolder resultHolder) {
+        String sessionId = sessionIdOf(resultHolder);
+        boolean accepted;
+        int sessionSize;
+        int queueSize;
+        lock.lock();
+        try {
+            SessionQueue sessionQueue = targetQueueLocked(sessionId);
+            accepted = hasRoomLocked(sessionQueue);
+            if (accepted) {
+                sessionSize = enqueueLocked(sessionQueue, resultHolder);
+            } else {
+                rejectedCount++;
+                sessionSize = sessionQueue.commands.size();
+            }
+            queueSize = totalSize;
+        } finally {
+            lock.unlock();
         }
+        Logger.getInstance().log("QUEUE", (accepted ? "Added command ID " : "Refused command ID ") + resultHolder.getCommand().getId() + " from session " + sessionId + (accepted ? " to queue." : ", queue full.") + " Session queue size: " + sessionSize + ", total: " + queueSize);
+        return accepted;
     }
 
     public static CommandResultHolder takeCommand() {
         CommandResultHolder resultHolder = null;
+        int queueSize = 0;
+        lock.lock();
         try {
-            resultHolder = queue.take();
-            Logger.getInstance().log("QUEUE", "Took command ID " + resultHolder.getCommand().getId() + " from queue. Queue size: " + queue.size());
+            while (totalSize == 0) {
+                notEmpty.await();
+            }
+            resultHolder = dequeueLocked();
+            queueSize = totalSize;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             Logger.getInstance().log("QUEUE", "Error: Interrupted while trying to take command: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+        if (resultHolder != null) {
+            Logger.getInstance().log("QUEUE", "Took command ID " + resultHolder.getCommand().getId() + " from queue. Queue size: " + queueSize);
         }
         return resultHolder;
     }
 
     public static CommandResultHolder pollCommand(long timeout, TimeUnit unit) {
         CommandResultHolder resultHolder = null;
+        int queueSize = 0;
+        lock.lock();
         try {
-            resultHolder = queue.poll(timeout, unit);
-            if (resultHolder != null) {
-                Logger.getInstance().log("QUEUE", "Polled command ID " + resultHolder.getCommand().getId() + " from queue. Queue size: " + queue.size());
-            } else {
-                // Logger.getInstance().log("QUEUE", "No command available after " + timeout + " " + unit.name().toLowerCase() + "."); // Keep this commented if you want to avoid frequent logs
+            long nanos = unit.toNanos(timeout);
+            while (totalSize == 0 && nanos > 0) {
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            if (totalSize > 0) {
+                resultHolder = dequeueLocked();
+                queueSize = totalSize;
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             Logger.getInstance().log("QUEUE", "Error: Interrupted while trying to poll command: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+        if (resultHolder != null) {
+            Logger.getInstance().log("QUEUE", "Polled command ID " + resultHolder.getCommand().getId() + " from queue. Queue size: " + queueSize);
+        } else {
+            // Logger.getInstance().log("QUEUE", "No command available after " + timeout + " " + unit.name().toLowerCase() + "."); // Keep this commented if you want to avoid frequent logs
         }
         return resultHolder;
     }
 
     public static boolean isEmpty() {
-        return queue.isEmpty();
+        return size() == 0;
     }
 
     public static int size() {
-        return queue.size();
+        lock.lock();
+        try {
+            return totalSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public static int size(String sessionId) {
+        lock.lock();
+        try {
+            SessionQueue sessionQueue = sessionQueues.get(sessionId);
+            return sessionQueue == null ? 0 : sessionQueue.commands.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Largest total queue depth seen since start or the last {@link #resetHighWaterMarks()}.
+     */
+    public static int getHighWaterMark() {
+        lock.lock();
+        try {
+            return highWaterMark;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public static int getHighWaterMark(String sessionId) {
+        lock.lock();
+        try {
+            SessionQueue sessionQueue = sessionQueues.get(sessionId);
+            return sessionQueue == null ? 0 : sessionQueue.highWaterMark;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public static void resetHighWaterMarks() {
+        lock.lock();
+        try {
+            highWaterMark = totalSize;
+            for (SessionQueue sessionQueue : schedule) {
+                sessionQueue.highWaterMark = sessionQueue.commands.size();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of commands refused by {@link #offerCommand} because the queue was full.
+     */
+    public static long getRejectedCount() {
+        lock.lock();
+        try {
+            return rejectedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public static String getStatistics() {
+        lock.lock();
+        try {
+            return "Depth: " + totalSize + "/" + capacity + ", high-water mark: " + highWaterMark + ", refused: " + rejectedCount + ", sessions: " + schedule.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static String sessionIdOf(CommandResultHolder resultHolder) {
+        return resultHolder.getSessionId() != null ? resultHolder.getSessionId() : DEFAULT_SESSION_ID;
+    }
+
+    /**
+     * Queue a command of the given session goes to, the default queue once the session is gone. Requires the lock.
+     */
+    private static SessionQueue targetQueueLocked(String sessionId) {
+        SessionQueue sessionQueue = sessionQueues.get(sessionId);
+        if (sessionQueue == null || sessionQueue.retired) {
+            sessionQueue = sessionQueues.get(DEFAULT_SESSION_ID);
+        }
+        return sessionQueue;
+    }
+
+    private static boolean hasRoomLocked(SessionQueue sessionQueue) {
+        return sessionQueue.commands.size() < sessionQueue.capacity && totalSize < capacity;
+    }
+
+    /**
+     * Appends a command and updates the depth metrics. Requires the lock. Returns the new session queue size.
+     */
+    private static int enqueueLocked(SessionQueue sessionQueue, CommandResultHolder resultHolder) {
+        resultHolder.markStage(CommandStage.ENQUEUED);
+        sessionQueue.commands.addLast(resultHolder);
+        int sessionSize = sessionQueue.commands.size();
+        if (sessionSize > sessionQueue.highWaterMark) {
+            sessionQueue.highWaterMark = sessionSize;
+        }
+        if (++totalSize > highWaterMark) {
+            highWaterMark = totalSize;
+        }
+        notEmpty.signal();
+        return sessionSize;
+    }
+
+    /**
+     * Weighted round-robin pick. Requires the lock to be held and totalSize > 0.
+     */
+    private static CommandResultHolder dequeueLocked() {
+        // Bounded by one full round: after at most schedule.size() moves we reach a non-empty queue with fresh credits
+        for (int step = 0; step <= schedule.size(); step++) {
+            if (scheduleIndex >= schedule.size()) {
+                scheduleIndex = 0;
+                creditsLeft = schedule.get(0).weight;
+            }
+            SessionQueue sessionQueue = schedule.get(scheduleIndex);
+            if (creditsLeft > 0 && !sessionQueue.commands.isEmpty()) {
+                creditsLeft--;
+                totalSize--;
+                CommandResultHolder resultHolder = sessionQueue.commands.pollFirst();
+                resultHolder.markStage(CommandStage.DEQUEUED);
+                notFull.signalAll();
+                if (sessionQueue.retired && sessionQueue.commands.isEmpty()) {
+                    removeLocked(sessionQueue);
+                }
+                return resultHolder;
+            }
+            scheduleIndex = (scheduleIndex + 1) % schedule.size();
+            creditsLeft = schedule.get(scheduleIndex).weight;
+        }
+        throw new IllegalStateException("Command queue size is " + totalSize + " but no session queue holds a command.");
+    }
+
+    private static void removeLocked(SessionQueue sessionQueue) {
+        int index = schedule.indexOf(sessionQueue);
+        schedule.remove(index);
+        sessionQueues.remove(sessionQueue.sessionId);
+        if (index < scheduleIndex) {
+            scheduleIndex--;
+        } else if (index == scheduleIndex) {
+            // The next session slid into the current slot, give it a fresh round
+            creditsLeft = scheduleIndex < schedule.size() ? schedule.get(scheduleIndex).weight : 0;
+        }
+    }
+
+    private static class SessionQueue {
+        final String sessionId;
+        final ArrayDeque<CommandResultHolder> commands;
+        int weight;
+        int capacity;
+        int highWaterMark;
+        boolean retired;
+
+        SessionQueue(String sessionId, int weight, int capacity) {
+            this.sessionId = sessionId;
+            this.commands = new ArrayDeque<>();
+            this.weight = weight;
+            this.capacity = capacity;
+        }
     }
 }
@@ -3,6 +3,7 @@ package hartu.robot.communication.server;
 
 import hartu.robot.commands.ParsedCommand;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A holder class to pass a ParsedCommand along with a mechanism
@@ -11,16 +12,36 @@ import java.util.concurrent.CountDownLatch;
  */
 public class CommandResultHolder {
     private final ParsedCommand command;
+    private final String sessionId;
     private final CountDownLatch latch;
+    private final CommandCompletionListener completionListener;
+    private final AtomicBoolean completed;
     private volatile boolean success; // volatile to ensure visibility across threads
+    // System.nanoTime() per CommandStage, 0 until reached. Each is written by one thread before handing the
+    // command on through the queue lock or complete(), which publishes it to the later stages
+    private final long[] stageNanos = new long[CommandStage.values().length];
 
     /**
      * Creates a new CommandResultHolder.
      * @param command The ParsedCommand to be executed.
      */
     public CommandResultHolder(ParsedCommand command) {
+        this(command, null, null);
+    }
+
+    /**
+     * Creates a new CommandResultHolder that notifies a listener on completion instead of
+     * requiring the sender to block on the latch.
+     * @param command The ParsedCommand to be executed.
+     * @param sessionId Session the command came from, used to queue it and route its result back. May be null.
+     * @param completionListener Called once from {@link #complete(boolean)}, may be null.
+     */
+    public CommandResultHolder(ParsedCommand command, String sessionId, CommandCompletionListener completionListener) {
         this.command = command;
+        this.sessionId = sessionId;
         this.latch = new CountDownLatch(1); // Latch will count down once when command is executed
+        this.completionListener = completionListener;
+        this.completed = new AtomicBoolean(false);
         this.success = false; // Default to false
     }
 
@@ -28,10 +49,42 @@ public class CommandResultHolder {
         return command;
     }
 
+    public String getSessionId() {
+        return sessionId;
+    }
+
     public CountDownLatch getLatch() {
         return latch;
     }
 
+    /**
+     * {@link System#nanoTime()} when the command was added to the {@link CommandQueue}, 0 if it never was.
+     */
+    public long getEnqueuedNanos() {
+        return stageNanos[CommandStage.ENQUEUED.ordinal()];
+    }
+
+    /**
+     * {@link System#nanoTime()} when the command reached {@code stage}, 0 if it has not (yet).
+     */
+    public long getStageNanos(CommandStage stage) {
+        return stageNanos[stage.ordinal()];
+    }
+
+    /**
+     * Stamps the command as having reached {@code stage} now.
+     */
+    public void markStage(CommandStage stage) {
+        stageNanos[stage.ordinal()] = System.nanoTime();
+    }
+
+    /**
+     * Stamps a stage reached before this holder existed, like receiving and parsing the command.
+     */
+    public void setStageNanos(CommandStage stage, long nanos) {
+        stageNanos[stage.ordinal()] = nanos;
+    }
+
     public boolean isSuccess() {
         return success;
     }
@@ -39,4 +92,28 @@ public class CommandResultHolder {
     public void setSuccess(boolean success) {
         this.success = success;
     }
+
+    /**
+     * Records the execution result, gives back the command's stored trajectory, releases anyone waiting
+     * on the latch and notifies the completion listener. Only the first call has an effect.
+     */
+    public void complete(boolean success) {
+        if (!completed.compareAndSet(false, true)) {
+            return;
+        }
+        this.success = success;
+        markStage(CommandStage.FINISHED);
+        if (command.getTrajectory() != null) {
+            // A stored trajectory can be freed once no command runs it any more
+            command.getTrajectory().release();
+        }
+        latch.countDown();
+        if (completionListener != null) {
+            completionListener.onCommandCompleted(this);
+        }
+    }
+
+    public boolean isCompleted() {
+        return completed.get();
+    }
 }
@@ -0,0 +1,36 @@
+package hartu.robot.communication.server;
+
+/**
+ * Points in the life of a task command, stamped with {@link System#nanoTime()} on its
+ * {@link CommandResultHolder} as it passes them, in this order.
+ */
+public enum CommandStage
+{
+    // The command's frame was taken off the socket; for a streamed command, once its lookahead of points is in
+    RECEIVED("total"),
+    // Includes waiting behind earlier messages of the session for the task worker
+    PARSED("parse"),
+    ENQUEUED("enqueue"),
+    DEQUEUED("queue"),
+    // The executor starts moving, after any wait for motions still running before it
+    STARTED("dispatch"),
+    FINISHED("execute"),
+    // The acknowledgement was handed to the session for writing
+    ACKNOWLEDGED("ack");
+
+    private final String intervalName;
+
+    CommandStage(String intervalName)
+    {
+        this.intervalName = intervalName;
+    }
+
+    /**
+     * Name of the time spent getting from the previous stage to this one, e.g. "queue" for {@link #DEQUEUED}.
+     * {@link #RECEIVED} has no previous stage and names the whole way to {@link #ACKNOWLEDGED}.
+     */
+    public String getIntervalName()
+    {
+        return intervalName;
+    }
+}
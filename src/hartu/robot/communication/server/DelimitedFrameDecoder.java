@@ -0,0 +1,114 @@
+package hartu.robot.communication.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link FrameDecoder} for frames terminated by a single delimiter byte, such as the '#' of the task
+ * protocol or the newline of the log protocol.
+ * <p>
+ * Frames are returned as slices of one direct buffer, so no bytes are copied while decoding. Scanning
+ * resumes where the previous read stopped, so a partial frame spread over many reads is only scanned once.
+ * The buffer is compacted lazily when it runs full and grows (up to a maximum) for frames longer than it.
+ */
+public class DelimitedFrameDecoder implements FrameDecoder
+{
+    public static final int DEFAULT_INITIAL_CAPACITY = 8192;
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    private final byte delimiter;
+    private final int maxFrameLength;
+    private ByteBuffer buffer; // Always in fill mode: [0, position) holds received data
+
+    private int frameStart;    // Start of the first frame not yet handed out
+    private int scanPosition;  // Everything in [frameStart, scanPosition) is known to hold no delimiter
+
+    public DelimitedFrameDecoder(char delimiter)
+    {
+        this(delimiter, DEFAULT_INITIAL_CAPACITY, DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public DelimitedFrameDecoder(char delimiter, int initialCapacity, int maxFrameLength)
+    {
+        if (delimiter > 0x7F)
+        {
+            throw new IllegalArgumentException("Frame delimiter must be a single-byte ASCII character: " + delimiter);
+        }
+        this.delimiter = (byte) delimiter;
+        this.maxFrameLength = maxFrameLength;
+        this.buffer = ByteBuffer.allocateDirect(Math.min(initialCapacity, maxFrameLength));
+    }
+
+    @Override
+    public ByteBuffer getReadBuffer() throws IOException
+    {
+        if (buffer.hasRemaining())
+        {
+            return buffer;
+        }
+
+        if (frameStart > 0)
+        {
+            // Move the partial frame to the front; previously handed out frames become invalid here
+            buffer.limit(buffer.position());
+            buffer.position(frameStart);
+            buffer.compact();
+            scanPosition -= frameStart;
+            frameStart = 0;
+            if (buffer.hasRemaining())
+            {
+                return buffer;
+            }
+        }
+
+        if (buffer.capacity() >= maxFrameLength)
+        {
+            throw new IOException("Frame exceeds maximum length of " + maxFrameLength + " bytes without delimiter '" + (char) delimiter + "'.");
+        }
+        ByteBuffer grown = ByteBuffer.allocateDirect((int) Math.min((long) buffer.capacity() * 2, maxFrameLength));
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+        return buffer;
+    }
+
+    @Override
+    public ByteBuffer nextFrame()
+    {
+        int end = buffer.position();
+        for (int i = scanPosition; i < end; i++)
+        {
+            if (buffer.get(i) == delimiter)
+            {
+                ByteBuffer frame = buffer.duplicate();
+                frame.limit(i);
+                frame.position(frameStart);
+                frameStart = i + 1;
+                scanPosition = frameStart;
+                return frame.slice();
+            }
+        }
+
+        if (frameStart == end)
+        {
+            // Everything consumed, restart at the front without copying anything
+            buffer.clear();
+            frameStart = 0;
+            scanPosition = 0;
+        }
+        else
+        {
+            scanPosition = end;
+        }
+        return null;
+    }
+
+    @Override
+    public ByteBuffer remainingBytes()
+    {
+        ByteBuffer remaining = buffer.duplicate();
+        remaining.limit(buffer.position());
+        remaining.position(frameStart);
+        return remaining.slice();
+    }
+}
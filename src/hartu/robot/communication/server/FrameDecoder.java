@@ -0,0 +1,31 @@
+package hartu.robot.communication.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Splits the byte stream of one session into protocol frames.
+ * <p>
+ * The session reads from its channel into {@link #getReadBuffer()} and then drains complete frames
+ * with {@link #nextFrame()}. Frames are views onto the decoder's own buffer and stay valid only
+ * until the next call to {@link #getReadBuffer()}.
+ */
+public interface FrameDecoder
+{
+    /**
+     * Returns the buffer to read channel data into, in fill mode and with at least one byte remaining.
+     * @throws IOException if a single frame outgrows the decoder's maximum frame length.
+     */
+    ByteBuffer getReadBuffer() throws IOException;
+
+    /**
+     * Returns the next complete frame without its framing bytes, or null if only a partial frame is buffered.
+     */
+    ByteBuffer nextFrame() throws IOException;
+
+    /**
+     * Returns the buffered bytes that have not been handed out as a frame yet, e.g. to move them to
+     * another decoder when a session switches its wire format.
+     */
+    ByteBuffer remainingBytes();
+}
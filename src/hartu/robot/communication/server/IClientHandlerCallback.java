@@ -5,4 +5,6 @@ import hartu.protocols.constants.ProtocolConstants.*;
 public interface IClientHandlerCallback
 {
     void onClientConnected(ClientHandler handler, ListenerType listenerType);
+
+    void onClientDisconnected(ClientHandler handler, ListenerType listenerType);
 }
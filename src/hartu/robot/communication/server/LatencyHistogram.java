@@ -0,0 +1,129 @@
+package hartu.robot.communication.server;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency distribution in nanoseconds with a fixed relative precision, laid out like an HdrHistogram:
+ * values below {@value #SUB_BUCKET_COUNT} ns are counted exactly, above that every power of two is split
+ * into {@value #HALF_SUB_BUCKET_COUNT} equal buckets, so any recorded value is reported within about 3 %.
+ * Recording is a few shifts and an array increment, without allocation. Values above
+ * {@link #MAX_TRACKABLE_NANOS} count as that maximum.
+ * <p>
+ * Not thread safe, callers synchronize.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKET_COUNT = SUB_BUCKET_COUNT / 2;
+    // About 68 s, far beyond any single command stage
+    public static final long MAX_TRACKABLE_NANOS = (1L << 36) - 1;
+
+    private final long[] counts = new long[indexOf(MAX_TRACKABLE_NANOS) + 1];
+    private long totalCount = 0;
+    private long totalNanos = 0;
+    private long minNanos = Long.MAX_VALUE;
+    private long maxNanos = 0;
+
+    public void record(long nanos)
+    {
+        long value = Math.min(Math.max(nanos, 0), MAX_TRACKABLE_NANOS);
+        counts[indexOf(value)]++;
+        totalCount++;
+        totalNanos += value;
+        minNanos = Math.min(minNanos, value);
+        maxNanos = Math.max(maxNanos, value);
+    }
+
+    public long getCount()
+    {
+        return totalCount;
+    }
+
+    public long getMinNanos()
+    {
+        return totalCount == 0 ? 0 : minNanos;
+    }
+
+    public long getMaxNanos()
+    {
+        return maxNanos;
+    }
+
+    public long getMeanNanos()
+    {
+        return totalCount == 0 ? 0 : totalNanos / totalCount;
+    }
+
+    /**
+     * Smallest value that {@code percentile} percent of the recorded values are at or below, rounded up to the
+     * top of its bucket but never above the largest value recorded. 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        if (totalCount == 0)
+        {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * totalCount));
+        long seen = 0;
+        for (int index = 0; index < counts.length; index++)
+        {
+            seen += counts[index];
+            if (seen >= rank)
+            {
+                return Math.min(highestValueAt(index), maxNanos);
+            }
+        }
+        return maxNanos;
+    }
+
+    public void reset()
+    {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        totalNanos = 0;
+        minNanos = Long.MAX_VALUE;
+        maxNanos = 0;
+    }
+
+    /**
+     * "n 120, p50 46 us, p90 61 us, p99 97 us, max 130 us"
+     */
+    @Override
+    public String toString()
+    {
+        return "n " + totalCount + ", p50 " + micros(getValueAtPercentile(50)) + " us, p90 " + micros(getValueAtPercentile(90))
+               + " us, p99 " + micros(getValueAtPercentile(99)) + " us, max " + micros(maxNanos) + " us";
+    }
+
+    private static long micros(long nanos)
+    {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * Exact below SUB_BUCKET_COUNT; above, the top SUB_BUCKET_BITS bits of the value pick a bucket within its power of two.
+     */
+    private static int indexOf(long value)
+    {
+        if (value < SUB_BUCKET_COUNT)
+        {
+            return (int) value;
+        }
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * HALF_SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+    private static long highestValueAt(int index)
+    {
+        if (index < SUB_BUCKET_COUNT)
+        {
+            return index;
+        }
+        int shift = index / HALF_SUB_BUCKET_COUNT - 1;
+        long subBucket = index % HALF_SUB_BUCKET_COUNT + HALF_SUB_BUCKET_COUNT;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,102 @@
+package hartu.robot.communication.server;
+
+import hartu.protocols.constants.BinaryProtocolConstants;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link FrameDecoder} for the binary task protocol: every frame starts with a little-endian int32
+ * payload length. Frames are returned as slices of one direct buffer, already set to little-endian order.
+ */
+public class LengthPrefixedFrameDecoder implements FrameDecoder
+{
+    private final int maxFrameLength;
+    private ByteBuffer buffer; // Always in fill mode: [0, position) holds received data
+    private int frameStart;    // Start of the length prefix of the first frame not yet handed out
+
+    public LengthPrefixedFrameDecoder()
+    {
+        this(DelimitedFrameDecoder.DEFAULT_INITIAL_CAPACITY, DelimitedFrameDecoder.DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public LengthPrefixedFrameDecoder(int initialCapacity, int maxFrameLength)
+    {
+        this.maxFrameLength = maxFrameLength;
+        this.buffer = ByteBuffer.allocateDirect(Math.max(initialCapacity, BinaryProtocolConstants.LENGTH_PREFIX_SIZE)).order(BinaryProtocolConstants.BYTE_ORDER);
+    }
+
+    @Override
+    public ByteBuffer getReadBuffer() throws IOException
+    {
+        if (buffer.hasRemaining())
+        {
+            return buffer;
+        }
+
+        if (frameStart > 0)
+        {
+            // Move the partial frame to the front; previously handed out frames become invalid here
+            buffer.limit(buffer.position());
+            buffer.position(frameStart);
+            buffer.compact();
+            frameStart = 0;
+            if (buffer.hasRemaining())
+            {
+                return buffer;
+            }
+        }
+
+        // A single frame fills the whole buffer: grow to fit it (its length is known once the prefix is in)
+        int required = buffer.position() >= BinaryProtocolConstants.LENGTH_PREFIX_SIZE
+                       ? BinaryProtocolConstants.LENGTH_PREFIX_SIZE + buffer.getInt(0)
+                       : buffer.capacity() * 2;
+        ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(required, buffer.capacity() * 2)).order(BinaryProtocolConstants.BYTE_ORDER);
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+        return buffer;
+    }
+
+    @Override
+    public ByteBuffer nextFrame() throws IOException
+    {
+        int available = buffer.position() - frameStart;
+        if (available < BinaryProtocolConstants.LENGTH_PREFIX_SIZE)
+        {
+            if (available == 0)
+            {
+                // Everything consumed, restart at the front without copying anything
+                buffer.clear();
+                frameStart = 0;
+            }
+            return null;
+        }
+
+        int payloadLength = buffer.getInt(frameStart);
+        if (payloadLength < 0 || payloadLength > maxFrameLength)
+        {
+            throw new IOException("Invalid binary frame length " + payloadLength + " (maximum " + maxFrameLength + " bytes).");
+        }
+        if (available - BinaryProtocolConstants.LENGTH_PREFIX_SIZE < payloadLength)
+        {
+            return null;
+        }
+
+        ByteBuffer frame = buffer.duplicate();
+        int payloadStart = frameStart + BinaryProtocolConstants.LENGTH_PREFIX_SIZE;
+        frame.limit(payloadStart + payloadLength);
+        frame.position(payloadStart);
+        frameStart = payloadStart + payloadLength;
+        return frame.slice().order(BinaryProtocolConstants.BYTE_ORDER);
+    }
+
+    @Override
+    public ByteBuffer remainingBytes()
+    {
+        ByteBuffer remaining = buffer.duplicate();
+        remaining.limit(buffer.position());
+        remaining.position(frameStart);
+        return remaining.slice();
+    }
+}
@@ -0,0 +1,131 @@
+package hartu.robot.communication.server;
+
+import hartu.protocols.constants.ProtocolConstants;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One connected log client together with what it wants to receive.
+ * <p>
+ * A new subscriber receives every tag from {@link Logger.Level#INFO} up. It can narrow this down by sending
+ * a subscription line on the log port, {@code SUBSCRIBE|<tag>;<tag>;...|<min level>}, for example
+ * {@code SUBSCRIBE|COMM;QUEUE|WARN} or {@code SUBSCRIBE|*|DEBUG}. The level part may be omitted.
+ * <p>
+ * Each subscriber has its own outbound byte budget: while more than that is still waiting to be written
+ * to its socket, new batches for it are dropped and counted, so a stalled client costs neither memory
+ * nor latency for the others.
+ */
+public class LogSubscriber
+{
+    public static final String SUBSCRIBE_PREFIX = "SUBSCRIBE|";
+    public static final String ALL_TAGS = "*";
+    public static final int DEFAULT_MAX_QUEUED_BYTES = 1024 * 1024;
+
+    private final ClientHandler clientHandler;
+    private final int maxQueuedBytes;
+    // Replaced as a whole on every subscription change, null means every tag
+    private volatile Set<String> tags = null;
+    private volatile Logger.Level minLevel = Logger.Level.INFO;
+    private final AtomicLong droppedMessages = new AtomicLong();
+
+    // Only used by the log writer thread
+    final StringBuilder pendingBatch = new StringBuilder(4096);
+    int pendingMessages = 0;
+
+    public LogSubscriber(ClientHandler clientHandler, int maxQueuedBytes)
+    {
+        this.clientHandler = clientHandler;
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
+    public ClientHandler getClientHandler()
+    {
+        return clientHandler;
+    }
+
+    public boolean accepts(Logger.Level level, String tag)
+    {
+        if (level.ordinal() < minLevel.ordinal())
+        {
+            return false;
+        }
+        Set<String> currentTags = tags;
+        return currentTags == null || currentTags.contains(tag);
+    }
+
+    /**
+     * Applies a subscription line as described in the class comment.
+     * @throws IllegalArgumentException if the line is malformed; the current subscription stays in place.
+     */
+    public void subscribe(String subscriptionLine)
+    {
+        if (!subscriptionLine.startsWith(SUBSCRIBE_PREFIX))
+        {
+            throw new IllegalArgumentException("Subscription must start with '" + SUBSCRIBE_PREFIX + "'. Got: " + subscriptionLine);
+        }
+        String[] parts = subscriptionLine.substring(SUBSCRIBE_PREFIX.length()).split(ProtocolConstants.PRIMARY_DELIMITER);
+        if (parts.length > 2)
+        {
+            throw new IllegalArgumentException("Subscription has too many fields. Expected '" + SUBSCRIBE_PREFIX + "<tags>|<level>'. Got: " + subscriptionLine);
+        }
+
+        Set<String> newTags = new HashSet<>();
+        for (String tag : parts[0].split(ProtocolConstants.SECONDARY_DELIMITER))
+        {
+            String trimmed = tag.trim().toUpperCase(Locale.ROOT);
+            if (ALL_TAGS.equals(trimmed))
+            {
+                newTags = null;
+                break;
+            }
+            if (!trimmed.isEmpty())
+            {
+                newTags.add(trimmed);
+            }
+        }
+
+        Logger.Level newMinLevel = minLevel;
+        if (parts.length == 2 && !parts[1].trim().isEmpty())
+        {
+            try
+            {
+                newMinLevel = Logger.Level.valueOf(parts[1].trim().toUpperCase(Locale.ROOT));
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new IllegalArgumentException("Unknown log level '" + parts[1].trim() + "'. Expected one of DEBUG, INFO, WARN, ERROR.");
+            }
+        }
+
+        this.tags = newTags == null ? null : Collections.unmodifiableSet(newTags);
+        this.minLevel = newMinLevel;
+    }
+
+    /**
+     * Whether the subscriber's socket can take another batch without exceeding its budget.
+     */
+    boolean hasCapacity()
+    {
+        return clientHandler.getClientSession().getQueuedBytes() < maxQueuedBytes;
+    }
+
+    void countDropped(int messages)
+    {
+        droppedMessages.addAndGet(messages);
+    }
+
+    public long getDroppedMessages()
+    {
+        return droppedMessages.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        Set<String> currentTags = tags;
+        return clientHandler.getClientSession().getClientName() + " (tags: " + (currentTags == null ? ALL_TAGS : currentTags) + ", min level: " + minLevel + ")";
+    }
+}
@@ -2,44 +2,266 @@ package hartu.robot.communication.server;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Asynchronous logger. {@link #log(String, String)} only stores the tag, message and timestamp in a
+ * pre-allocated ring buffer; a single background writer thread formats everything that has accumulated
+ * and sends it to each log client as one write. Callers such as the parser or the executor therefore
+ * never wait for formatting or for a slow log client.
+ * <p>
+ * Any number of log clients may be connected, each as a {@link LogSubscriber} with its own tag and level
+ * filter. A message no subscriber wants is discarded in {@link #log} before it is buffered or formatted;
+ * callers building expensive messages can check {@link #isEnabled(String)} first.
+ * <p>
+ * When the ring buffer is full the {@link OverflowPolicy} decides whether the oldest or the newest
+ * message is dropped; both are counted.
+ */
 public class Logger
 {
+    public enum Level
+    {
+        DEBUG,
+        INFO,
+        WARN,
+        ERROR
+    }
+
+    public enum OverflowPolicy
+    {
+        // Keep the most recent history, overwrite the oldest unsent message
+        DROP_OLDEST,
+        // Keep what is already buffered, discard the message being logged
+        DROP_NEW
+    }
+
+    public static final int DEFAULT_CAPACITY = 8192;
+    // Upper bound for one socket write, in messages
+    private static final int MAX_BATCH_SIZE = 512;
+
     private static Logger instance;
-    private ClientHandler logClientHandler;
-    private final SimpleDateFormat timeFormat; // For HH:mm:ss.SSS
+    private final List<LogSubscriber> subscribers = new CopyOnWriteArrayList<>();
+    private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+
+    // Ring buffer slots, guarded by lock. head is the oldest unsent message, size the number of buffered ones
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition drained = lock.newCondition();
+    private final long[] slotTimes;
+    private final Level[] slotLevels;
+    private final String[] slotTags;
+    private final String[] slotMessages;
+    private int head = 0;
+    private int size = 0;
+    private boolean writerWaiting = false;
+    // Messages the writer has taken out of the ring but not handed to the subscribers yet
+    private int writing = 0;
+
+    private final AtomicLong droppedOldest = new AtomicLong();
+    private final AtomicLong droppedNew = new AtomicLong();
+    private final AtomicLong messagesWritten = new AtomicLong();
+    private final AtomicLong batchesWritten = new AtomicLong();
 
-    private Logger()
+    private Logger(int capacity)
     {
-        this.timeFormat = new SimpleDateFormat("HH:mm:ss.SSS");
+        this.slotTimes = new long[capacity];
+        this.slotLevels = new Level[capacity];
+        this.slotTags = new String[capacity];
+        this.slotMessages = new String[capacity];
+
+        Thread writerThread = new Thread(new LogWriter(), "LogWriter");
+        writerThread.setDaemon(true);
+        writerThread.setPriority(Thread.MIN_PRIORITY);
+        writerThread.start();
     }
 
     public static synchronized Logger getInstance()
     {
         if (instance == null)
         {
-            instance = new Logger();
+            instance = new Logger(DEFAULT_CAPACITY);
         }
         return instance;
     }
 
-    public void setLogClientHandler(ClientHandler handler)
+    /**
+     * Starts sending log messages to the given log client, by default every tag from {@link Level#INFO} up.
+     */
+    public LogSubscriber addSubscriber(ClientHandler handler)
+    {
+        LogSubscriber subscriber = new LogSubscriber(handler, LogSubscriber.DEFAULT_MAX_QUEUED_BYTES);
+        subscribers.add(subscriber);
+        // Log when a subscriber is added, using a tag
+        log("LOGGER", "Log subscriber added: " + subscriber + ". Subscribers: " + subscribers.size());
+        return subscriber;
+    }
+
+    public void removeSubscriber(ClientHandler handler)
+    {
+        LogSubscriber subscriber = getSubscriber(handler);
+        if (subscriber != null && subscribers.remove(subscriber))
+        {
+            log("LOGGER", "Log subscriber removed: " + subscriber + ". Dropped for it: " + subscriber.getDroppedMessages() + ". Subscribers: " + subscribers.size());
+        }
+    }
+
+    public void removeAllSubscribers()
+    {
+        subscribers.clear();
+    }
+
+    /**
+     * Waits until everything logged so far has been handed to the subscribers and their clients have taken it
+     * off the socket, e.g. before {@link ServerClass#stop()} closes them. Returns false if that took longer than
+     * {@code timeout}.
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException
     {
-        this.logClientHandler = handler;
-        // Log when the log client handler is set, using a tag
-        log("LOGGER", "Log client handler set.");
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        lock.lock();
+        try
+        {
+            long remaining;
+            while ((size > 0 || writing > 0) && (remaining = deadline - System.nanoTime()) > 0)
+            {
+                drained.awaitNanos(remaining);
+            }
+            if (size > 0 || writing > 0)
+            {
+                return false;
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        for (LogSubscriber subscriber : subscribers)
+        {
+            ClientSession session = subscriber.getClientHandler().getClientSession();
+            while (session.getQueuedBytes() > 0 && !session.isClosed())
+            {
+                if (deadline - System.nanoTime() <= 0)
+                {
+                    return false;
+                }
+                Thread.sleep(1);
+            }
+        }
+        return true;
+    }
+
+    public LogSubscriber getSubscriber(ClientHandler handler)
+    {
+        for (LogSubscriber subscriber : subscribers)
+        {
+            if (subscriber.getClientHandler() == handler)
+            {
+                return subscriber;
+            }
+        }
+        return null;
     }
 
-    // New method to send a log message with a tag
+    public int getSubscriberCount()
+    {
+        return subscribers.size();
+    }
+
+    /**
+     * Whether any subscriber would receive an INFO message with this tag.
+     */
+    public boolean isEnabled(String tag)
+    {
+        return isEnabled(Level.INFO, tag);
+    }
+
+    public boolean isEnabled(Level level, String tag)
+    {
+        for (LogSubscriber subscriber : subscribers)
+        {
+            if (subscriber.accepts(level, tag))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy)
+    {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public OverflowPolicy getOverflowPolicy()
+    {
+        return overflowPolicy;
+    }
+
+    /**
+     * Logs with a level derived from the message: "Error..." is {@link Level#ERROR}, "Warning..." is
+     * {@link Level#WARN}, anything else {@link Level#INFO}, including null.
+     */
     public void log(String tag, String message)
     {
-        String timestamp = timeFormat.format(new Date());
-        // Format: [HH:mm:ss.SSS] [TAG] message\n
-        String formattedMessage = "[" + timestamp + "] [" + tag + "] " + message + "\n";
+        Level level = Level.INFO;
+        if (message == null)
+        {
+            // Logged as "null" like before, a log call must never throw at the caller
+        }
+        else if (message.startsWith("Error"))
+        {
+            level = Level.ERROR;
+        }
+        else if (message.startsWith("Warning"))
+        {
+            level = Level.WARN;
+        }
+        log(level, tag, message);
+    }
 
-        if (logClientHandler != null)
+    public void log(Level level, String tag, String message)
+    {
+        if (!isEnabled(level, tag))
+        {
+            return;
+        }
+        long timestamp = System.currentTimeMillis();
+        lock.lock();
+        try
+        {
+            int capacity = slotMessages.length;
+            if (size == capacity)
+            {
+                if (overflowPolicy == OverflowPolicy.DROP_NEW)
+                {
+                    droppedNew.incrementAndGet();
+                    return;
+                }
+                // Overwrite the oldest slot: it becomes the newest
+                head = (head + 1) % capacity;
+                size--;
+                droppedOldest.incrementAndGet();
+            }
+            int slot = (head + size) % capacity;
+            slotTimes[slot] = timestamp;
+            slotLevels[slot] = level;
+            slotTags[slot] = tag;
+            slotMessages[slot] = message;
+            size++;
+            if (writerWaiting)
+            {
+                writerWaiting = false;
+                notEmpty.signal();
+            }
+        }
+        finally
         {
-            logClientHandler.sendMessage(formattedMessage);
+            lock.unlock();
         }
     }
 
@@ -48,4 +270,146 @@ public class Logger
     {
         log("DEFAULT", message); // Use a default tag for existing calls
     }
+
+    public long getDroppedOldestCount()
+    {
+        return droppedOldest.get();
+    }
+
+    public long getDroppedNewCount()
+    {
+        return droppedNew.get();
+    }
+
+    public String getStatistics()
+    {
+        return "Written: " + messagesWritten.get() + " in " + batchesWritten.get() + " writes, dropped oldest: " + droppedOldest.get() + ", dropped new: " + droppedNew.get();
+    }
+
+    /**
+     * Single consumer of the ring buffer. Copies out whatever is buffered, then formats and sends it outside the lock.
+     * Every message is formatted at most once and appended to the batch of each subscriber that accepts it.
+     */
+    private class LogWriter implements Runnable
+    {
+        // Only used by the writer thread
+        private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS");
+        private final Date date = new Date();
+        private final long[] batchTimes = new long[MAX_BATCH_SIZE];
+        private final Level[] batchLevels = new Level[MAX_BATCH_SIZE];
+        private final String[] batchTags = new String[MAX_BATCH_SIZE];
+        private final String[] batchMessages = new String[MAX_BATCH_SIZE];
+
+        @Override
+        public void run()
+        {
+            while (true)
+            {
+                int count;
+                try
+                {
+                    count = takeBatch();
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+                writeBatch(count);
+                lock.lock();
+                try
+                {
+                    writing = 0;
+                    if (size == 0)
+                    {
+                        drained.signalAll();
+                    }
+                }
+                finally
+                {
+                    lock.unlock();
+                }
+            }
+        }
+
+        private int takeBatch() throws InterruptedException
+        {
+            lock.lock();
+            try
+            {
+                while (size == 0)
+                {
+                    writerWaiting = true;
+                    notEmpty.await(1, TimeUnit.SECONDS);
+                }
+                int capacity = slotMessages.length;
+                int count = Math.min(size, MAX_BATCH_SIZE);
+                for (int i = 0; i < count; i++)
+                {
+                    int slot = (head + i) % capacity;
+                    batchTimes[i] = slotTimes[slot];
+                    batchLevels[i] = slotLevels[slot];
+                    batchTags[i] = slotTags[slot];
+                    batchMessages[i] = slotMessages[slot];
+                    // Let the message be collected as soon as it is sent
+                    slotTags[slot] = null;
+                    slotMessages[slot] = null;
+                }
+                head = (head + count) % capacity;
+                size -= count;
+                writing = count;
+                return count;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        private void writeBatch(int count)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                String formattedMessage = null;
+                for (LogSubscriber subscriber : subscribers)
+                {
+                    // Checked again, the subscription may have changed since the message was logged
+                    if (!subscriber.accepts(batchLevels[i], batchTags[i]))
+                    {
+                        continue;
+                    }
+                    if (formattedMessage == null)
+                    {
+                        date.setTime(batchTimes[i]);
+                        // Format: [HH:mm:ss.SSS] [TAG] message\n
+                        formattedMessage = "[" + timeFormat.format(date) + "] [" + batchTags[i] + "] " + batchMessages[i] + "\n";
+                    }
+                    subscriber.pendingBatch.append(formattedMessage);
+                    subscriber.pendingMessages++;
+                }
+                batchTags[i] = null;
+                batchMessages[i] = null;
+            }
+
+            for (LogSubscriber subscriber : subscribers)
+            {
+                if (subscriber.pendingMessages == 0)
+                {
+                    continue;
+                }
+                if (subscriber.hasCapacity())
+                {
+                    subscriber.getClientHandler().sendMessage(subscriber.pendingBatch.toString());
+                    messagesWritten.addAndGet(subscriber.pendingMessages);
+                    batchesWritten.incrementAndGet();
+                }
+                else
+                {
+                    // This client is not keeping up, drop its batch rather than growing its backlog
+                    subscriber.countDropped(subscriber.pendingMessages);
+                }
+                subscriber.pendingBatch.setLength(0);
+                subscriber.pendingMessages = 0;
+            }
+        }
+    }
 }
@@ -2,7 +2,12 @@ package hartu.robot.communication.server;
 
 import com.kuka.roboticsAPI.applicationModel.tasks.CycleBehavior;
 import com.kuka.roboticsAPI.applicationModel.tasks.RoboticsAPICyclicBackgroundTask;
+import com.kuka.roboticsAPI.deviceModel.LBR;
+import hartu.robot.commands.TrajectoryCache;
+import hartu.robot.telemetry.LbrStateSource;
+import hartu.robot.utils.CommandParser;
 
+import javax.inject.Inject;
 import java.io.IOException;
 import java.util.concurrent.TimeUnit;
 
@@ -10,7 +15,15 @@ public class Ros2Manager extends RoboticsAPICyclicBackgroundTask
 {
     private static final int TASK_PORT = 30001;
     private static final int LOG_PORT = 30002;
+    private static final int TELEMETRY_PORT = 30004;
+    private static final int TELEMETRY_SAMPLE_RATE_HZ = 100;
+    // How long shutdown waits for the final statistics to reach the log clients
+    private static final long LOG_FLUSH_TIMEOUT_MILLIS = 500;
+
+    @Inject
+    private LBR iiwa;
     private ServerClass rosCommunicationServer;
+    private int lastReportedQueueHighWaterMark = 0;
 
     @Override
     public void initialize()
@@ -24,12 +37,14 @@ public class Ros2Manager extends RoboticsAPICyclicBackgroundTask
                 try
                 {
                     rosCommunicationServer = new ServerClass(TASK_PORT, LOG_PORT);
+                    rosCommunicationServer.setPipelinedTaskMode(true);
+                    rosCommunicationServer.enableTelemetry(TELEMETRY_PORT, new LbrStateSource(iiwa), TELEMETRY_SAMPLE_RATE_HZ);
+                    rosCommunicationServer.start();
                 } catch (IOException e)
                 {
                     Logger.getInstance().log("APP", "Error initializing ROS Communication Server: " + e.getMessage());
                     throw new RuntimeException(e);
                 }
-                rosCommunicationServer.start();
             }
         });
         serverThread.setDaemon(true);
@@ -40,15 +55,37 @@ public class Ros2Manager extends RoboticsAPICyclicBackgroundTask
     @Override
     public void runCyclic()
     {
-        // This cyclic task currently does nothing in its runCyclic,
-        // but it could be used for periodic checks or heartbeat if needed.
+        // Report the command queue whenever it reached a new depth since the last cycle
+        int queueHighWaterMark = CommandQueue.getHighWaterMark();
+        if (queueHighWaterMark != lastReportedQueueHighWaterMark)
+        {
+            lastReportedQueueHighWaterMark = queueHighWaterMark;
+            Logger.getInstance().log("QUEUE", "Command queue status. " + CommandQueue.getStatistics());
+        }
     }
 
     @Override
     public void dispose()
     {
+        // Logged while the log clients are still connected, stopping the server drops them
+        Logger.getInstance().log("CACHE", "Trajectory cache status. " + TrajectoryCache.getInstance().getStatistics());
+        Logger.getInstance().log("CACHE", "Parsed command cache status. " + CommandParser.getParseCacheStatistics());
+        Logger.getInstance().log("LATENCY", "Command latencies of " + CommandLatencyTracker.getInstance().getRecordedCommands() + " commands, per action type and stage:");
+        for (String line : CommandLatencyTracker.getInstance().getSummary())
+        {
+            Logger.getInstance().log("LATENCY", line);
+        }
         if (rosCommunicationServer != null)
         {
+            try
+            {
+                // Best effort, the server closes the log clients right after
+                Logger.getInstance().flush(LOG_FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
             try
             {
                 rosCommunicationServer.stop();
@@ -1,48 +1,106 @@
 package hartu.robot.communication.server;
 
 import hartu.protocols.constants.ProtocolConstants.ListenerType;
+import hartu.robot.telemetry.RobotStateSource;
+import hartu.robot.utils.StreamingCommandParser;
 import java.io.IOException;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
-public class ServerClass implements IClientHandlerCallback
+public class ServerClass implements IClientHandlerCallback, CommandCompletionListener
 {
     final Map<String, String> clientIpToNameMap;
     final AtomicInteger clientNameCounter;
+    private final ServerEventLoop eventLoop;
+    private final ExecutorService taskWorkerPool;
     private final ServerPortListener taskPortListener;
     private final ServerPortListener logPortListener;
-    private ClientHandler taskClientHandler;
-    private ClientHandler logClientHandler;
-    private volatile boolean isLogClientConnected = false;
+    // Optional, see enableTelemetry
+    private ServerPortListener telemetryPortListener;
+    private TelemetryPublisher telemetryPublisher;
+    // Every connected task client by session ID, used to route command results back
+    private final Map<String, ClientHandler> taskClientHandlers;
+    private final Map<String, Integer> clientWeights;
+    private volatile int sessionQueueCapacity = CommandQueue.DEFAULT_SESSION_CAPACITY;
+    // Every connected log client by session ID, each one is a separate Logger subscriber
+    private final Map<String, ClientHandler> logClientHandlers;
+    private volatile boolean pipelinedTaskMode = false;
+    private volatile int streamingLookahead = StreamingCommandParser.DEFAULT_LOOKAHEAD;
 
-    private Thread taskListenerThread;
-    private Thread logListenerThread;
+    private Thread eventLoopThread;
 
     public ServerClass(int taskPort, int logPort) throws IOException
     {
-        ServerSocket taskServerSocket = new ServerSocket(taskPort);
-        this.taskPortListener = new ServerPortListener(taskServerSocket, ListenerType.TASK_LISTENER, this, this);
-
-        ServerSocket logServerSocket = new ServerSocket(logPort);
-        this.logPortListener = new ServerPortListener(logServerSocket, ListenerType.LOG_LISTENER, this, this);
-
         this.clientIpToNameMap = new ConcurrentHashMap<>();
         this.clientNameCounter = new AtomicInteger(0);
+        this.taskClientHandlers = new ConcurrentHashMap<>();
+        this.logClientHandlers = new ConcurrentHashMap<>();
+        this.clientWeights = new ConcurrentHashMap<>();
+        this.eventLoop = new ServerEventLoop();
+        // Workers that parse task messages and wait for their execution, off the event loop thread. A session
+        // drains its messages on one worker at a time, and without pipelining that worker waits for each command,
+        // so a fixed pool would leave other sessions' messages unparsed; the pool grows to one per busy session
+        this.taskWorkerPool = Executors.newCachedThreadPool(new ThreadFactory()
+        {
+            private final AtomicInteger threadCounter = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "TaskWorker-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        ServerSocketChannel taskServerChannel = ServerSocketChannel.open();
+        taskServerChannel.socket().bind(new InetSocketAddress(taskPort));
+        this.taskPortListener = new ServerPortListener(taskServerChannel, ListenerType.TASK_LISTENER, this, this, eventLoop, taskWorkerPool);
+
+        ServerSocketChannel logServerChannel = ServerSocketChannel.open();
+        logServerChannel.socket().bind(new InetSocketAddress(logPort));
+        this.logPortListener = new ServerPortListener(logServerChannel, ListenerType.LOG_LISTENER, this, this, eventLoop, taskWorkerPool);
+
         Logger.getInstance().log("SERVER", "Server initialized on Task Port: " + taskPort + ", Log Port: " + logPort);
     }
 
-    public void start()
+    /**
+     * Publishes robot state samples on the given port, see {@link TelemetryPublisher}. Must be called before {@link #start()}.
+     */
+    public void enableTelemetry(int telemetryPort, RobotStateSource stateSource, int sampleRateHz) throws IOException
     {
-        taskListenerThread = new Thread(taskPortListener);
-        logListenerThread = new Thread(logPortListener);
+        if (eventLoopThread != null)
+        {
+            throw new IllegalStateException("Telemetry must be enabled before the server is started.");
+        }
+        this.telemetryPublisher = new TelemetryPublisher(stateSource, sampleRateHz);
+        ServerSocketChannel telemetryServerChannel = ServerSocketChannel.open();
+        telemetryServerChannel.socket().bind(new InetSocketAddress(telemetryPort));
+        this.telemetryPortListener = new ServerPortListener(telemetryServerChannel, ListenerType.TELEMETRY_LISTENER, this, this, eventLoop, taskWorkerPool);
+        Logger.getInstance().log("SERVER", "Telemetry enabled on port " + telemetryPort + " at " + sampleRateHz + " Hz.");
+    }
 
-        taskListenerThread.setDaemon(true);
-        logListenerThread.setDaemon(true);
+    public void start() throws IOException
+    {
+        // Registered before the loop thread starts, so no select() is in progress yet
+        taskPortListener.startListening();
+        logPortListener.startListening();
+        if (telemetryPortListener != null)
+        {
+            telemetryPortListener.startListening();
+            telemetryPublisher.start();
+        }
 
-        taskListenerThread.start();
-        logListenerThread.start();
+        eventLoopThread = new Thread(eventLoop, "ServerEventLoop");
+        eventLoopThread.setDaemon(true);
+        eventLoopThread.start();
         Logger.getInstance().log("SERVER", "Server listeners started.");
     }
 
@@ -56,40 +114,42 @@ public class ServerClass implements IClientHandlerCallback
         if (logPortListener != null) {
             logPortListener.stopListening();
         }
-
-        // Wait for listener threads to actually terminate
-        try {
-            if (taskListenerThread != null && taskListenerThread.isAlive()) {
-                taskListenerThread.join(2000); // Wait up to 2 seconds for task listener
-                if (taskListenerThread.isAlive()) {
-                    Logger.getInstance().log("SERVER", "Warning: Task Listener thread did not terminate within timeout.");
-                }
-            }
-            if (logListenerThread != null && logListenerThread.isAlive()) {
-                logListenerThread.join(2000); // Wait up to 2 seconds for log listener
-                if (logListenerThread.isAlive()) {
-                    Logger.getInstance().log("SERVER", "Warning: Log Listener thread did not terminate within timeout.");
-                }
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            Logger.getInstance().log("SERVER", "Interrupted while waiting for listener threads to stop: " + e.getMessage());
+        if (telemetryPortListener != null) {
+            telemetryPortListener.stopListening();
+            telemetryPublisher.stop();
         }
 
-        // IMPORTANT: Clear the logClientHandler in Logger BEFORE closing it
-        if (logClientHandler != null) {
-            Logger.getInstance().setLogClientHandler(null); // Clear the reference
-        }
+        // IMPORTANT: Remove the log subscribers from Logger BEFORE closing them
+        Logger.getInstance().removeAllSubscribers();
 
-        if (taskClientHandler != null)
+        for (ClientHandler taskClientHandler : taskClientHandlers.values())
         {
             taskClientHandler.close();
         }
-        if (logClientHandler != null)
+        taskClientHandlers.clear();
+        for (ClientHandler logClientHandler : logClientHandlers.values())
         {
             logClientHandler.close();
         }
-        this.isLogClientConnected = false;
+        logClientHandlers.clear();
+
+        // Stop the event loop and wait for its thread to actually terminate
+        eventLoop.stop();
+        taskWorkerPool.shutdownNow();
+        try {
+            if (eventLoopThread != null && eventLoopThread.isAlive()) {
+                eventLoopThread.join(2000); // Wait up to 2 seconds for the event loop
+                if (eventLoopThread.isAlive()) {
+                    Logger.getInstance().log("SERVER", "Warning: Event loop thread did not terminate within timeout.");
+                }
+            }
+            if (!taskWorkerPool.awaitTermination(2000, TimeUnit.MILLISECONDS)) {
+                Logger.getInstance().log("SERVER", "Warning: Task worker threads did not terminate within timeout.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Logger.getInstance().log("SERVER", "Interrupted while waiting for server threads to stop: " + e.getMessage());
+        }
         Logger.getInstance().log("SERVER", "Server stopped."); // This log will now not try to use a closed handler
     }
 
@@ -101,20 +161,147 @@ public class ServerClass implements IClientHandlerCallback
 
         if (listenerType == ListenerType.TASK_LISTENER)
         {
-            this.taskClientHandler = handler;
+            String sessionId = handler.getClientSession().getSessionId();
+            Integer weight = clientWeights.get(clientIp);
+            CommandQueue.registerSession(sessionId, weight != null ? weight : CommandQueue.DEFAULT_SESSION_WEIGHT, sessionQueueCapacity);
+            taskClientHandlers.put(sessionId, handler);
         }
         else if (listenerType == ListenerType.LOG_LISTENER)
         {
-            this.logClientHandler = handler;
-            Logger.getInstance().setLogClientHandler(this.logClientHandler);
-            this.isLogClientConnected = true;
+            logClientHandlers.put(handler.getClientSession().getSessionId(), handler);
+            Logger.getInstance().addSubscriber(handler);
+        }
+        else if (listenerType == ListenerType.TELEMETRY_LISTENER)
+        {
+            telemetryPublisher.addSubscriber(handler);
         }
         Logger.getInstance().log("SERVER", "Client " + clientName + " (" + clientIp + ") connected to " + listenerType.getName());
     }
 
+    @Override
+    public void onClientDisconnected(ClientHandler handler, ListenerType listenerType)
+    {
+        if (listenerType == ListenerType.TASK_LISTENER)
+        {
+            String sessionId = handler.getClientSession().getSessionId();
+            taskClientHandlers.remove(sessionId);
+            CommandQueue.unregisterSession(sessionId);
+        }
+        else if (listenerType == ListenerType.LOG_LISTENER)
+        {
+            logClientHandlers.remove(handler.getClientSession().getSessionId());
+            Logger.getInstance().removeSubscriber(handler);
+        }
+        else if (listenerType == ListenerType.TELEMETRY_LISTENER)
+        {
+            telemetryPublisher.removeSubscriber(handler);
+        }
+        Logger.getInstance().log("SERVER", "Client " + handler.getClientSession().getClientName() + " (" + handler.getClientSession().getRemoteAddress() + ") disconnected from " + listenerType.getName());
+    }
+
+    /**
+     * Routes the result of a pipelined command back to the task client that sent it.
+     */
+    @Override
+    public void onCommandCompleted(CommandResultHolder resultHolder)
+    {
+        ClientHandler handler = resultHolder.getSessionId() != null ? taskClientHandlers.get(resultHolder.getSessionId()) : null;
+        if (handler == null)
+        {
+            Logger.getInstance().log("SERVER", "Command ID " + resultHolder.getCommand().getId() + " completed but session " + resultHolder.getSessionId() + " is gone. Result dropped.");
+            return;
+        }
+        handler.onCommandCompleted(resultHolder);
+    }
+
+    /**
+     * Sets the scheduling weight for task clients connecting from the given IP: a client with weight N
+     * may have N commands executed in a row before other waiting clients get their turn. Defaults to 1.
+     */
+    public void setClientWeight(String ipAddress, int weight)
+    {
+        if (weight < 1)
+        {
+            throw new IllegalArgumentException("Client weight must be at least 1. Got " + weight);
+        }
+        clientWeights.put(ipAddress, weight);
+    }
+
+    /**
+     * Maximum number of queued commands per task session, applied to sessions connecting from now on.
+     */
+    public void setSessionQueueCapacity(int sessionQueueCapacity)
+    {
+        if (sessionQueueCapacity < 1)
+        {
+            throw new IllegalArgumentException("Session queue capacity must be at least 1. Got " + sessionQueueCapacity);
+        }
+        this.sessionQueueCapacity = sessionQueueCapacity;
+    }
+
+    /**
+     * Maximum number of commands queued over all task sessions. Beyond it pipelined clients get BUSY|id#.
+     */
+    public void setQueueCapacity(int queueCapacity)
+    {
+        CommandQueue.setCapacity(queueCapacity);
+    }
+
+    public int getQueueDepth()
+    {
+        return CommandQueue.size();
+    }
+
+    public int getQueueHighWaterMark()
+    {
+        return CommandQueue.getHighWaterMark();
+    }
+
+    public int getLogClientCount()
+    {
+        return logClientHandlers.size();
+    }
+
+    public int getTaskClientCount()
+    {
+        return taskClientHandlers.size();
+    }
+
+    /**
+     * When enabled, task clients connecting from now on may have several commands in flight:
+     * each one is acknowledged with FREE|id# when it completes instead of blocking the next read.
+     */
+    public void setPipelinedTaskMode(boolean pipelinedTaskMode)
+    {
+        this.pipelinedTaskMode = pipelinedTaskMode;
+    }
+
+    public boolean isPipelinedTaskMode()
+    {
+        return pipelinedTaskMode;
+    }
+
+    /**
+     * Number of points of a streamed command (STREAM|...) that must have arrived before it is queued for
+     * execution. Applies to task clients connecting from now on.
+     */
+    public void setStreamingLookahead(int streamingLookahead)
+    {
+        if (streamingLookahead < 1)
+        {
+            throw new IllegalArgumentException("Streaming lookahead must be at least 1 point. Got " + streamingLookahead);
+        }
+        this.streamingLookahead = streamingLookahead;
+    }
+
+    public int getStreamingLookahead()
+    {
+        return streamingLookahead;
+    }
+
     public boolean isLogClientConnected()
     {
-        return isLogClientConnected;
+        return !logClientHandlers.isEmpty();
     }
 
     public String getClientName(String ipAddress)
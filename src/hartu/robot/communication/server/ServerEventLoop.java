@@ -0,0 +1,169 @@
+package hartu.robot.communication.server;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Single-threaded NIO event loop serving every listener port of a {@link ServerClass}.
+ * Accepts, reads and writes for all sessions are multiplexed on one {@link Selector};
+ * other threads never touch the channels directly but hand work over via {@link #execute(Runnable)}.
+ */
+public class ServerEventLoop implements Runnable
+{
+    private final Selector selector;
+    private final Queue<Runnable> pendingTasks;
+    private volatile boolean isRunning = true;
+    private volatile Thread loopThread;
+
+    public ServerEventLoop() throws IOException
+    {
+        this.selector = Selector.open();
+        this.pendingTasks = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Registers a channel with the selector. Must be called either before the loop is started
+     * or from the loop thread itself, otherwise the registration blocks on the running select().
+     */
+    public SelectionKey register(SelectableChannel channel, int interestOps, Object attachment) throws ClosedChannelException
+    {
+        return channel.register(selector, interestOps, attachment);
+    }
+
+    /**
+     * Runs the given task on the event loop thread and wakes the selector up so it is picked up immediately.
+     */
+    public void execute(Runnable task)
+    {
+        pendingTasks.add(task);
+        selector.wakeup();
+    }
+
+    public boolean inEventLoop()
+    {
+        return Thread.currentThread() == loopThread;
+    }
+
+    public void stop()
+    {
+        isRunning = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run()
+    {
+        loopThread = Thread.currentThread();
+        Logger.getInstance().log("COMM", "Event loop started.");
+
+        try
+        {
+            while (isRunning)
+            {
+                selector.select();
+                runPendingTasks();
+                processSelectedKeys();
+            }
+        }
+        catch (ClosedSelectorException e)
+        {
+            Logger.getInstance().log("COMM", "Event loop selector closed unexpectedly.");
+        }
+        catch (IOException e)
+        {
+            Logger.getInstance().log("COMM", "Event loop I/O error: " + e.getMessage());
+        }
+        finally
+        {
+            closeAllChannels();
+        }
+        Logger.getInstance().log("COMM", "Event loop terminated.");
+    }
+
+    private void runPendingTasks()
+    {
+        Runnable task;
+        while ((task = pendingTasks.poll()) != null)
+        {
+            try
+            {
+                task.run();
+            }
+            catch (Exception e)
+            {
+                Logger.getInstance().log("COMM", "Event loop task failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void processSelectedKeys()
+    {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext())
+        {
+            SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid())
+            {
+                continue;
+            }
+
+            Object attachment = key.attachment();
+            if (attachment instanceof ServerPortListener)
+            {
+                ((ServerPortListener) attachment).acceptClient();
+            }
+            else if (attachment instanceof ClientSession)
+            {
+                ClientSession session = (ClientSession) attachment;
+                try
+                {
+                    if (key.isReadable())
+                    {
+                        session.handleReadable();
+                    }
+                    if (key.isValid() && key.isWritable())
+                    {
+                        session.handleWritable();
+                    }
+                }
+                catch (IOException e)
+                {
+                    Logger.getInstance().log("COMM", "ClientSession (" + session.getClientName() + "): I/O error (client disconnected): " + e.getMessage());
+                    session.handleDisconnect();
+                }
+            }
+        }
+    }
+
+    private void closeAllChannels()
+    {
+        try
+        {
+            for (SelectionKey key : selector.keys())
+            {
+                Object attachment = key.attachment();
+                if (attachment instanceof ClientSession)
+                {
+                    ((ClientSession) attachment).handleDisconnect();
+                }
+                else if (attachment instanceof ServerPortListener)
+                {
+                    ((ServerPortListener) attachment).stopListening();
+                }
+            }
+            selector.close();
+        }
+        catch (ClosedSelectorException | IOException e)
+        {
+            Logger.getInstance().log("COMM", "Error closing event loop selector: " + e.getMessage());
+        }
+    }
+}
@@ -3,29 +3,50 @@ package hartu.robot.communication.server;
 import hartu.protocols.constants.ProtocolConstants;
 import hartu.protocols.constants.ProtocolConstants.ListenerType;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.concurrent.TimeUnit;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
 
-public class ServerPortListener implements Runnable
+/**
+ * Accept side of one server port. Registered with the {@link ServerEventLoop}, which calls
+ * {@link #acceptClient()} whenever the port has a pending connection.
+ */
+public class ServerPortListener
 {
-    private final ServerSocket serverSocket;
+    private final ServerSocketChannel serverChannel;
     private final ListenerType listenerType;
     private final IClientHandlerCallback clientHandlerCallback;
     private final ServerClass serverInstance;
+    private final ServerEventLoop eventLoop;
+    private final Executor taskExecutor;
     private volatile boolean isRunning = true;
 
-    public ServerPortListener(ServerSocket serverSocket, ListenerType listenerType, IClientHandlerCallback callback, ServerClass serverInstance)
+    public ServerPortListener(ServerSocketChannel serverChannel, ListenerType listenerType, IClientHandlerCallback callback, ServerClass serverInstance, ServerEventLoop eventLoop, Executor taskExecutor) throws IOException
     {
-        this.serverSocket = serverSocket;
+        this.serverChannel = serverChannel;
         this.listenerType = listenerType;
         this.clientHandlerCallback = callback;
         this.serverInstance = serverInstance;
+        this.eventLoop = eventLoop;
+        this.taskExecutor = taskExecutor;
+        serverChannel.configureBlocking(false);
     }
 
-    public ServerSocket getServerSocket()
+    public ServerSocketChannel getServerChannel()
     {
-        return serverSocket;
+        return serverChannel;
+    }
+
+    public int getLocalPort()
+    {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public void startListening() throws IOException
+    {
+        eventLoop.register(serverChannel, SelectionKey.OP_ACCEPT, this);
+        Logger.getInstance().log("COMM", listenerType.getName() + " started listening on port " + getLocalPort());
     }
 
     public void stopListening()
@@ -33,9 +54,9 @@ public class ServerPortListener implements Runnable
         isRunning = false;
         try
         {
-            if (!serverSocket.isClosed())
+            if (serverChannel.isOpen())
             {
-                serverSocket.close();
+                serverChannel.close();
             }
         }
         catch (IOException e)
@@ -44,107 +65,103 @@ public class ServerPortListener implements Runnable
         }
     }
 
-    @Override
-    public void run()
+    /**
+     * Accepts every pending connection on this port. Runs on the event loop thread.
+     */
+    void acceptClient()
     {
-        Logger.getInstance().log("COMM", listenerType.getName() + " started listening on port " + serverSocket.getLocalPort());
-
-        try (ServerSocket ss = this.serverSocket)
+        while (isRunning)
         {
-            while (isRunning)
+            SocketChannel clientChannel;
+            try
             {
-                Logger.getInstance().log("COMM", listenerType.getName() + ": Waiting for a new client to connect...");
-                Socket clientSocket;
-                try
+                clientChannel = serverChannel.accept();
+            }
+            catch (IOException e)
+            {
+                if (!isRunning)
                 {
-                    clientSocket = ss.accept();
+                    Logger.getInstance().log("COMM", listenerType.getName() + ": Server socket closed, listener shutting down gracefully.");
                 }
-                catch (IOException e)
+                else
                 {
-                    if (!isRunning)
-                    {
-                        Logger.getInstance().log("COMM", listenerType.getName() + ": Server socket closed, listener shutting down gracefully.");
-                        break;
-                    }
-                    else
-                    {
-                        Logger.getInstance().log("COMM", listenerType.getName() + ": Listener I/O error (unexpected): " + e.getMessage());
-                        continue;
-                    }
+                    Logger.getInstance().log("COMM", listenerType.getName() + ": Listener I/O error (unexpected): " + e.getMessage());
                 }
+                return;
+            }
+            if (clientChannel == null)
+            {
+                // No more pending connections
+                return;
+            }
+            handleNewClient(clientChannel);
+        }
+    }
 
-                if (listenerType == ListenerType.TASK_LISTENER)
+    private void handleNewClient(SocketChannel clientChannel)
+    {
+        String clientIp = clientChannel.socket().getInetAddress().getHostAddress();
+
+        if (listenerType == ListenerType.TASK_LISTENER)
+        {
+            if (!serverInstance.isLogClientConnected())
+            {
+                Logger.getInstance().log("COMM", listenerType.getName() + ": Task client connection from " + clientIp + " rejected. Log client not connected.");
+                try
                 {
-                    if (!serverInstance.isLogClientConnected())
-                    {
-                        Logger.getInstance().log("COMM", listenerType.getName() + ": Task client connection from " + clientSocket.getInetAddress().getHostAddress() + " rejected. Log client not connected.");
-                        try
-                        {
-                            clientSocket.close();
-                        }
-                        catch (IOException e)
-                        {
-                            Logger.getInstance().log("COMM", listenerType.getName() + ": Error closing rejected task client socket: " + e.getMessage());
-                        }
-                        try
-                        {
-                            TimeUnit.MILLISECONDS.sleep(1000);
-                        }
-                        catch (InterruptedException ie)
-                        {
-                            Thread.currentThread().interrupt();
-                            Logger.getInstance().log("COMM", listenerType.getName() + ": Listener interrupted during sleep.");
-                        }
-                        continue;
-                    }
+                    clientChannel.close();
                 }
-
-                String clientIp = clientSocket.getInetAddress().getHostAddress();
-                String clientName = serverInstance.clientIpToNameMap.get(clientIp);
-
-                if (clientName == null)
+                catch (IOException e)
                 {
-                    clientName = "Client-" + serverInstance.clientNameCounter.incrementAndGet();
-                    serverInstance.clientIpToNameMap.put(clientIp, clientName);
+                    Logger.getInstance().log("COMM", listenerType.getName() + ": Error closing rejected task client socket: " + e.getMessage());
                 }
+                return;
+            }
+        }
 
-                Logger.getInstance().log("COMM", listenerType.getName() + ": Client " + clientName + " (" + clientIp + ") connected.");
+        String clientName = serverInstance.clientIpToNameMap.get(clientIp);
 
-                ClientSession session = new ClientSession(clientSocket, listenerType, clientName);
-                ClientHandler handler = new ClientHandler(session);
-                Thread handlerThread = new Thread(handler);
-                handlerThread.setDaemon(true);
-                handlerThread.start();
+        if (clientName == null)
+        {
+            clientName = "Client-" + serverInstance.clientNameCounter.incrementAndGet();
+            serverInstance.clientIpToNameMap.put(clientIp, clientName);
+        }
 
-                if (clientHandlerCallback != null)
-                {
-                    clientHandlerCallback.onClientConnected(handler, listenerType);
-                }
+        Logger.getInstance().log("COMM", listenerType.getName() + ": Client " + clientName + " (" + clientIp + ") connected.");
 
-                if (listenerType == ListenerType.TASK_LISTENER)
-                {
-                    handler.sendMessage(ProtocolConstants.INITIAL_TASK_CLIENT_RESPONSE);
-                    Logger.getInstance().log("COMM", "Sent '" + ProtocolConstants.INITIAL_TASK_CLIENT_RESPONSE + "' to new task client " + clientName + " (" + clientIp + ")");
-                }
-            }
-        }
-        catch (IOException e)
+        ClientHandler handler;
+        try
         {
-            Logger.getInstance().log("COMM", listenerType.getName() + ": Listener I/O error (initialization or unexpected): " + e.getMessage());
+            ClientSession session = new ClientSession(clientChannel, listenerType, clientName, eventLoop);
+            handler = new ClientHandler(session, taskExecutor, serverInstance.isPipelinedTaskMode(), clientHandlerCallback, serverInstance);
+            handler.setStreamingLookahead(serverInstance.getStreamingLookahead());
+            session.register(handler);
         }
-        finally
+        catch (IOException e)
         {
-            if (!serverSocket.isClosed())
+            Logger.getInstance().log("COMM", listenerType.getName() + ": Error setting up session for " + clientName + " (" + clientIp + "): " + e.getMessage());
+            try
             {
-                try
-                {
-                    serverSocket.close();
-                }
-                catch (IOException e)
-                {
-                    Logger.getInstance().log("COMM", listenerType.getName() + ": Error closing server socket in finally block: " + e.getMessage());
-                }
+                clientChannel.close();
             }
+            catch (IOException closeError)
+            {
+                Logger.getInstance().log("COMM", listenerType.getName() + ": Error closing client socket: " + closeError.getMessage());
+            }
+            return;
+        }
+
+        Logger.getInstance().log("COMM", "ClientHandler (" + listenerType.getName() + "): Started for client " + clientIp + " (Session ID: " + handler.getClientSession().getSessionId() + ")");
+
+        if (clientHandlerCallback != null)
+        {
+            clientHandlerCallback.onClientConnected(handler, listenerType);
+        }
+
+        if (listenerType == ListenerType.TASK_LISTENER)
+        {
+            handler.sendMessage(ProtocolConstants.INITIAL_TASK_CLIENT_RESPONSE);
+            Logger.getInstance().log("COMM", "Sent '" + ProtocolConstants.INITIAL_TASK_CLIENT_RESPONSE + "' to new task client " + clientName + " (" + clientIp + ")");
         }
     }
 }
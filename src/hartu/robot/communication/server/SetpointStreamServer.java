@@ -0,0 +1,296 @@
+package hartu.robot.communication.server;
+
+import hartu.protocols.constants.SetpointProtocolConstants;
+import hartu.robot.commands.StreamedSetpoint;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Receiving side of the UDP setpoint stream described in {@link SetpointProtocolConstants}.
+ * <p>
+ * Runs on its own thread next to {@link ServerClass}. Only the newest setpoint is kept: a packet whose
+ * sequence number is not greater than the last accepted one is dropped as stale or reordered.
+ * <p>
+ * The stream is locked onto one sender address. Packets from any other address are dropped until the current
+ * sender has been silent for the sender timeout ({@link #setSenderTimeout}); the next packet from another
+ * address then starts a new stream. So a restarted client or a stray host cannot interleave its setpoints
+ * with the ones being followed.
+ * Consumers (see {@code ServoSetpointExecutor}) read the latest setpoint or wait for a newer one.
+ */
+public class SetpointStreamServer implements Runnable
+{
+    public static final long DEFAULT_SENDER_TIMEOUT_MILLIS = 500;
+    // Logged individually up to this many, a stray sender would otherwise flood the log at stream rate
+    private static final int MAX_LOGGED_DROPS = 10;
+
+    private final DatagramChannel channel;
+    private final Object setpointMonitor = new Object();
+
+    // Guarded by setpointMonitor
+    private StreamedSetpoint latestSetpoint;
+    private SocketAddress currentSender;
+    // When the current sender's last well-formed packet arrived
+    private long currentSenderSeenNanos;
+
+    private volatile long senderTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SENDER_TIMEOUT_MILLIS);
+
+    private final AtomicLong packetsReceived = new AtomicLong();
+    private final AtomicLong packetsAccepted = new AtomicLong();
+    private final AtomicLong packetsDroppedStale = new AtomicLong();
+    private final AtomicLong packetsMalformed = new AtomicLong();
+    private final AtomicLong packetsDroppedOtherSender = new AtomicLong();
+    private final AtomicLong senderSwitches = new AtomicLong();
+
+    private volatile boolean isRunning = true;
+    private Thread receiverThread;
+
+    public SetpointStreamServer(int port) throws IOException
+    {
+        this.channel = DatagramChannel.open();
+        this.channel.socket().bind(new InetSocketAddress(port));
+        Logger.getInstance().log("SERVER", "Setpoint stream initialized on UDP port: " + getLocalPort());
+    }
+
+    public void start()
+    {
+        receiverThread = new Thread(this, "SetpointStreamReceiver");
+        receiverThread.setDaemon(true);
+        // Setpoints are latency critical, keep them ahead of logging and task parsing
+        receiverThread.setPriority(Thread.MAX_PRIORITY);
+        receiverThread.start();
+        Logger.getInstance().log("COMM", "Setpoint stream started listening on UDP port " + getLocalPort());
+    }
+
+    public void stop()
+    {
+        isRunning = false;
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            Logger.getInstance().log("COMM", "Setpoint stream: Error closing UDP socket during shutdown: " + e.getMessage());
+        }
+        synchronized (setpointMonitor)
+        {
+            setpointMonitor.notifyAll();
+        }
+        try
+        {
+            if (receiverThread != null && receiverThread.isAlive())
+            {
+                receiverThread.join(2000);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        Logger.getInstance().log("COMM", "Setpoint stream stopped. " + getStatistics());
+    }
+
+    /**
+     * How long the current sender must be silent before packets from another address are accepted.
+     */
+    public void setSenderTimeout(long timeout, TimeUnit unit)
+    {
+        this.senderTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    public int getLocalPort()
+    {
+        return channel.socket().getLocalPort();
+    }
+
+    @Override
+    public void run()
+    {
+        // One packet is always exactly PACKET_SIZE bytes, one extra byte detects oversized datagrams
+        ByteBuffer packet = ByteBuffer.allocateDirect(SetpointProtocolConstants.PACKET_SIZE + 1).order(SetpointProtocolConstants.BYTE_ORDER);
+        while (isRunning)
+        {
+            SocketAddress sender;
+            try
+            {
+                packet.clear();
+                sender = channel.receive(packet);
+            }
+            catch (AsynchronousCloseException e)
+            {
+                break;
+            }
+            catch (IOException e)
+            {
+                if (isRunning)
+                {
+                    Logger.getInstance().log("COMM", "Setpoint stream: Receive error: " + e.getMessage());
+                }
+                continue;
+            }
+            long receivedNanos = System.nanoTime();
+            packetsReceived.incrementAndGet();
+            packet.flip();
+            handlePacket(packet, sender, receivedNanos);
+        }
+    }
+
+    private void handlePacket(ByteBuffer packet, SocketAddress sender, long receivedNanos)
+    {
+        if (packet.remaining() != SetpointProtocolConstants.PACKET_SIZE)
+        {
+            countMalformed("Setpoint packet from " + sender + " has " + packet.remaining() + " bytes, expected " + SetpointProtocolConstants.PACKET_SIZE + ".");
+            return;
+        }
+        byte type = packet.get(SetpointProtocolConstants.OFFSET_TYPE);
+        if (type != SetpointProtocolConstants.TYPE_AXIS && type != SetpointProtocolConstants.TYPE_CARTESIAN)
+        {
+            countMalformed("Setpoint packet from " + sender + " has unknown type " + type + ".");
+            return;
+        }
+        long sequence = packet.getLong(SetpointProtocolConstants.OFFSET_SEQUENCE);
+
+        SocketAddress previousSender;
+        long silentNanos;
+        synchronized (setpointMonitor)
+        {
+            previousSender = currentSender;
+            silentNanos = receivedNanos - currentSenderSeenNanos;
+            if (previousSender != null && !sender.equals(previousSender) && silentNanos < senderTimeoutNanos)
+            {
+                if (packetsDroppedOtherSender.incrementAndGet() <= MAX_LOGGED_DROPS)
+                {
+                    Logger.getInstance().log("COMM", "Setpoint stream: Warning: Dropped packet from " + sender + ", following " + previousSender + ".");
+                }
+                return;
+            }
+            if (sender.equals(previousSender))
+            {
+                currentSenderSeenNanos = receivedNanos;
+                // Cheap check before decoding: anything not newer than what we hold is useless
+                if (latestSetpoint != null && sequence <= latestSetpoint.getSequence())
+                {
+                    packetsDroppedStale.incrementAndGet();
+                    return;
+                }
+            }
+        }
+
+        boolean cartesian = type == SetpointProtocolConstants.TYPE_CARTESIAN;
+        double[] values = new double[cartesian ? 6 : SetpointProtocolConstants.VALUE_SLOTS];
+        packet.position(SetpointProtocolConstants.OFFSET_VALUES);
+        packet.asDoubleBuffer().get(values);
+        StreamedSetpoint setpoint = new StreamedSetpoint(sequence, packet.getLong(SetpointProtocolConstants.OFFSET_SENDER_TIMESTAMP), receivedNanos, cartesian, values);
+
+        boolean newStream = !sender.equals(previousSender);
+        synchronized (setpointMonitor)
+        {
+            // Only this receiver thread changes the sender, the check above still holds
+            currentSender = sender;
+            currentSenderSeenNanos = receivedNanos;
+            latestSetpoint = setpoint;
+            setpointMonitor.notifyAll();
+        }
+        packetsAccepted.incrementAndGet();
+        if (newStream && previousSender != null)
+        {
+            senderSwitches.incrementAndGet();
+            Logger.getInstance().log("COMM", "Setpoint stream: Switched from " + previousSender + " to " + sender + " after " + TimeUnit.NANOSECONDS.toMillis(silentNanos) + " ms of silence, starting at sequence " + sequence + ".");
+        }
+        else if (newStream)
+        {
+            Logger.getInstance().log("COMM", "Setpoint stream: New stream from " + sender + " starting at sequence " + sequence + ".");
+        }
+    }
+
+    private void countMalformed(String message)
+    {
+        // Only the first few are logged, a misconfigured sender would otherwise flood the log at stream rate
+        if (packetsMalformed.incrementAndGet() <= MAX_LOGGED_DROPS)
+        {
+            Logger.getInstance().log("COMM", "Setpoint stream: Error: " + message);
+        }
+    }
+
+    /**
+     * Returns the newest accepted setpoint, or null if none has been received yet.
+     */
+    public StreamedSetpoint getLatestSetpoint()
+    {
+        synchronized (setpointMonitor)
+        {
+            return latestSetpoint;
+        }
+    }
+
+    /**
+     * Waits until a setpoint different from {@code current} is available.
+     * @param current The setpoint the caller already holds, or null.
+     * @return The newest setpoint, which is still {@code current} if the timeout elapsed first.
+     */
+    public StreamedSetpoint awaitNewerSetpoint(StreamedSetpoint current, long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (setpointMonitor)
+        {
+            while (latestSetpoint == current && isRunning)
+            {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                {
+                    break;
+                }
+                TimeUnit.NANOSECONDS.timedWait(setpointMonitor, remaining);
+            }
+            return latestSetpoint;
+        }
+    }
+
+    public long getPacketsReceived()
+    {
+        return packetsReceived.get();
+    }
+
+    public long getPacketsAccepted()
+    {
+        return packetsAccepted.get();
+    }
+
+    public long getPacketsDroppedStale()
+    {
+        return packetsDroppedStale.get();
+    }
+
+    public long getPacketsMalformed()
+    {
+        return packetsMalformed.get();
+    }
+
+    /**
+     * Packets dropped because another sender was being followed.
+     */
+    public long getPacketsDroppedOtherSender()
+    {
+        return packetsDroppedOtherSender.get();
+    }
+
+    /**
+     * Times the stream moved on to a new sender after the previous one went silent.
+     */
+    public long getSenderSwitches()
+    {
+        return senderSwitches.get();
+    }
+
+    public String getStatistics()
+    {
+        return "Received: " + packetsReceived.get() + ", accepted: " + packetsAccepted.get() + ", stale/reordered: " + packetsDroppedStale.get() + ", malformed: " + packetsMalformed.get()
+               + ", other sender: " + packetsDroppedOtherSender.get() + ", sender switches: " + senderSwitches.get();
+    }
+}
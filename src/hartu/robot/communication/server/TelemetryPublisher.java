@@ -0,0 +1,149 @@
+package hartu.robot.communication.server;
+
+import hartu.protocols.constants.TelemetryProtocolConstants;
+import hartu.robot.telemetry.RobotStateSample;
+import hartu.robot.telemetry.RobotStateSource;
+import hartu.robot.telemetry.TelemetryFrameEncoder;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Samples a {@link RobotStateSource} at a fixed rate on its own thread and pushes every sample to the
+ * connected {@link TelemetrySubscriber}s. Nothing is sampled while no subscriber is connected.
+ */
+public class TelemetryPublisher implements Runnable
+{
+    public static final int MIN_SAMPLE_RATE_HZ = 1;
+    public static final int MAX_SAMPLE_RATE_HZ = 1000;
+
+    private final RobotStateSource stateSource;
+    private final int sampleRateHz;
+    private final List<TelemetrySubscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final RobotStateSample sample = new RobotStateSample();
+    private final int[] quantized = new int[TelemetryProtocolConstants.VALUE_COUNT];
+
+    private volatile boolean isRunning = true;
+    private Thread publisherThread;
+
+    public TelemetryPublisher(RobotStateSource stateSource, int sampleRateHz)
+    {
+        if (sampleRateHz < MIN_SAMPLE_RATE_HZ || sampleRateHz > MAX_SAMPLE_RATE_HZ)
+        {
+            throw new IllegalArgumentException("Telemetry sample rate must be between " + MIN_SAMPLE_RATE_HZ + " and " + MAX_SAMPLE_RATE_HZ + " Hz. Got " + sampleRateHz);
+        }
+        this.stateSource = stateSource;
+        this.sampleRateHz = sampleRateHz;
+    }
+
+    public int getSampleRateHz()
+    {
+        return sampleRateHz;
+    }
+
+    public void start()
+    {
+        publisherThread = new Thread(this, "TelemetryPublisher");
+        publisherThread.setDaemon(true);
+        publisherThread.start();
+        Logger.getInstance().log("TELEMETRY", "Telemetry publisher started at " + sampleRateHz + " Hz.");
+    }
+
+    public void stop()
+    {
+        isRunning = false;
+        if (publisherThread != null)
+        {
+            LockSupport.unpark(publisherThread);
+            try
+            {
+                publisherThread.join(2000);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (TelemetrySubscriber subscriber : subscribers)
+        {
+            try
+            {
+                subscriber.getClientHandler().close();
+            }
+            catch (IOException e)
+            {
+                Logger.getInstance().log("TELEMETRY", "Error closing telemetry client: " + e.getMessage());
+            }
+        }
+        subscribers.clear();
+        Logger.getInstance().log("TELEMETRY", "Telemetry publisher stopped.");
+    }
+
+    public TelemetrySubscriber addSubscriber(ClientHandler handler)
+    {
+        TelemetrySubscriber subscriber = new TelemetrySubscriber(handler, sampleRateHz);
+        handler.setTelemetrySubscriber(subscriber);
+        subscribers.add(subscriber);
+        return subscriber;
+    }
+
+    public void removeSubscriber(ClientHandler handler)
+    {
+        for (TelemetrySubscriber subscriber : subscribers)
+        {
+            if (subscriber.getClientHandler() == handler)
+            {
+                subscribers.remove(subscriber);
+                Logger.getInstance().log("TELEMETRY", "Subscriber " + handler.getClientSession().getClientName() + " removed. Frames sent: " + subscriber.getFramesSent() + ", skipped: " + subscriber.getFramesSkipped());
+            }
+        }
+    }
+
+    public int getSubscriberCount()
+    {
+        return subscribers.size();
+    }
+
+    @Override
+    public void run()
+    {
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / sampleRateHz;
+        long nextSample = System.nanoTime();
+        int sequence = 0;
+        while (isRunning)
+        {
+            if (!subscribers.isEmpty())
+            {
+                try
+                {
+                    stateSource.sample(sample);
+                    TelemetryFrameEncoder.quantize(sample, quantized);
+                    for (TelemetrySubscriber subscriber : subscribers)
+                    {
+                        subscriber.publish(quantized, sequence, sample.getTimestampMicros());
+                    }
+                    sequence++;
+                }
+                catch (RuntimeException e)
+                {
+                    Logger.getInstance().log("TELEMETRY", "Error: Sampling robot state failed: " + e.getMessage());
+                }
+            }
+
+            nextSample += periodNanos;
+            long sleepNanos = nextSample - System.nanoTime();
+            if (-sleepNanos > periodNanos)
+            {
+                // Fell behind by more than a period, skip the missed samples instead of bursting
+                nextSample = System.nanoTime();
+            }
+            while (isRunning && sleepNanos > 0)
+            {
+                LockSupport.parkNanos(sleepNanos);
+                sleepNanos = nextSample - System.nanoTime();
+            }
+        }
+    }
+}
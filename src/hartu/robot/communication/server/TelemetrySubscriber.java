@@ -0,0 +1,109 @@
+package hartu.robot.communication.server;
+
+import hartu.protocols.constants.TelemetryProtocolConstants;
+import hartu.robot.telemetry.TelemetryFrameEncoder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One connected telemetry client with its own rate and delta reference.
+ * <p>
+ * By default a subscriber gets every sample. Sending {@code RATE|<hz>} downsamples its stream to roughly
+ * that rate, {@code KEYFRAME} asks for a keyframe with the next frame.
+ */
+public class TelemetrySubscriber
+{
+    // While more than this is still waiting for the client's socket, frames are skipped for it
+    public static final int MAX_QUEUED_BYTES = 64 * 1024;
+    public static final int KEYFRAME_INTERVAL = 50;
+
+    private final ClientHandler clientHandler;
+    private final int sampleRateHz;
+    // Only used by the publisher thread
+    private final TelemetryFrameEncoder encoder;
+    private volatile int decimation = 1;
+    private volatile boolean keyframeRequested = false;
+
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong framesSkipped = new AtomicLong();
+
+    public TelemetrySubscriber(ClientHandler clientHandler, int sampleRateHz)
+    {
+        this.clientHandler = clientHandler;
+        this.sampleRateHz = sampleRateHz;
+        this.encoder = new TelemetryFrameEncoder(KEYFRAME_INTERVAL);
+    }
+
+    public ClientHandler getClientHandler()
+    {
+        return clientHandler;
+    }
+
+    /**
+     * Handles one control line from the client. Runs on the event loop thread.
+     */
+    void onRequest(String request)
+    {
+        String trimmed = request.trim();
+        if (trimmed.startsWith(TelemetryProtocolConstants.RATE_REQUEST_PREFIX))
+        {
+            try
+            {
+                double requestedHz = Double.parseDouble(trimmed.substring(TelemetryProtocolConstants.RATE_REQUEST_PREFIX.length()));
+                if (requestedHz <= 0)
+                {
+                    throw new NumberFormatException("rate must be positive");
+                }
+                decimation = Math.max(1, (int) Math.round(sampleRateHz / requestedHz));
+                Logger.getInstance().log("TELEMETRY", "Subscriber " + clientHandler.getClientSession().getClientName() + " downsampled to every " + decimation + ". sample (" + (sampleRateHz / (double) decimation) + " Hz).");
+            }
+            catch (NumberFormatException e)
+            {
+                Logger.getInstance().log("TELEMETRY", "Error: Invalid rate request '" + trimmed + "': " + e.getMessage());
+            }
+        }
+        else if (TelemetryProtocolConstants.KEYFRAME_REQUEST.equalsIgnoreCase(trimmed))
+        {
+            keyframeRequested = true;
+        }
+        else if (!trimmed.isEmpty())
+        {
+            Logger.getInstance().log("TELEMETRY", "Error: Unknown telemetry request '" + trimmed + "'.");
+        }
+    }
+
+    /**
+     * Sends the sample with the given sequence number if it falls on this subscriber's rate. Runs on the publisher thread.
+     */
+    void publish(int[] quantized, int sequence, long timestampMicros)
+    {
+        if (sequence % decimation != 0)
+        {
+            return;
+        }
+        ClientSession session = clientHandler.getClientSession();
+        if (session.getQueuedBytes() > MAX_QUEUED_BYTES)
+        {
+            // The delta chain is broken for this client, restart it with a keyframe once it catches up
+            framesSkipped.incrementAndGet();
+            encoder.requestKeyframe();
+            return;
+        }
+        if (keyframeRequested)
+        {
+            keyframeRequested = false;
+            encoder.requestKeyframe();
+        }
+        session.send(encoder.encode(quantized, sequence, timestampMicros));
+        framesSent.incrementAndGet();
+    }
+
+    public long getFramesSent()
+    {
+        return framesSent.get();
+    }
+
+    public long getFramesSkipped()
+    {
+        return framesSkipped.get();
+    }
+}
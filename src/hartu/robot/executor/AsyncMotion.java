@@ -0,0 +1,19 @@
+package hartu.robot.executor;
+
+/**
+ * A motion a {@link RobotBackend} has started without waiting for it to finish.
+ */
+public interface AsyncMotion
+{
+    boolean isFinished();
+
+    /**
+     * Waits until the motion is finished, successfully or not.
+     */
+    void await() throws InterruptedException;
+
+    /**
+     * Why the motion failed, or null if it finished fine or is still running.
+     */
+    String getError();
+}
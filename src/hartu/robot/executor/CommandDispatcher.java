@@ -0,0 +1,557 @@
+package hartu.robot.executor;
+
+import hartu.protocols.constants.ActionTypes;
+import hartu.protocols.constants.MovementType;
+import hartu.robot.commands.MotionParameters;
+import hartu.robot.commands.ParsedCommand;
+import hartu.robot.commands.StreamingTrajectory;
+import hartu.robot.commands.TrajectoryBuffer;
+import hartu.robot.commands.io.IoCommandData;
+import hartu.robot.communication.server.CommandResultHolder;
+import hartu.robot.communication.server.CommandStage;
+import hartu.robot.communication.server.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs parsed commands on a {@link RobotBackend}, looking up the handler of each command's
+ * {@link ActionTypes} value in a table.
+ * <p>
+ * Every motion, IO and program call type has a handler from the start; {@link #register} replaces one or
+ * adds a handler for a type the dispatcher does not know. Program calls are recognised by their program ID
+ * rather than their action type and have a handler of their own.
+ * <p>
+ * Continuous motions (PTP_AXIS_C, PTP_FRAME_C, LIN_FRAME_C) are started asynchronously, so the robot blends
+ * through their points instead of stopping at every one. Up to {@link #setLookahead lookahead} of them are in
+ * motion at once; each is completed on its own, in order, once its last motion has finished. Any other command
+ * first waits for the continuous ones to finish. Whoever calls {@link #execute(CommandResultHolder)} also calls
+ * {@link #completeFinished()} regularly while {@link #getPendingCount()} is above 0. A streamed continuous
+ * command does so itself while it waits for its points, so the commands ahead of it are not held up by its client.
+ * <p>
+ * Tool and base frames named in the motion parameters are resolved by the backend the first time they are
+ * used and cached by name afterwards. Not thread-safe: one executor thread runs all commands.
+ * @param <F> Frame type of the backend.
+ */
+public class CommandDispatcher<F>
+{
+    // How long a streamed motion waits for its next point before it fails
+    private static final long STREAMED_POINT_TIMEOUT_MILLIS = 5000;
+    // How often a continuous streamed motion waiting for its next point completes the commands ahead of it
+    private static final long STREAMED_POINT_POLL_MILLIS = 2;
+
+    public static final int DEFAULT_LOOKAHEAD = 3;
+
+    private final RobotBackend<F> robot;
+    private final EnumMap<ActionTypes, CommandHandler> handlers = new EnumMap<>(ActionTypes.class);
+    // Continuous types still on their built-in handling, started asynchronously while lookahead is above 0
+    private final EnumSet<ActionTypes> blendedTypes = EnumSet.of(ActionTypes.PTP_AXIS_C, ActionTypes.PTP_FRAME_C, ActionTypes.LIN_FRAME_C);
+    private CommandHandler programCallHandler;
+    private int lookahead = DEFAULT_LOOKAHEAD;
+    // Continuous commands in motion, oldest first
+    private final ArrayDeque<PendingCommand> pending = new ArrayDeque<>();
+
+    // Written by the executor thread only
+    private volatile long commandsSucceeded = 0;
+    private volatile long commandsFailed = 0;
+    private volatile long commandsBlended = 0;
+
+    private final Map<String, F> tools = new HashMap<>();
+    private final Map<String, F> bases = new HashMap<>();
+
+    // Point buffers handed to the backend, reused for every point
+    private final double[] joints = new double[TrajectoryBuffer.AXIS_VALUES_PER_POINT];
+    private final double[] auxiliaryJoints = new double[TrajectoryBuffer.AXIS_VALUES_PER_POINT];
+    private final double[] pose = new double[TrajectoryBuffer.CARTESIAN_VALUES_PER_POINT];
+    private final double[] auxiliaryPose = new double[TrajectoryBuffer.CARTESIAN_VALUES_PER_POINT];
+
+    public CommandDispatcher(RobotBackend<F> robot)
+    {
+        this.robot = robot;
+
+        // Put directly, register() would take the continuous types off blending
+        CommandHandler ptp = new PointMotionHandler(Motion.PTP);
+        CommandHandler lin = new PointMotionHandler(Motion.LIN);
+        CommandHandler circ = new PointMotionHandler(Motion.CIRC);
+        handlers.put(ActionTypes.PTP_AXIS, ptp);
+        handlers.put(ActionTypes.PTP_FRAME, ptp);
+        handlers.put(ActionTypes.PTP_AXIS_C, ptp);
+        handlers.put(ActionTypes.PTP_FRAME_C, ptp);
+        handlers.put(ActionTypes.LIN_AXIS, lin);
+        handlers.put(ActionTypes.LIN_FRAME, lin);
+        handlers.put(ActionTypes.LIN_FRAME_C, lin);
+        handlers.put(ActionTypes.CIRC_AXIS, circ);
+        handlers.put(ActionTypes.CIRC_FRAME, circ);
+        handlers.put(ActionTypes.LIN_REL_TOOL, new PointMotionHandler(Motion.LIN_REL_TOOL));
+        handlers.put(ActionTypes.LIN_REL_BASE, new PointMotionHandler(Motion.LIN_REL_BASE));
+        handlers.put(ActionTypes.ACTIVATE_IO, new CommandHandler()
+        {
+            @Override
+            public void execute(ParsedCommand command)
+            {
+                IoCommandData ioData = command.getIoCommandData();
+                CommandDispatcher.this.robot.setOutput(ioData.getIoPin(), ioData.getIoState());
+            }
+        });
+        programCallHandler = new CommandHandler()
+        {
+            @Override
+            public void execute(ParsedCommand command)
+            {
+                CommandDispatcher.this.robot.callProgram(command.getProgramCallId());
+            }
+        };
+    }
+
+    /**
+     * Runs commands of {@code actionType} with {@code handler} from now on, replacing the previous handler.
+     * Registered handlers always run synchronously, also for continuous types.
+     */
+    public void register(ActionTypes actionType, CommandHandler handler)
+    {
+        handlers.put(actionType, handler);
+        blendedTypes.remove(actionType);
+    }
+
+    /**
+     * Number of continuous commands that may be in motion at once. 0 runs them one at a time like any other command.
+     */
+    public void setLookahead(int lookahead)
+    {
+        if (lookahead < 0)
+        {
+            throw new IllegalArgumentException("Lookahead cannot be negative. Got " + lookahead);
+        }
+        this.lookahead = lookahead;
+    }
+
+    /**
+     * Continuous commands started but not completed yet.
+     */
+    public int getPendingCount()
+    {
+        return pending.size();
+    }
+
+    public void registerProgramCallHandler(CommandHandler handler)
+    {
+        programCallHandler = handler;
+    }
+
+    /**
+     * Forgets the resolved tool and base frames, e.g. after frames were taught again.
+     */
+    public void clearFrameCache()
+    {
+        tools.clear();
+        bases.clear();
+    }
+
+    /**
+     * Runs the command and completes its holder with the result. A continuous command is only started, after
+     * waiting for the oldest one in motion if lookahead is exhausted, and completed later; any other command
+     * first waits for all continuous ones.
+     */
+    public void execute(CommandResultHolder resultHolder)
+    {
+        ParsedCommand command = resultHolder.getCommand();
+        if (lookahead > 0 && !command.isProgramCall() && blendedTypes.contains(command.getActionType()))
+        {
+            while (pending.size() >= lookahead)
+            {
+                completeOldest();
+            }
+            resultHolder.markStage(CommandStage.STARTED);
+            start(resultHolder);
+            return;
+        }
+        completeAll();
+        resultHolder.markStage(CommandStage.STARTED);
+        boolean success = false;
+        try
+        {
+            success = execute(command);
+        }
+        finally
+        {
+            complete(resultHolder, success);
+        }
+    }
+
+    /**
+     * Completes the continuous commands whose motions have finished, without waiting.
+     */
+    public void completeFinished()
+    {
+        while (!pending.isEmpty() && pending.peekFirst().isFinished())
+        {
+            completePending(pending.pollFirst());
+        }
+    }
+
+    /**
+     * Waits for all continuous commands in motion and completes them.
+     */
+    public void completeAll()
+    {
+        while (!pending.isEmpty())
+        {
+            completeOldest();
+        }
+    }
+
+    public String getStatistics()
+    {
+        return "Succeeded: " + commandsSucceeded + ", failed: " + commandsFailed + ", blended: " + commandsBlended;
+    }
+
+    /**
+     * Runs the command with its handler. Returns false if there is none or it failed; the reason is logged.
+     */
+    public boolean execute(ParsedCommand command)
+    {
+        CommandHandler handler = command.isProgramCall() ? programCallHandler : handlers.get(command.getActionType());
+        if (handler == null)
+        {
+            // Tagged logging
+            Logger.getInstance().log("ROBOT_EXEC", "Error: No handler for ActionType " + command.getActionType().name() + ". Command ID: " + command.getId());
+            return false;
+        }
+        try
+        {
+            handler.execute(command);
+            return true;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            Logger.getInstance().log("ROBOT_EXEC", "Error: Interrupted while executing command ID " + command.getId() + ".");
+        }
+        catch (Exception e)
+        {
+            Logger.getInstance().log("ROBOT_EXEC", "Error: Exception during command execution for ID " + command.getId() + ": " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Starts the points of a continuous command as asynchronous motions and keeps it pending.
+     */
+    private void start(CommandResultHolder resultHolder)
+    {
+        ParsedCommand command = resultHolder.getCommand();
+        List<AsyncMotion> motions = new ArrayList<>();
+        String startError = null;
+        try
+        {
+            startBlended(command, motions);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            startError = "Interrupted while starting its motions.";
+        }
+        catch (Exception e)
+        {
+            startError = e.getMessage();
+        }
+        if (startError != null)
+        {
+            Logger.getInstance().log("ROBOT_EXEC", "Error: Exception during command execution for ID " + command.getId() + ": " + startError);
+        }
+        if (motions.isEmpty())
+        {
+            complete(resultHolder, startError == null);
+            return;
+        }
+        commandsBlended++;
+        pending.addLast(new PendingCommand(resultHolder, motions, startError == null));
+    }
+
+    private void startBlended(ParsedCommand command, List<AsyncMotion> motions) throws InterruptedException
+    {
+        MotionParameters motionParameters = command.getMotionParameters();
+        double speed = motionParameters.getSpeedOverride();
+        if (speed <= 0)
+        {
+            throw new IllegalArgumentException("Speed override must be above 0 to move.");
+        }
+        ActionTypes actionType = command.getActionType();
+        boolean cartesian = MovementType.fromActionType(actionType).isCartesianMotion();
+        F tool = cartesian ? tool(motionParameters.getTool()) : null;
+        F base = cartesian ? base(motionParameters.getBase()) : null;
+        double[] point = cartesian ? pose : joints;
+        for (int index = 0; readBlendedPoint(command, index, point); index++)
+        {
+            switch (actionType)
+            {
+                case PTP_AXIS_C:
+                    motions.add(robot.ptpAxisAsync(point, speed));
+                    break;
+                case PTP_FRAME_C:
+                    motions.add(robot.ptpFrameAsync(point, tool, base, speed));
+                    break;
+                case LIN_FRAME_C:
+                    motions.add(robot.linFrameAsync(point, tool, base, speed));
+                    break;
+                default:
+                    throw new IllegalArgumentException("ActionType " + actionType.name() + " cannot be blended.");
+            }
+        }
+    }
+
+    private void completeOldest()
+    {
+        PendingCommand oldest = pending.pollFirst();
+        try
+        {
+            oldest.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            Logger.getInstance().log("ROBOT_EXEC", "Error: Interrupted while waiting for the motions of command ID " + oldest.resultHolder.getCommand().getId() + ".");
+            complete(oldest.resultHolder, false);
+            return;
+        }
+        completePending(oldest);
+    }
+
+    private void completePending(PendingCommand pendingCommand)
+    {
+        boolean success = pendingCommand.started;
+        for (AsyncMotion motion : pendingCommand.motions)
+        {
+            String error = motion.getError();
+            if (error != null)
+            {
+                Logger.getInstance().log("ROBOT_EXEC", "Error: Motion of command ID " + pendingCommand.resultHolder.getCommand().getId() + " failed: " + error);
+                success = false;
+                break;
+            }
+        }
+        complete(pendingCommand.resultHolder, success);
+    }
+
+    private void complete(CommandResultHolder resultHolder, boolean success)
+    {
+        resultHolder.complete(success);
+        if (success)
+        {
+            commandsSucceeded++;
+        }
+        else
+        {
+            commandsFailed++;
+        }
+        Logger.getInstance().log("ROBOT_EXEC", "Signaled completion for command ID " + resultHolder.getCommand().getId() + ". Success: " + success);
+    }
+
+    private F tool(String name)
+    {
+        F tool = tools.get(name);
+        if (tool == null)
+        {
+            tool = robot.resolveTool(name);
+            tools.put(name, tool);
+            Logger.getInstance().log("ROBOT_EXEC", "Resolved tool '" + name + "'.");
+        }
+        return tool;
+    }
+
+    private F base(String name)
+    {
+        F base = bases.get(name);
+        if (base == null)
+        {
+            base = robot.resolveBase(name);
+            bases.put(name, base);
+            Logger.getInstance().log("ROBOT_EXEC", "Resolved base '" + name + "'.");
+        }
+        return base;
+    }
+
+    /**
+     * Like {@link #readPoint}, but completes the continuous commands that have finished while waiting for a streamed point.
+     */
+    private boolean readBlendedPoint(ParsedCommand command, int index, double[] target) throws InterruptedException
+    {
+        StreamingTrajectory streamingTrajectory = command.getStreamingTrajectory();
+        if (streamingTrajectory == null)
+        {
+            return readPoint(command, index, target);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STREAMED_POINT_TIMEOUT_MILLIS);
+        while (streamingTrajectory.awaitPoints(index + 1, STREAMED_POINT_POLL_MILLIS, TimeUnit.MILLISECONDS) <= index
+               && !streamingTrajectory.isComplete() && streamingTrajectory.getFailure() == null
+               && System.nanoTime() - deadline < 0)
+        {
+            completeFinished();
+        }
+        // Already waited, only the outcome is left
+        return readPoint(command, index, target, 0);
+    }
+
+    /**
+     * Copies point {@code index} of the command into {@code target}. Streamed points are waited for; returns
+     * false once there are no more points.
+     */
+    private static boolean readPoint(ParsedCommand command, int index, double[] target) throws InterruptedException
+    {
+        return readPoint(command, index, target, STREAMED_POINT_TIMEOUT_MILLIS);
+    }
+
+    private static boolean readPoint(ParsedCommand command, int index, double[] target, long timeoutMillis) throws InterruptedException
+    {
+        TrajectoryBuffer trajectory = command.getTrajectory();
+        if (trajectory != null)
+        {
+            if (index >= trajectory.getPointCount())
+            {
+                return false;
+            }
+            trajectory.getPoint(index, target);
+            return true;
+        }
+        StreamingTrajectory streamingTrajectory = command.getStreamingTrajectory();
+        int available = streamingTrajectory.awaitPoints(index + 1, timeoutMillis, TimeUnit.MILLISECONDS);
+        if (index < available)
+        {
+            streamingTrajectory.getPoint(index, target);
+            return true;
+        }
+        if (streamingTrajectory.getFailure() != null)
+        {
+            throw new IllegalStateException("Streamed trajectory failed after " + available + " points: " + streamingTrajectory.getFailure());
+        }
+        if (streamingTrajectory.isComplete())
+        {
+            return false;
+        }
+        throw new IllegalStateException("Timed out waiting for point " + (index + 1) + " of the streamed trajectory.");
+    }
+
+    /**
+     * A continuous command in motion. Done once its last motion is, the motions run in order.
+     */
+    private static final class PendingCommand
+    {
+        final CommandResultHolder resultHolder;
+        final List<AsyncMotion> motions;
+        // False if starting its motions failed part way
+        final boolean started;
+
+        PendingCommand(CommandResultHolder resultHolder, List<AsyncMotion> motions, boolean started)
+        {
+            this.resultHolder = resultHolder;
+            this.motions = motions;
+            this.started = started;
+        }
+
+        boolean isFinished()
+        {
+            return motions.get(motions.size() - 1).isFinished();
+        }
+
+        void await() throws InterruptedException
+        {
+            motions.get(motions.size() - 1).await();
+        }
+    }
+
+    private enum Motion
+    {
+        PTP,
+        LIN,
+        CIRC,
+        LIN_REL_TOOL,
+        LIN_REL_BASE
+    }
+
+    /**
+     * Moves through the command's points one after the other, or through pairs of auxiliary and end points for CIRC.
+     */
+    private final class PointMotionHandler implements CommandHandler
+    {
+        private final Motion motion;
+
+        PointMotionHandler(Motion motion)
+        {
+            this.motion = motion;
+        }
+
+        @Override
+        public void execute(ParsedCommand command) throws InterruptedException
+        {
+            MotionParameters motionParameters = command.getMotionParameters();
+            double speed = motionParameters.getSpeedOverride();
+            if (speed <= 0)
+            {
+                throw new IllegalArgumentException("Speed override must be above 0 to move.");
+            }
+            if (motion == Motion.CIRC && command.getTrajectory() != null && command.getTrajectory().getPointCount() % 2 != 0)
+            {
+                // Refused before moving at all; a streamed trajectory can only be checked at its end
+                throw new IllegalArgumentException("CIRC needs pairs of auxiliary and end points, got " + command.getTrajectory().getPointCount() + " points.");
+            }
+            boolean cartesian = MovementType.fromActionType(command.getActionType()).isCartesianMotion();
+            F tool = cartesian ? tool(motionParameters.getTool()) : null;
+            F base = cartesian ? base(motionParameters.getBase()) : null;
+            double[] point = cartesian ? pose : joints;
+            double[] auxiliaryPoint = cartesian ? auxiliaryPose : auxiliaryJoints;
+
+            for (int index = 0; readPoint(command, index, motion == Motion.CIRC ? auxiliaryPoint : point); index++)
+            {
+                switch (motion)
+                {
+                    case PTP:
+                        if (cartesian)
+                        {
+                            robot.ptpFrame(point, tool, base, speed);
+                        }
+                        else
+                        {
+                            robot.ptpAxis(point, speed);
+                        }
+                        break;
+                    case LIN:
+                        if (cartesian)
+                        {
+                            robot.linFrame(point, tool, base, speed);
+                        }
+                        else
+                        {
+                            robot.linAxis(point, speed);
+                        }
+                        break;
+                    case CIRC:
+                        if (!readPoint(command, ++index, point))
+                        {
+                            throw new IllegalArgumentException("CIRC needs pairs of auxiliary and end points, point " + index + " has no end point.");
+                        }
+                        if (cartesian)
+                        {
+                            robot.circFrame(auxiliaryPoint, point, tool, base, speed);
+                        }
+                        else
+                        {
+                            robot.circAxis(auxiliaryPoint, point, speed);
+                        }
+                        break;
+                    case LIN_REL_TOOL:
+                        robot.linRelative(point, tool, tool, speed);
+                        break;
+                    case LIN_REL_BASE:
+                        robot.linRelative(point, tool, base, speed);
+                        break;
+                }
+            }
+        }
+    }
+}
@@ -1,26 +1,48 @@
 package hartu.robot.executor;
 
+import com.kuka.generated.ioAccess.Ethercat_x44IOGroup;
+import com.kuka.generated.ioAccess.IOFlangeIOGroup;
 import com.kuka.roboticsAPI.applicationModel.RoboticsAPIApplication;
 import com.kuka.roboticsAPI.deviceModel.LBR;
+import hartu.robot.communication.server.Logger;
 
 import javax.inject.Inject;
 
-import static com.kuka.roboticsAPI.motionModel.BasicMotions.*;
-
+/**
+ * Robot application executing the commands queued by the communication server on the LBR, every
+ * {@link hartu.protocols.constants.ActionTypes} value through its handler in a {@link CommandDispatcher}.
+ */
 public class CommandExecutor extends RoboticsAPIApplication
 {
     @Inject
     private LBR iiwa;
 
+    @Inject
+    private IOFlangeIOGroup gimaticIO;
+    @Inject
+    private Ethercat_x44IOGroup toolControlIO;
+
+    private CommandQueueExecutor queueExecutor;
+
     @Override
     public void initialize()
     {
-
+        LbrRobot robot = new LbrRobot(iiwa, getApplicationData(), gimaticIO, toolControlIO);
+        queueExecutor = new CommandQueueExecutor(new CommandDispatcher<>(robot));
+        Logger.getInstance().log("ROBOT_EXEC", "Command executor initialized.");
     }
 
     @Override
     public void run()
     {
+        queueExecutor.run();
+    }
 
+    @Override
+    public void dispose()
+    {
+        queueExecutor.stop();
+        Logger.getInstance().log("ROBOT_EXEC", "Command executor disposed. " + queueExecutor.getStatistics());
+        super.dispose();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,12 @@
+package hartu.robot.executor;
+
+import hartu.robot.commands.ParsedCommand;
+
+/**
+ * Executes the commands of one {@link hartu.protocols.constants.ActionTypes} value, see
+ * {@link CommandDispatcher#register}. Returns once the command is done; throwing fails the command.
+ */
+public interface CommandHandler
+{
+    void execute(ParsedCommand command) throws Exception;
+}
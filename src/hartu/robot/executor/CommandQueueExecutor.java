@@ -0,0 +1,79 @@
+package hartu.robot.executor;
+
+import hartu.robot.communication.server.CommandQueue;
+import hartu.robot.communication.server.CommandResultHolder;
+import hartu.robot.communication.server.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes commands off the {@link CommandQueue} and runs them with a {@link CommandDispatcher}, waking up as
+ * soon as a command is queued. While continuous commands are in motion it also checks every few
+ * milliseconds whether one has finished, so each is acknowledged close to when the robot is done with it.
+ * Either runs on a thread of its own ({@link #start()}) or on the caller's thread ({@link #run()}), e.g. the
+ * thread of a robot application.
+ */
+public class CommandQueueExecutor implements Runnable
+{
+    // Only bounds how long stop() waits for the loop, a queued command wakes it right away
+    private static final long IDLE_WAIT_MILLIS = 100;
+    private static final long MOTION_CHECK_MILLIS = 2;
+
+    private final CommandDispatcher<?> dispatcher;
+
+    private volatile boolean isRunning = true;
+    private Thread executorThread;
+
+    public CommandQueueExecutor(CommandDispatcher<?> dispatcher)
+    {
+        this.dispatcher = dispatcher;
+    }
+
+    public void start()
+    {
+        executorThread = new Thread(this, "CommandQueueExecutor");
+        executorThread.setDaemon(true);
+        executorThread.start();
+    }
+
+    public void stop()
+    {
+        isRunning = false;
+        if (executorThread != null)
+        {
+            executorThread.interrupt();
+            try
+            {
+                executorThread.join(2000);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        // Tagged logging
+        Logger.getInstance().log("ROBOT_EXEC", "Command executor started. Ready to take commands from queue.");
+        while (isRunning && !Thread.currentThread().isInterrupted())
+        {
+            long wait = dispatcher.getPendingCount() > 0 ? MOTION_CHECK_MILLIS : IDLE_WAIT_MILLIS;
+            CommandResultHolder resultHolder = CommandQueue.pollCommand(wait, TimeUnit.MILLISECONDS);
+            dispatcher.completeFinished();
+            if (resultHolder != null)
+            {
+                dispatcher.execute(resultHolder);
+            }
+        }
+        dispatcher.completeAll();
+        Logger.getInstance().log("ROBOT_EXEC", "Command executor stopped. " + getStatistics());
+    }
+
+    public String getStatistics()
+    {
+        return dispatcher.getStatistics();
+    }
+}
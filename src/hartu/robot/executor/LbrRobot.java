@@ -0,0 +1,225 @@
+package hartu.robot.executor;
+
+import com.kuka.generated.ioAccess.Ethercat_x44IOGroup;
+import com.kuka.generated.ioAccess.IOFlangeIOGroup;
+import com.kuka.roboticsAPI.applicationModel.IApplicationData;
+import com.kuka.roboticsAPI.deviceModel.JointPosition;
+import com.kuka.roboticsAPI.deviceModel.LBR;
+import com.kuka.roboticsAPI.geometricModel.Frame;
+import com.kuka.roboticsAPI.geometricModel.ObjectFrame;
+import com.kuka.roboticsAPI.geometricModel.Tool;
+import com.kuka.roboticsAPI.motionModel.IMotionContainer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.kuka.roboticsAPI.motionModel.BasicMotions.circ;
+import static com.kuka.roboticsAPI.motionModel.BasicMotions.lin;
+import static com.kuka.roboticsAPI.motionModel.BasicMotions.linRel;
+import static com.kuka.roboticsAPI.motionModel.BasicMotions.ptp;
+
+/**
+ * {@link RobotBackend} moving an LBR with RoboticsAPI motions.
+ * <p>
+ * Tools are created from their templates in the application data and attached to the flange; bases are
+ * frames of the application data, named by their path like "/TofasBase/Kitting". Output pins follow the
+ * cell wiring: 1 is DO_Flange7 of the media flange, 2 and 3 are Output2 and Output1 of the Ethercat X44 group.
+ * Program calls run whatever was registered for the program ID with {@link #registerProgram}.
+ * <p>
+ * Asynchronous motions are blended into the next one: PTP by a share of the motion
+ * ({@link #DEFAULT_BLENDING_REL}), LIN by a distance from the point ({@link #DEFAULT_BLENDING_CART_MM}).
+ */
+public class LbrRobot implements RobotBackend<ObjectFrame>
+{
+    public static final double DEFAULT_BLENDING_REL = 0.2;
+    public static final double DEFAULT_BLENDING_CART_MM = 20.0;
+
+    private final LBR lbr;
+    private final IApplicationData applicationData;
+    private final IOFlangeIOGroup flangeIO;
+    private final Ethercat_x44IOGroup toolControlIO;
+    private final Map<Integer, Runnable> programs = new HashMap<>();
+    private double blendingRel = DEFAULT_BLENDING_REL;
+    private double blendingCartMm = DEFAULT_BLENDING_CART_MM;
+
+    public LbrRobot(LBR lbr, IApplicationData applicationData, IOFlangeIOGroup flangeIO, Ethercat_x44IOGroup toolControlIO)
+    {
+        this.lbr = lbr;
+        this.applicationData = applicationData;
+        this.flangeIO = flangeIO;
+        this.toolControlIO = toolControlIO;
+    }
+
+    public void registerProgram(int programId, Runnable program)
+    {
+        programs.put(programId, program);
+    }
+
+    /**
+     * @param blendingRel Share of a PTP motion, 0 to 1, the robot may cut short to blend into the next one.
+     * @param blendingCartMm Distance from a LIN point at which the robot may start blending into the next motion.
+     */
+    public void setBlending(double blendingRel, double blendingCartMm)
+    {
+        this.blendingRel = blendingRel;
+        this.blendingCartMm = blendingCartMm;
+    }
+
+    @Override
+    public ObjectFrame resolveTool(String name)
+    {
+        if (name.isEmpty())
+        {
+            return lbr.getFlange();
+        }
+        Tool tool = applicationData.createFromTemplate(name);
+        if (tool == null)
+        {
+            throw new IllegalArgumentException("Unknown tool: " + name);
+        }
+        tool.attachTo(lbr.getFlange());
+        return tool.getDefaultMotionFrame();
+    }
+
+    @Override
+    public ObjectFrame resolveBase(String name)
+    {
+        if (name.isEmpty())
+        {
+            return lbr.getRootFrame();
+        }
+        ObjectFrame base = applicationData.getFrame(name);
+        if (base == null)
+        {
+            throw new IllegalArgumentException("Unknown base frame: " + name);
+        }
+        return base;
+    }
+
+    @Override
+    public void ptpAxis(double[] joints, double speed)
+    {
+        lbr.move(ptp(new JointPosition(joints)).setJointVelocityRel(speed));
+    }
+
+    @Override
+    public void ptpFrame(double[] pose, ObjectFrame tool, ObjectFrame base, double speed)
+    {
+        tool.move(ptp(frame(base, pose)).setJointVelocityRel(speed));
+    }
+
+    @Override
+    public void linAxis(double[] joints, double speed)
+    {
+        lbr.move(lin(flangeAt(joints)).setJointVelocityRel(speed));
+    }
+
+    @Override
+    public void linFrame(double[] pose, ObjectFrame tool, ObjectFrame base, double speed)
+    {
+        tool.move(lin(frame(base, pose)).setJointVelocityRel(speed));
+    }
+
+    @Override
+    public void circAxis(double[] auxiliaryJoints, double[] endJoints, double speed)
+    {
+        lbr.move(circ(flangeAt(auxiliaryJoints), flangeAt(endJoints)).setJointVelocityRel(speed));
+    }
+
+    @Override
+    public void circFrame(double[] auxiliaryPose, double[] endPose, ObjectFrame tool, ObjectFrame base, double speed)
+    {
+        tool.move(circ(frame(base, auxiliaryPose), frame(base, endPose)).setJointVelocityRel(speed));
+    }
+
+    @Override
+    public AsyncMotion ptpAxisAsync(double[] joints, double speed)
+    {
+        return started(lbr.moveAsync(ptp(new JointPosition(joints)).setJointVelocityRel(speed).setBlendingRel(blendingRel)));
+    }
+
+    @Override
+    public AsyncMotion ptpFrameAsync(double[] pose, ObjectFrame tool, ObjectFrame base, double speed)
+    {
+        return started(tool.moveAsync(ptp(frame(base, pose)).setJointVelocityRel(speed).setBlendingRel(blendingRel)));
+    }
+
+    @Override
+    public AsyncMotion linFrameAsync(double[] pose, ObjectFrame tool, ObjectFrame base, double speed)
+    {
+        return started(tool.moveAsync(lin(frame(base, pose)).setJointVelocityRel(speed).setBlendingCart(blendingCartMm)));
+    }
+
+    @Override
+    public void linRelative(double[] offset, ObjectFrame tool, ObjectFrame reference, double speed)
+    {
+        tool.move(linRel(offset[0], offset[1], offset[2], offset[3], offset[4], offset[5], reference).setJointVelocityRel(speed));
+    }
+
+    @Override
+    public void setOutput(int pin, boolean state)
+    {
+        switch (pin)
+        {
+            case 1:
+                flangeIO.setDO_Flange7(state);
+                break;
+            case 2:
+                toolControlIO.setOutput2(state);
+                break;
+            case 3:
+                toolControlIO.setOutput1(state);
+                break;
+            default:
+                throw new IllegalArgumentException("No output mapped to IO pin " + pin);
+        }
+    }
+
+    @Override
+    public void callProgram(int programId)
+    {
+        Runnable program = programs.get(programId);
+        if (program == null)
+        {
+            throw new IllegalArgumentException("No program registered for ID " + programId);
+        }
+        program.run();
+    }
+
+    private static AsyncMotion started(final IMotionContainer container)
+    {
+        return new AsyncMotion()
+        {
+            @Override
+            public boolean isFinished()
+            {
+                return container.isFinished();
+            }
+
+            @Override
+            public void await()
+            {
+                container.await();
+            }
+
+            @Override
+            public String getError()
+            {
+                return container.hasError() ? container.getErrorMessage() : null;
+            }
+        };
+    }
+
+    private static Frame frame(ObjectFrame base, double[] pose)
+    {
+        return new Frame(base, pose[0], pose[1], pose[2], pose[3], pose[4], pose[5]);
+    }
+
+    /**
+     * Flange pose at the given joint values, in the robot base.
+     */
+    private Frame flangeAt(double[] joints)
+    {
+        return lbr.getForwardKinematic(new JointPosition(joints));
+    }
+}
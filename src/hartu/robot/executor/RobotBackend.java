@@ -0,0 +1,77 @@
+package hartu.robot.executor;
+
+/**
+ * What the {@link CommandDispatcher} needs from a robot: motions, outputs and program calls.
+ * <p>
+ * Positions are in robot units: J1..J7 in radians, X;Y;Z in mm and A;B;C in radians. Speeds are relative,
+ * above 0 and at most 1. Every call returns once the robot has done what it asked for and throws if it
+ * could not. Called from the executor thread only; position arrays are reused by the caller after a call
+ * returns and must not be kept.
+ * @param <F> Resolved tool and base frames, looked up by name once and cached by the dispatcher.
+ */
+public interface RobotBackend<F>
+{
+    /**
+     * The motion frame of the named tool; an empty name means the flange.
+     * @throws IllegalArgumentException if there is no such tool.
+     */
+    F resolveTool(String name);
+
+    /**
+     * The named base frame; an empty name means the robot base.
+     * @throws IllegalArgumentException if there is no such frame.
+     */
+    F resolveBase(String name);
+
+    void ptpAxis(double[] joints, double speed);
+
+    /**
+     * @param pose X;Y;Z;A;B;C of {@code tool} in {@code base}.
+     */
+    void ptpFrame(double[] pose, F tool, F base, double speed);
+
+    /**
+     * Straight line of the flange to where it is at {@code joints}.
+     */
+    void linAxis(double[] joints, double speed);
+
+    void linFrame(double[] pose, F tool, F base, double speed);
+
+    /**
+     * Arc of the flange through where it is at {@code auxiliaryJoints} to where it is at {@code endJoints}.
+     */
+    void circAxis(double[] auxiliaryJoints, double[] endJoints, double speed);
+
+    void circFrame(double[] auxiliaryPose, double[] endPose, F tool, F base, double speed);
+
+    /**
+     * Starts {@link #ptpAxis} without waiting for it. The robot blends it into the motion started next, if
+     * that one is started before this one is reached; otherwise it stops at the point.
+     */
+    AsyncMotion ptpAxisAsync(double[] joints, double speed);
+
+    /**
+     * Starts {@link #ptpFrame} without waiting for it, blended like {@link #ptpAxisAsync}.
+     */
+    AsyncMotion ptpFrameAsync(double[] pose, F tool, F base, double speed);
+
+    /**
+     * Starts {@link #linFrame} without waiting for it, blended like {@link #ptpAxisAsync}.
+     */
+    AsyncMotion linFrameAsync(double[] pose, F tool, F base, double speed);
+
+    /**
+     * Straight line of {@code tool} by {@code offset}, X;Y;Z;A;B;C expressed in {@code reference}.
+     */
+    void linRelative(double[] offset, F tool, F reference, double speed);
+
+    /**
+     * @throws IllegalArgumentException if no output is mapped to {@code pin}.
+     */
+    void setOutput(int pin, boolean state);
+
+    /**
+     * @throws IllegalArgumentException if there is no program with that ID.
+     */
+    void callProgram(int programId);
+}
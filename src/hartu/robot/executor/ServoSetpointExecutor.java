@@ -0,0 +1,146 @@
+package hartu.robot.executor;
+
+import hartu.robot.commands.StreamedSetpoint;
+import hartu.robot.communication.server.Logger;
+import hartu.robot.communication.server.SetpointStreamServer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Feeds the newest setpoint of a {@link SetpointStreamServer} to a {@link ServoTarget}.
+ * <p>
+ * Wakes up as soon as a newer setpoint arrives, so intermediate setpoints that were overtaken while the
+ * target was busy are skipped. Setpoints older than the configured maximum age are not applied: when the
+ * stream stalls the robot holds the last destination instead of jumping to an outdated one later.
+ */
+public class ServoSetpointExecutor implements Runnable
+{
+    private static final long IDLE_WAIT_MILLIS = 100;
+
+    private final SetpointStreamServer setpointSource;
+    private final ServoTarget servoTarget;
+    private final long maxSetpointAgeNanos;
+    private final double[] jointBuffer = new double[7];
+
+    private final AtomicLong setpointsApplied = new AtomicLong();
+    private final AtomicLong setpointsExpired = new AtomicLong();
+    // Time from taking a packet off the socket until it was handed to the target
+    private final AtomicLong totalApplyLatencyNanos = new AtomicLong();
+    private volatile long maxApplyLatencyNanos = 0;
+
+    private volatile boolean isRunning = true;
+    private Thread executorThread;
+
+    public ServoSetpointExecutor(SetpointStreamServer setpointSource, ServoTarget servoTarget, long maxSetpointAge, TimeUnit unit)
+    {
+        this.setpointSource = setpointSource;
+        this.servoTarget = servoTarget;
+        this.maxSetpointAgeNanos = unit.toNanos(maxSetpointAge);
+    }
+
+    public void start()
+    {
+        executorThread = new Thread(this, "ServoSetpointExecutor");
+        executorThread.setDaemon(true);
+        executorThread.setPriority(Thread.MAX_PRIORITY);
+        executorThread.start();
+        Logger.getInstance().log("ROBOT_EXEC", "Servo setpoint executor started. Max setpoint age: " + TimeUnit.NANOSECONDS.toMillis(maxSetpointAgeNanos) + " ms");
+    }
+
+    public void stop()
+    {
+        isRunning = false;
+        if (executorThread != null)
+        {
+            executorThread.interrupt();
+            try
+            {
+                executorThread.join(2000);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Logger.getInstance().log("ROBOT_EXEC", "Servo setpoint executor stopped. " + getStatistics());
+    }
+
+    @Override
+    public void run()
+    {
+        StreamedSetpoint current = setpointSource.getLatestSetpoint();
+        while (isRunning)
+        {
+            StreamedSetpoint next;
+            try
+            {
+                next = setpointSource.awaitNewerSetpoint(current, IDLE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                break;
+            }
+            if (next == null || next == current)
+            {
+                continue;
+            }
+            current = next;
+
+            long age = System.nanoTime() - next.getReceivedNanos();
+            if (age > maxSetpointAgeNanos)
+            {
+                setpointsExpired.incrementAndGet();
+                continue;
+            }
+            try
+            {
+                apply(next);
+            }
+            catch (RuntimeException e)
+            {
+                Logger.getInstance().log("ROBOT_EXEC", "Error applying setpoint " + next.getSequence() + ": " + e.getMessage());
+                continue;
+            }
+            long latency = System.nanoTime() - next.getReceivedNanos();
+            setpointsApplied.incrementAndGet();
+            totalApplyLatencyNanos.addAndGet(latency);
+            if (latency > maxApplyLatencyNanos)
+            {
+                maxApplyLatencyNanos = latency;
+            }
+        }
+    }
+
+    private void apply(StreamedSetpoint setpoint)
+    {
+        if (setpoint.isCartesian())
+        {
+            servoTarget.setCartesianDestination(setpoint.getValue(0), setpoint.getValue(1), setpoint.getValue(2), setpoint.getValue(3), setpoint.getValue(4), setpoint.getValue(5));
+        }
+        else
+        {
+            for (int i = 0; i < jointBuffer.length; i++)
+            {
+                jointBuffer[i] = setpoint.getValue(i);
+            }
+            servoTarget.setJointDestination(jointBuffer);
+        }
+    }
+
+    public long getSetpointsApplied()
+    {
+        return setpointsApplied.get();
+    }
+
+    public long getSetpointsExpired()
+    {
+        return setpointsExpired.get();
+    }
+
+    public String getStatistics()
+    {
+        long applied = setpointsApplied.get();
+        long averageMicros = applied == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalApplyLatencyNanos.get() / applied);
+        return "Applied: " + applied + ", expired: " + setpointsExpired.get() + ", avg receive-to-apply: " + averageMicros + " us, max: " + TimeUnit.NANOSECONDS.toMicros(maxApplyLatencyNanos) + " us";
+    }
+}
@@ -0,0 +1,18 @@
+package hartu.robot.executor;
+
+/**
+ * Destination of streamed setpoints, e.g. a running SmartServo motion.
+ * Called from the servo executor thread only.
+ */
+public interface ServoTarget
+{
+    /**
+     * @param jointValues J1..J7 in radians.
+     */
+    void setJointDestination(double[] jointValues);
+
+    /**
+     * X;Y;Z in mm, A;B;C in radians.
+     */
+    void setCartesianDestination(double x, double y, double z, double a, double b, double c);
+}
@@ -0,0 +1,100 @@
+package hartu.robot.executor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Time as seen by a {@link SimulatedRobot}, in nanoseconds since the clock was created.
+ * <p>
+ * A real-time clock runs with the wall clock and waiting for a motion takes as long as the motion would.
+ * A scaled clock runs a given number of times faster, so a simulated cycle finishes sooner while keeping
+ * its overlaps with the rest of the server. A virtual clock only moves when something waits on it and then
+ * jumps straight to the end of the wait: runs take no time at all and report the cycle time they would have.
+ */
+public final class SimulatedClock
+{
+    private final long startNanos = System.nanoTime();
+    // Virtual nanoseconds per wall clock nanosecond, 0 for a virtual clock
+    private final double speedup;
+    // Guarded by this, virtual clock only
+    private long virtualNanos = 0;
+
+    private SimulatedClock(double speedup)
+    {
+        this.speedup = speedup;
+    }
+
+    public static SimulatedClock realTime()
+    {
+        return new SimulatedClock(1.0);
+    }
+
+    /**
+     * @param speedup How many times faster than the wall clock simulated time runs, above 0.
+     */
+    public static SimulatedClock scaled(double speedup)
+    {
+        if (!(speedup > 0) || Double.isInfinite(speedup))
+        {
+            throw new IllegalArgumentException("Clock speedup must be a positive number. Got " + speedup);
+        }
+        return new SimulatedClock(speedup);
+    }
+
+    public static SimulatedClock virtual()
+    {
+        return new SimulatedClock(0.0);
+    }
+
+    public boolean isVirtual()
+    {
+        return speedup == 0.0;
+    }
+
+    public long nanoTime()
+    {
+        if (isVirtual())
+        {
+            synchronized (this)
+            {
+                return virtualNanos;
+            }
+        }
+        return (long) ((System.nanoTime() - startNanos) * speedup);
+    }
+
+    /**
+     * Waits until the clock reads {@code nanos}, or just moves a virtual clock there. Returns at once if it already does.
+     */
+    public void advanceTo(long nanos) throws InterruptedException
+    {
+        if (isVirtual())
+        {
+            skipTo(nanos);
+            return;
+        }
+        long remaining;
+        while ((remaining = nanos - nanoTime()) > 0)
+        {
+            LockSupport.parkNanos((long) Math.ceil(remaining / speedup));
+            if (Thread.interrupted())
+            {
+                throw new InterruptedException("Interrupted while waiting for the simulated clock.");
+            }
+        }
+    }
+
+    /**
+     * Moves a virtual clock forward to {@code nanos}, never back.
+     */
+    synchronized void skipTo(long nanos)
+    {
+        virtualNanos = Math.max(virtualNanos, nanos);
+    }
+
+    @Override
+    public String toString()
+    {
+        return (isVirtual() ? "Virtual clock at " : "Clock x" + speedup + " at ") + TimeUnit.NANOSECONDS.toMillis(nanoTime()) + " ms";
+    }
+}
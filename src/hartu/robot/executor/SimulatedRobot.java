@@ -0,0 +1,450 @@
+package hartu.robot.executor;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RobotBackend} without a robot, for running the whole command path on a PC: server, parser,
+ * queue and dispatcher, in load tests, benchmarks and CI.
+ * <p>
+ * Motions take as long as they would on an LBR iiwa 14 R820, on a {@link SimulatedClock} that may run in
+ * real time, faster, or virtually without any waiting. Every motion follows a trapezoidal velocity profile:
+ * <ul>
+ * <li>Axis motions move all joints synchronously, the slowest joint sets the duration. LIN and CIRC to
+ * axis targets are timed like PTP, through the auxiliary point for CIRC.</li>
+ * <li>Cartesian motions move the TCP along a line, or an arc through the auxiliary point for CIRC; the
+ * longer of path and orientation change sets the duration. Cartesian PTP is timed like LIN.</li>
+ * </ul>
+ * The speed override scales the velocity limits, not the accelerations. Asynchronous motions run one after
+ * the other without blending. Setting an output takes the IO latency.
+ * <p>
+ * There is no kinematics between joints and pose: axis motions update the joints, Cartesian motions the TCP
+ * pose, each starting where the last motion of its kind ended. Frames are resolved to their names. Outputs
+ * 1 to 3 exist like in the cell, programs are whatever was registered with {@link #registerProgram} and
+ * take no time.
+ */
+public class SimulatedRobot implements RobotBackend<String>
+{
+    private static final int OUTPUT_COUNT = 3;
+
+    // iiwa 14 R820 data sheet, A1..A7 in deg/s
+    private static final double[] JOINT_VELOCITY_LIMITS_DEG = {85, 85, 100, 75, 130, 135, 135};
+    // Not in the data sheet: full speed in about 0.3 s, in deg/s^2. Calibrate with setJointLimits
+    private static final double[] JOINT_ACCELERATION_LIMITS_DEG = {300, 300, 350, 250, 450, 450, 450};
+    public static final double DEFAULT_CARTESIAN_VELOCITY_MM = 1500.0;
+    public static final double DEFAULT_CARTESIAN_ACCELERATION_MM = 3000.0;
+    public static final double DEFAULT_ORIENTATION_VELOCITY_RAD = Math.PI;
+    public static final double DEFAULT_ORIENTATION_ACCELERATION_RAD = 2 * Math.PI;
+    public static final long DEFAULT_IO_LATENCY_MILLIS = 4;
+
+    private final SimulatedClock clock;
+
+    // All guarded by this, read by other threads through the getters
+    private final double[] jointVelocityLimits = new double[7];
+    private final double[] jointAccelerationLimits = new double[7];
+    private double cartesianVelocity = DEFAULT_CARTESIAN_VELOCITY_MM;
+    private double cartesianAcceleration = DEFAULT_CARTESIAN_ACCELERATION_MM;
+    private double orientationVelocity = DEFAULT_ORIENTATION_VELOCITY_RAD;
+    private double orientationAcceleration = DEFAULT_ORIENTATION_ACCELERATION_RAD;
+    private long ioLatencyNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_IO_LATENCY_MILLIS);
+
+    private final double[] joints = new double[7];
+    private final double[] pose = new double[6];
+    private final boolean[] outputs = new boolean[OUTPUT_COUNT + 1];
+    private final Map<Integer, Runnable> programs = new HashMap<>();
+    // Clock time the last started motion ends at
+    private long busyUntilNanos = 0;
+    private long motionNanos = 0;
+    private long motions = 0;
+    private long framesResolved = 0;
+
+    /**
+     * A robot on a {@link SimulatedClock#virtual() virtual clock}: motions take no wall clock time.
+     */
+    public SimulatedRobot()
+    {
+        this(SimulatedClock.virtual());
+    }
+
+    public SimulatedRobot(SimulatedClock clock)
+    {
+        this.clock = clock;
+        for (int i = 0; i < joints.length; i++)
+        {
+            jointVelocityLimits[i] = Math.toRadians(JOINT_VELOCITY_LIMITS_DEG[i]);
+            jointAccelerationLimits[i] = Math.toRadians(JOINT_ACCELERATION_LIMITS_DEG[i]);
+        }
+    }
+
+    /**
+     * @param velocities A1..A7 at 100 % speed, in rad/s.
+     * @param accelerations A1..A7 in rad/s^2.
+     */
+    public synchronized void setJointLimits(double[] velocities, double[] accelerations)
+    {
+        System.arraycopy(velocities, 0, jointVelocityLimits, 0, jointVelocityLimits.length);
+        System.arraycopy(accelerations, 0, jointAccelerationLimits, 0, jointAccelerationLimits.length);
+    }
+
+    /**
+     * TCP limits of Cartesian motions at 100 % speed, path in mm/s and mm/s^2, orientation in rad/s and rad/s^2.
+     */
+    public synchronized void setCartesianLimits(double velocity, double acceleration, double orientationVelocity,
+                                                double orientationAcceleration)
+    {
+        this.cartesianVelocity = velocity;
+        this.cartesianAcceleration = acceleration;
+        this.orientationVelocity = orientationVelocity;
+        this.orientationAcceleration = orientationAcceleration;
+    }
+
+    public synchronized void setIoLatency(long latency, TimeUnit unit)
+    {
+        this.ioLatencyNanos = unit.toNanos(latency);
+    }
+
+    public synchronized void registerProgram(int programId, Runnable program)
+    {
+        programs.put(programId, program);
+    }
+
+    @Override
+    public synchronized String resolveTool(String name)
+    {
+        framesResolved++;
+        return name.isEmpty() ? "Flange" : name;
+    }
+
+    @Override
+    public synchronized String resolveBase(String name)
+    {
+        framesResolved++;
+        return name.isEmpty() ? "RobotBase" : name;
+    }
+
+    @Override
+    public void ptpAxis(double[] joints, double speed)
+    {
+        waitFor(moveJoints(null, joints, speed));
+    }
+
+    @Override
+    public void ptpFrame(double[] pose, String tool, String base, double speed)
+    {
+        waitFor(movePose(null, pose, speed));
+    }
+
+    @Override
+    public void linAxis(double[] joints, double speed)
+    {
+        waitFor(moveJoints(null, joints, speed));
+    }
+
+    @Override
+    public void linFrame(double[] pose, String tool, String base, double speed)
+    {
+        waitFor(movePose(null, pose, speed));
+    }
+
+    @Override
+    public void circAxis(double[] auxiliaryJoints, double[] endJoints, double speed)
+    {
+        waitFor(moveJoints(auxiliaryJoints, endJoints, speed));
+    }
+
+    @Override
+    public void circFrame(double[] auxiliaryPose, double[] endPose, String tool, String base, double speed)
+    {
+        waitFor(movePose(auxiliaryPose, endPose, speed));
+    }
+
+    @Override
+    public AsyncMotion ptpAxisAsync(double[] joints, double speed)
+    {
+        return new TimedMotion(moveJoints(null, joints, speed));
+    }
+
+    @Override
+    public AsyncMotion ptpFrameAsync(double[] pose, String tool, String base, double speed)
+    {
+        return new TimedMotion(movePose(null, pose, speed));
+    }
+
+    @Override
+    public AsyncMotion linFrameAsync(double[] pose, String tool, String base, double speed)
+    {
+        return new TimedMotion(movePose(null, pose, speed));
+    }
+
+    @Override
+    public void linRelative(double[] offset, String tool, String reference, double speed)
+    {
+        waitFor(movePoseBy(offset, speed));
+    }
+
+    @Override
+    public void setOutput(int pin, boolean state)
+    {
+        if (pin < 1 || pin > OUTPUT_COUNT)
+        {
+            throw new IllegalArgumentException("No output mapped to IO pin " + pin);
+        }
+        long setAtNanos;
+        synchronized (this)
+        {
+            setAtNanos = clock.nanoTime() + ioLatencyNanos;
+        }
+        waitFor(setAtNanos);
+        synchronized (this)
+        {
+            outputs[pin] = state;
+        }
+    }
+
+    @Override
+    public void callProgram(int programId)
+    {
+        Runnable program;
+        synchronized (this)
+        {
+            program = programs.get(programId);
+        }
+        if (program == null)
+        {
+            throw new IllegalArgumentException("No program registered for ID " + programId);
+        }
+        program.run();
+    }
+
+    public SimulatedClock getClock()
+    {
+        return clock;
+    }
+
+    public synchronized double[] getJoints()
+    {
+        return joints.clone();
+    }
+
+    public synchronized double[] getPose()
+    {
+        return pose.clone();
+    }
+
+    public synchronized boolean getOutput(int pin)
+    {
+        return outputs[pin];
+    }
+
+    /**
+     * Motions executed, one per point (one per auxiliary and end point pair for CIRC).
+     */
+    public synchronized long getMotions()
+    {
+        return motions;
+    }
+
+    /**
+     * Time spent moving so far, in clock nanoseconds.
+     */
+    public synchronized long getMotionNanos()
+    {
+        return motionNanos;
+    }
+
+    /**
+     * Tool and base lookups; the dispatcher caches frames, so this stays at the number of distinct names.
+     */
+    public synchronized long getFramesResolved()
+    {
+        return framesResolved;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "Joints: " + Arrays.toString(joints) + ", pose: " + Arrays.toString(pose) + ", motions: " + motions
+               + ", moving for " + TimeUnit.NANOSECONDS.toMillis(motionNanos) + " ms. " + clock;
+    }
+
+    /**
+     * Moves the joints, through {@code auxiliary} unless null. Returns the clock time the motion ends at.
+     */
+    private synchronized long moveJoints(double[] auxiliary, double[] target, double speed)
+    {
+        double seconds;
+        if (auxiliary != null)
+        {
+            seconds = jointSeconds(joints, auxiliary, speed) + jointSeconds(auxiliary, target, speed);
+        }
+        else
+        {
+            seconds = jointSeconds(joints, target, speed);
+        }
+        System.arraycopy(target, 0, joints, 0, joints.length);
+        return schedule(seconds);
+    }
+
+    /**
+     * Moves the TCP on a line, or an arc through {@code auxiliary} unless null. Returns the clock time the motion ends at.
+     */
+    private synchronized long movePose(double[] auxiliary, double[] target, double speed)
+    {
+        double path = auxiliary != null ? arcLength(pose, auxiliary, target) : distance(pose, target);
+        double rotation = 0;
+        for (int i = 3; i < 6; i++)
+        {
+            rotation = Math.max(rotation, Math.abs(Math.IEEEremainder(target[i] - pose[i], 2 * Math.PI)));
+        }
+        System.arraycopy(target, 0, pose, 0, pose.length);
+        return schedule(cartesianSeconds(path, rotation, speed));
+    }
+
+    private synchronized long movePoseBy(double[] offset, double speed)
+    {
+        double rotation = 0;
+        for (int i = 0; i < pose.length; i++)
+        {
+            pose[i] += offset[i];
+            if (i >= 3)
+            {
+                rotation = Math.max(rotation, Math.abs(offset[i]));
+            }
+        }
+        return schedule(cartesianSeconds(distance(new double[3], offset), rotation, speed));
+    }
+
+    /**
+     * Starts a motion of {@code seconds} once the ones already started have ended. Requires the lock.
+     */
+    private long schedule(double seconds)
+    {
+        long nanos = (long) (seconds * 1e9);
+        busyUntilNanos = Math.max(busyUntilNanos, clock.nanoTime()) + nanos;
+        motionNanos += nanos;
+        motions++;
+        return busyUntilNanos;
+    }
+
+    private void waitFor(long clockNanos)
+    {
+        try
+        {
+            clock.advanceTo(clockNanos);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while the simulated robot was moving.");
+        }
+    }
+
+    /**
+     * All joints arrive together, so the joint needing the longest profile sets the duration.
+     */
+    private double jointSeconds(double[] from, double[] to, double speed)
+    {
+        double seconds = 0;
+        for (int i = 0; i < from.length; i++)
+        {
+            seconds = Math.max(seconds, trapezoidSeconds(Math.abs(to[i] - from[i]), jointVelocityLimits[i] * speed,
+                                                         jointAccelerationLimits[i]));
+        }
+        return seconds;
+    }
+
+    private double cartesianSeconds(double path, double rotation, double speed)
+    {
+        return Math.max(trapezoidSeconds(path, cartesianVelocity * speed, cartesianAcceleration),
+                        trapezoidSeconds(rotation, orientationVelocity * speed, orientationAcceleration));
+    }
+
+    /**
+     * Accelerating, cruising and braking over {@code distance}; a triangle if it is too short to reach {@code velocity}.
+     */
+    private static double trapezoidSeconds(double distance, double velocity, double acceleration)
+    {
+        if (distance <= 0)
+        {
+            return 0;
+        }
+        if (distance >= velocity * velocity / acceleration)
+        {
+            return distance / velocity + velocity / acceleration;
+        }
+        return 2 * Math.sqrt(distance / acceleration);
+    }
+
+    private static double distance(double[] from, double[] to)
+    {
+        double dx = to[0] - from[0];
+        double dy = to[1] - from[1];
+        double dz = to[2] - from[2];
+        return Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * Arc from {@code start} through {@code auxiliary} to {@code end}. With the inscribed angle g at the
+     * auxiliary point the arc is |start end| (pi - g) / sin g; just the two segments if the points are in line.
+     */
+    private static double arcLength(double[] start, double[] auxiliary, double[] end)
+    {
+        double toStart = distance(auxiliary, start);
+        double toEnd = distance(auxiliary, end);
+        if (toStart == 0 || toEnd == 0)
+        {
+            return distance(start, end);
+        }
+        double dot = 0;
+        for (int i = 0; i < 3; i++)
+        {
+            dot += (start[i] - auxiliary[i]) * (end[i] - auxiliary[i]);
+        }
+        double inscribedAngle = Math.acos(Math.max(-1, Math.min(1, dot / (toStart * toEnd))));
+        double sin = Math.sin(inscribedAngle);
+        if (sin < 1e-9)
+        {
+            return toStart + toEnd;
+        }
+        return distance(start, end) * (Math.PI - inscribedAngle) / sin;
+    }
+
+    /**
+     * A motion ending at a given clock time.
+     */
+    private final class TimedMotion implements AsyncMotion
+    {
+        private final long endNanos;
+
+        TimedMotion(long endNanos)
+        {
+            this.endNanos = endNanos;
+        }
+
+        @Override
+        public boolean isFinished()
+        {
+            if (clock.isVirtual())
+            {
+                // Nothing else moves a virtual clock while the executor polls
+                clock.skipTo(endNanos);
+                return true;
+            }
+            return clock.nanoTime() >= endNanos;
+        }
+
+        @Override
+        public void await() throws InterruptedException
+        {
+            clock.advanceTo(endNanos);
+        }
+
+        @Override
+        public String getError()
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package hartu.robot.executor;
+
+import com.kuka.connectivity.motionModel.smartServo.ISmartServoRuntime;
+import com.kuka.roboticsAPI.deviceModel.JointPosition;
+import com.kuka.roboticsAPI.geometricModel.AbstractFrame;
+import com.kuka.roboticsAPI.geometricModel.Frame;
+
+/**
+ * {@link ServoTarget} forwarding setpoints to the runtime of an already started SmartServo motion.
+ */
+public class SmartServoTarget implements ServoTarget
+{
+    private final ISmartServoRuntime servoRuntime;
+    private final AbstractFrame cartesianReference;
+    private final JointPosition jointDestination;
+
+    /**
+     * @param cartesianReference Frame Cartesian setpoints are expressed in, usually the robot base.
+     */
+    public SmartServoTarget(ISmartServoRuntime servoRuntime, AbstractFrame cartesianReference)
+    {
+        this.servoRuntime = servoRuntime;
+        this.cartesianReference = cartesianReference;
+        this.jointDestination = new JointPosition(7);
+    }
+
+    @Override
+    public void setJointDestination(double[] jointValues)
+    {
+        jointDestination.set(jointValues);
+        servoRuntime.setDestination(jointDestination);
+    }
+
+    @Override
+    public void setCartesianDestination(double x, double y, double z, double a, double b, double c)
+    {
+        servoRuntime.setDestination(new Frame(cartesianReference, x, y, z, a, b, c));
+    }
+}
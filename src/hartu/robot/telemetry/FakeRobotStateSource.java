@@ -0,0 +1,44 @@
+package hartu.robot.telemetry;
+
+/**
+ * Synthetic robot state for running the telemetry service without a robot: every joint follows a slow
+ * sine wave, torques and pose are derived from it. Joints listed as frozen keep still, which exercises
+ * the delta encoding of unchanged values.
+ */
+public class FakeRobotStateSource implements RobotStateSource
+{
+    private final long startNanos = System.nanoTime();
+    private final boolean[] frozenJoints = new boolean[7];
+
+    public FakeRobotStateSource(int... frozenJointIndexes)
+    {
+        for (int jointIndex : frozenJointIndexes)
+        {
+            frozenJoints[jointIndex] = true;
+        }
+    }
+
+    @Override
+    public void sample(RobotStateSample sample)
+    {
+        sample.setTimestampMicros(System.currentTimeMillis() * 1000);
+        double seconds = (System.nanoTime() - startNanos) / 1.0e9;
+
+        double[] joints = sample.getJointPositions();
+        double[] torques = sample.getExternalTorques();
+        for (int i = 0; i < joints.length; i++)
+        {
+            double phase = frozenJoints[i] ? 0.0 : seconds * (0.2 + 0.05 * i);
+            joints[i] = 0.5 * Math.sin(2 * Math.PI * phase);
+            torques[i] = 2.0 * Math.cos(2 * Math.PI * phase);
+        }
+
+        double[] pose = sample.getTcpPose();
+        pose[0] = 500.0 + 100.0 * joints[0];
+        pose[1] = 100.0 * joints[1];
+        pose[2] = 600.0 + 100.0 * joints[2];
+        pose[3] = joints[3];
+        pose[4] = joints[4];
+        pose[5] = joints[5];
+    }
+}
@@ -0,0 +1,49 @@
+package hartu.robot.telemetry;
+
+import com.kuka.roboticsAPI.deviceModel.LBR;
+import com.kuka.roboticsAPI.geometricModel.Frame;
+import com.kuka.roboticsAPI.geometricModel.ObjectFrame;
+
+/**
+ * Reads measured joint positions, external torques and the TCP pose from an LBR.
+ */
+public class LbrStateSource implements RobotStateSource
+{
+    private final LBR lbr;
+    private final ObjectFrame tcp;
+
+    public LbrStateSource(LBR lbr)
+    {
+        this(lbr, lbr.getFlange());
+    }
+
+    /**
+     * @param tcp Frame whose pose is reported, e.g. the TCP of an attached tool. Expressed in the robot base.
+     */
+    public LbrStateSource(LBR lbr, ObjectFrame tcp)
+    {
+        this.lbr = lbr;
+        this.tcp = tcp;
+    }
+
+    @Override
+    public void sample(RobotStateSample sample)
+    {
+        sample.setTimestampMicros(System.currentTimeMillis() * 1000);
+
+        double[] jointValues = lbr.getCurrentJointPosition().get();
+        System.arraycopy(jointValues, 0, sample.getJointPositions(), 0, sample.getJointPositions().length);
+
+        double[] torqueValues = lbr.getExternalTorque().getTorqueValues();
+        System.arraycopy(torqueValues, 0, sample.getExternalTorques(), 0, sample.getExternalTorques().length);
+
+        Frame pose = lbr.getCurrentCartesianPosition(tcp);
+        double[] tcpPose = sample.getTcpPose();
+        tcpPose[0] = pose.getX();
+        tcpPose[1] = pose.getY();
+        tcpPose[2] = pose.getZ();
+        tcpPose[3] = pose.getAlphaRad();
+        tcpPose[4] = pose.getBetaRad();
+        tcpPose[5] = pose.getGammaRad();
+    }
+}
@@ -0,0 +1,48 @@
+package hartu.robot.telemetry;
+
+import hartu.protocols.constants.TelemetryProtocolConstants;
+
+/**
+ * One sample of the robot state. Reused between samples: sources fill the arrays in place.
+ */
+public class RobotStateSample
+{
+    private final double[] jointPositions = new double[TelemetryProtocolConstants.JOINT_COUNT];
+    private final double[] externalTorques = new double[TelemetryProtocolConstants.JOINT_COUNT];
+    private final double[] tcpPose = new double[TelemetryProtocolConstants.POSE_VALUE_COUNT];
+    private long timestampMicros;
+
+    /**
+     * J1..J7 measured positions in radians. The returned array is the sample's own storage.
+     */
+    public double[] getJointPositions()
+    {
+        return jointPositions;
+    }
+
+    /**
+     * J1..J7 external torques in Nm. The returned array is the sample's own storage.
+     */
+    public double[] getExternalTorques()
+    {
+        return externalTorques;
+    }
+
+    /**
+     * TCP pose X;Y;Z in mm, A;B;C in radians. The returned array is the sample's own storage.
+     */
+    public double[] getTcpPose()
+    {
+        return tcpPose;
+    }
+
+    public long getTimestampMicros()
+    {
+        return timestampMicros;
+    }
+
+    public void setTimestampMicros(long timestampMicros)
+    {
+        this.timestampMicros = timestampMicros;
+    }
+}
@@ -0,0 +1,12 @@
+package hartu.robot.telemetry;
+
+/**
+ * Provides the current robot state to the telemetry publisher.
+ */
+public interface RobotStateSource
+{
+    /**
+     * Fills {@code sample} with the current state, including its timestamp.
+     */
+    void sample(RobotStateSample sample);
+}
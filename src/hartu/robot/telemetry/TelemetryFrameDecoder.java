@@ -0,0 +1,113 @@
+package hartu.robot.telemetry;
+
+import hartu.protocols.constants.TelemetryProtocolConstants;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Client-side counterpart of {@link TelemetryFrameEncoder}: rebuilds samples from keyframes and deltas.
+ */
+public class TelemetryFrameDecoder
+{
+    private final int[] current = new int[TelemetryProtocolConstants.VALUE_COUNT];
+    private boolean hasKeyframe = false;
+    private int lastSequence;
+
+    /**
+     * Decodes one frame payload (without its length prefix) into {@code sample}.
+     * @return false if the frame is a delta and no keyframe has been received yet; the sample is left untouched.
+     */
+    public boolean decode(ByteBuffer payload, RobotStateSample sample)
+    {
+        ByteBuffer frame = payload.slice().order(TelemetryProtocolConstants.BYTE_ORDER);
+        if (frame.remaining() < TelemetryProtocolConstants.HEADER_SIZE)
+        {
+            throw new IllegalArgumentException("Telemetry frame too short: " + frame.remaining() + " bytes.");
+        }
+        byte frameType = frame.get(TelemetryProtocolConstants.OFFSET_FRAME_TYPE);
+        int valueCount = frame.get(TelemetryProtocolConstants.OFFSET_VALUE_COUNT) & 0xFF;
+        if (valueCount != TelemetryProtocolConstants.VALUE_COUNT)
+        {
+            throw new IllegalArgumentException("Unexpected telemetry value count " + valueCount + ", expected " + TelemetryProtocolConstants.VALUE_COUNT + ".");
+        }
+        int sequence = frame.getInt(TelemetryProtocolConstants.OFFSET_SEQUENCE);
+        long timestampMicros = frame.getLong(TelemetryProtocolConstants.OFFSET_TIMESTAMP);
+        frame.position(TelemetryProtocolConstants.HEADER_SIZE);
+
+        if (frameType == TelemetryProtocolConstants.FRAME_KEYFRAME)
+        {
+            for (int i = 0; i < current.length; i++)
+            {
+                current[i] = frame.getInt();
+            }
+            hasKeyframe = true;
+        }
+        else if (frameType == TelemetryProtocolConstants.FRAME_DELTA)
+        {
+            if (!hasKeyframe)
+            {
+                return false;
+            }
+            int mask = frame.getInt();
+            for (int i = 0; i < current.length; i++)
+            {
+                if ((mask & (1 << i)) != 0)
+                {
+                    int zigzag = getVarint(frame);
+                    current[i] += (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+            }
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unknown telemetry frame type " + frameType + ".");
+        }
+        lastSequence = sequence;
+
+        sample.setTimestampMicros(timestampMicros);
+        double[] joints = sample.getJointPositions();
+        double[] torques = sample.getExternalTorques();
+        double[] pose = sample.getTcpPose();
+        int index = 0;
+        for (int i = 0; i < joints.length; i++)
+        {
+            joints[i] = current[index++] / TelemetryProtocolConstants.ANGLE_SCALE;
+        }
+        for (int i = 0; i < torques.length; i++)
+        {
+            torques[i] = current[index++] / TelemetryProtocolConstants.TORQUE_SCALE;
+        }
+        for (int i = 0; i < 3; i++)
+        {
+            pose[i] = current[index++] / TelemetryProtocolConstants.POSITION_SCALE;
+        }
+        for (int i = 3; i < 6; i++)
+        {
+            pose[i] = current[index++] / TelemetryProtocolConstants.ANGLE_SCALE;
+        }
+        return true;
+    }
+
+    /**
+     * Sequence number of the last decoded frame.
+     */
+    public int getLastSequence()
+    {
+        return lastSequence;
+    }
+
+    private static int getVarint(ByteBuffer frame)
+    {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do
+        {
+            b = frame.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        }
+        while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,127 @@
+package hartu.robot.telemetry;
+
+import hartu.protocols.constants.TelemetryProtocolConstants;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Delta/keyframe encoder for one telemetry subscriber, see {@link TelemetryProtocolConstants}.
+ * Keeps the values last sent to that subscriber as the reference for the next delta frame.
+ */
+public class TelemetryFrameEncoder
+{
+    // Mask, then at most 5 varint bytes per value
+    private static final int MAX_DELTA_BODY = 4 + TelemetryProtocolConstants.VALUE_COUNT * 5;
+
+    private final int keyframeInterval;
+    private final int[] reference = new int[TelemetryProtocolConstants.VALUE_COUNT];
+    private int framesSinceKeyframe;
+    private boolean keyframeRequired = true;
+
+    /**
+     * @param keyframeInterval A keyframe is sent at least every this many frames, so a client can join or
+     *                         recover from a lost frame without asking.
+     */
+    public TelemetryFrameEncoder(int keyframeInterval)
+    {
+        if (keyframeInterval < 1)
+        {
+            throw new IllegalArgumentException("Keyframe interval must be at least 1. Got " + keyframeInterval);
+        }
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * Makes the next frame a keyframe, e.g. after frames had to be skipped for a slow subscriber.
+     */
+    public void requestKeyframe()
+    {
+        keyframeRequired = true;
+    }
+
+    /**
+     * Quantizes a sample into the int32 values carried on the wire. Done once per sample for all subscribers.
+     */
+    public static void quantize(RobotStateSample sample, int[] quantized)
+    {
+        double[] joints = sample.getJointPositions();
+        double[] torques = sample.getExternalTorques();
+        double[] pose = sample.getTcpPose();
+        int index = 0;
+        for (double joint : joints)
+        {
+            quantized[index++] = (int) Math.round(joint * TelemetryProtocolConstants.ANGLE_SCALE);
+        }
+        for (double torque : torques)
+        {
+            quantized[index++] = (int) Math.round(torque * TelemetryProtocolConstants.TORQUE_SCALE);
+        }
+        for (int i = 0; i < 3; i++)
+        {
+            quantized[index++] = (int) Math.round(pose[i] * TelemetryProtocolConstants.POSITION_SCALE);
+        }
+        for (int i = 3; i < 6; i++)
+        {
+            quantized[index++] = (int) Math.round(pose[i] * TelemetryProtocolConstants.ANGLE_SCALE);
+        }
+    }
+
+    /**
+     * Encodes one frame including its length prefix, as a keyframe or as a delta against the previous frame.
+     */
+    public ByteBuffer encode(int[] quantized, int sequence, long timestampMicros)
+    {
+        boolean keyframe = keyframeRequired || framesSinceKeyframe >= keyframeInterval - 1;
+        int bodyCapacity = keyframe ? TelemetryProtocolConstants.VALUE_COUNT * 4 : MAX_DELTA_BODY;
+        ByteBuffer frame = ByteBuffer.allocate(TelemetryProtocolConstants.LENGTH_PREFIX_SIZE + TelemetryProtocolConstants.HEADER_SIZE + bodyCapacity)
+                                     .order(TelemetryProtocolConstants.BYTE_ORDER);
+        frame.position(TelemetryProtocolConstants.LENGTH_PREFIX_SIZE);
+        frame.put(keyframe ? TelemetryProtocolConstants.FRAME_KEYFRAME : TelemetryProtocolConstants.FRAME_DELTA);
+        frame.put((byte) TelemetryProtocolConstants.VALUE_COUNT);
+        frame.putShort((short) 0);
+        frame.putInt(sequence);
+        frame.putLong(timestampMicros);
+
+        if (keyframe)
+        {
+            for (int value : quantized)
+            {
+                frame.putInt(value);
+            }
+            framesSinceKeyframe = 0;
+            keyframeRequired = false;
+        }
+        else
+        {
+            int maskPosition = frame.position();
+            frame.putInt(0);
+            int mask = 0;
+            for (int i = 0; i < quantized.length; i++)
+            {
+                int delta = quantized[i] - reference[i];
+                if (delta != 0)
+                {
+                    mask |= 1 << i;
+                    putVarint(frame, (delta << 1) ^ (delta >> 31));
+                }
+            }
+            frame.putInt(maskPosition, mask);
+            framesSinceKeyframe++;
+        }
+        System.arraycopy(quantized, 0, reference, 0, reference.length);
+
+        frame.putInt(0, frame.position() - TelemetryProtocolConstants.LENGTH_PREFIX_SIZE);
+        frame.flip();
+        return frame;
+    }
+
+    private static void putVarint(ByteBuffer frame, int value)
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            frame.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        frame.put((byte) value);
+    }
+}
@@ -0,0 +1,87 @@
+package hartu.robot.utils;
+
+import hartu.protocols.constants.ActionTypes;
+import hartu.protocols.constants.BinaryProtocolConstants;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds length-prefixed frames of the binary task protocol described in {@link BinaryProtocolConstants}.
+ * Used by the server for its responses and by Java clients for their commands.
+ */
+public class BinaryCommandEncoder
+{
+    private BinaryCommandEncoder() {}
+
+    /**
+     * Encodes a motion command. {@code points} holds the point values back to back:
+     * 7 joint values per point for axis motions, X;Y;Z;A;B;C per point for Cartesian motions.
+     */
+    public static ByteBuffer encodeMotion(ActionTypes actionType, String id, double[] points, int numPoints, String tool, String base, double speedOverride) {
+        return encode(actionType, id, points, numPoints, tool, base, speedOverride, 0, 0, false);
+    }
+
+    public static ByteBuffer encodeIo(String id, int ioPoint, int ioPin, boolean ioState) {
+        return encode(ActionTypes.ACTIVATE_IO, id, new double[0], 0, "", "", 0.0, ioPoint, ioPin, ioState);
+    }
+
+    public static ByteBuffer encode(ActionTypes actionType, String id, double[] points, int numPoints, String tool, String base, double speedOverride, int ioPoint, int ioPin, boolean ioState) {
+        byte[] idBytes = ascii(id);
+        byte[] toolBytes = ascii(tool);
+        byte[] baseBytes = ascii(base);
+        int payloadLength = BinaryProtocolConstants.COMMAND_HEADER_SIZE + idBytes.length + toolBytes.length + baseBytes.length + points.length * 8;
+
+        ByteBuffer frame = ByteBuffer.allocate(BinaryProtocolConstants.LENGTH_PREFIX_SIZE + payloadLength).order(BinaryProtocolConstants.BYTE_ORDER);
+        frame.putInt(payloadLength);
+        frame.putShort((short) actionType.getValue());
+        frame.put((byte) (ioState ? BinaryProtocolConstants.FLAG_IO_STATE : 0));
+        frame.put((byte) 0);
+        frame.putInt(numPoints);
+        frame.putDouble(speedOverride);
+        frame.putInt(ioPoint);
+        frame.putInt(ioPin);
+        frame.putShort((short) idBytes.length);
+        frame.putShort((short) toolBytes.length);
+        frame.putShort((short) baseBytes.length);
+        frame.putShort((short) 0);
+        frame.put(idBytes).put(toolBytes).put(baseBytes);
+        frame.asDoubleBuffer().put(points);
+        frame.position(frame.limit());
+        frame.flip();
+        return frame;
+    }
+
+    public static ByteBuffer encodeFree(String id, boolean success) {
+        return encodeResponse(BinaryProtocolConstants.RESPONSE_FREE, id, success);
+    }
+
+    /**
+     * Encodes the reply to a command refused because the server's command queue is full.
+     */
+    public static ByteBuffer encodeBusy(String id) {
+        return encodeResponse(BinaryProtocolConstants.RESPONSE_BUSY, id, false);
+    }
+
+    private static ByteBuffer encodeResponse(byte responseType, String id, boolean success) {
+        byte[] idBytes = ascii(id);
+        int payloadLength = BinaryProtocolConstants.RESPONSE_HEADER_SIZE + idBytes.length;
+
+        ByteBuffer frame = ByteBuffer.allocate(BinaryProtocolConstants.LENGTH_PREFIX_SIZE + payloadLength).order(BinaryProtocolConstants.BYTE_ORDER);
+        frame.putInt(payloadLength);
+        frame.put(responseType);
+        frame.put((byte) (success ? 1 : 0));
+        frame.putShort((short) idBytes.length);
+        frame.put(idBytes);
+        frame.flip();
+        return frame;
+    }
+
+    private static byte[] ascii(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("String field too long for binary protocol: " + bytes.length + " bytes.");
+        }
+        return bytes;
+    }
+}
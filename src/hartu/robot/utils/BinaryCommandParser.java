@@ -0,0 +1,113 @@
+package hartu.robot.utils;
+
+import hartu.protocols.constants.ActionTypes;
+import hartu.protocols.constants.BinaryProtocolConstants;
+import hartu.protocols.constants.MovementType;
+import hartu.robot.commands.MotionParameters;
+import hartu.robot.commands.ParsedCommand;
+import hartu.robot.commands.TrajectoryBuffer;
+import hartu.robot.commands.io.IoCommandData;
+import hartu.robot.communication.server.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parser for the binary task protocol described in {@link BinaryProtocolConstants}.
+ * Produces the same {@link ParsedCommand} as {@link CommandParser} without any text parsing.
+ */
+public class BinaryCommandParser
+{
+    private BinaryCommandParser() {}
+
+    /**
+     * Parses one command payload (without its length prefix). The buffer's position is left unchanged.
+     */
+    public static ParsedCommand parseCommand(ByteBuffer frame) {
+        ByteBuffer payload = frame.slice().order(BinaryProtocolConstants.BYTE_ORDER);
+        if (payload.remaining() < BinaryProtocolConstants.COMMAND_HEADER_SIZE) {
+            throw error("Binary command too short. Expected at least " + BinaryProtocolConstants.COMMAND_HEADER_SIZE + " header bytes, got " + payload.remaining() + ".");
+        }
+
+        ActionTypes actionType = ActionTypes.fromValue(payload.getShort(BinaryProtocolConstants.OFFSET_ACTION_TYPE));
+        int flags = payload.get(BinaryProtocolConstants.OFFSET_FLAGS) & 0xFF;
+        int numPoints = payload.getInt(BinaryProtocolConstants.OFFSET_NUM_POINTS);
+        double speedOverride = payload.getDouble(BinaryProtocolConstants.OFFSET_SPEED_OVERRIDE);
+        int ioPoint = payload.getInt(BinaryProtocolConstants.OFFSET_IO_POINT);
+        int ioPin = payload.getInt(BinaryProtocolConstants.OFFSET_IO_PIN);
+        int idLength = payload.getShort(BinaryProtocolConstants.OFFSET_ID_LENGTH) & 0xFFFF;
+        int toolLength = payload.getShort(BinaryProtocolConstants.OFFSET_TOOL_LENGTH) & 0xFFFF;
+        int baseLength = payload.getShort(BinaryProtocolConstants.OFFSET_BASE_LENGTH) & 0xFFFF;
+
+        if (payload.remaining() < BinaryProtocolConstants.COMMAND_HEADER_SIZE + idLength + toolLength + baseLength) {
+            throw error("Binary command truncated in ID/tool/base strings. Payload size: " + payload.remaining() + ".");
+        }
+        payload.position(BinaryProtocolConstants.COMMAND_HEADER_SIZE);
+        String id = readAscii(payload, idLength);
+        String tool = readAscii(payload, toolLength);
+        String base = readAscii(payload, baseLength);
+
+        switch (actionType) {
+            case PTP_AXIS:
+            case PTP_AXIS_C:
+            case LIN_AXIS:
+            case CIRC_AXIS: {
+                double[] values = readPoints(payload, numPoints, BinaryProtocolConstants.AXIS_VALUES_PER_POINT);
+                return ParsedCommand.forMovement(actionType, id, TrajectoryBuffer.ofAxis(values, numPoints), motionParameters(actionType, speedOverride, tool, base, numPoints));
+            }
+
+            case PTP_FRAME:
+            case PTP_FRAME_C:
+            case LIN_FRAME:
+            case LIN_FRAME_C:
+            case LIN_REL_TOOL:
+            case LIN_REL_BASE:
+            case CIRC_FRAME: {
+                double[] values = readPoints(payload, numPoints, BinaryProtocolConstants.CARTESIAN_VALUES_PER_POINT);
+                return ParsedCommand.forMovement(actionType, id, TrajectoryBuffer.ofCartesian(values, numPoints), motionParameters(actionType, speedOverride, tool, base, numPoints));
+            }
+
+            case ACTIVATE_IO:
+                boolean ioState = (flags & BinaryProtocolConstants.FLAG_IO_STATE) != 0;
+                return ParsedCommand.forIo(actionType, id, new IoCommandData(ioPoint, ioPin, ioState));
+
+            case UNKNOWN:
+            default:
+                throw error("Unknown or unsupported ActionType in binary command: " + payload.getShort(BinaryProtocolConstants.OFFSET_ACTION_TYPE));
+        }
+    }
+
+    private static MotionParameters motionParameters(ActionTypes actionType, double speedOverride, String tool, String base, int numPoints) {
+        boolean isContinuous = MovementType.fromActionType(actionType).isContinuous();
+        return new MotionParameters(speedOverride, tool, base, isContinuous, numPoints);
+    }
+
+    private static double[] readPoints(ByteBuffer payload, int numPoints, int valuesPerPoint) {
+        if (numPoints < 0) {
+            throw error("Number of points cannot be negative. Got " + numPoints + ".");
+        }
+        long expectedBytes = (long) numPoints * valuesPerPoint * 8;
+        if (payload.remaining() != expectedBytes) {
+            throw error("Binary NUM_POINTS (" + numPoints + ") does not match point data size. Expected " + expectedBytes + " bytes, got " + payload.remaining() + ".");
+        }
+        double[] values = new double[numPoints * valuesPerPoint];
+        DoubleBuffer doubles = payload.asDoubleBuffer();
+        doubles.get(values);
+        return values;
+    }
+
+    private static String readAscii(ByteBuffer payload, int length) {
+        if (length == 0) {
+            return "";
+        }
+        byte[] bytes = new byte[length];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static IllegalArgumentException error(String errorMsg) {
+        Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+        return new IllegalArgumentException(errorMsg);
+    }
+}
@@ -5,99 +5,193 @@ import hartu.protocols.constants.MessagePartIndex;
 import hartu.protocols.constants.MovementType;
 import hartu.robot.commands.MotionParameters;
 import hartu.robot.commands.ParsedCommand;
+import hartu.robot.commands.TrajectoryBuffer;
+import hartu.robot.commands.TrajectoryCache;
+import hartu.robot.commands.TrajectoryStore;
 import hartu.robot.commands.io.IoCommandData;
-import hartu.robot.commands.positions.AxisPosition;
-import hartu.robot.commands.positions.CartesianPosition;
 import hartu.robot.communication.server.Logger;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
+/**
+ * Parser for the ASCII task protocol.
+ * <p>
+ * Works directly on the message characters: one scan locates the field delimiters, then every field is
+ * parsed in place, points included, without splitting the message into intermediate strings; point values
+ * go straight into the array of a {@link TrajectoryBuffer}. Fields are split exactly like {@code String.split}
+ * did before (trailing empty fields are dropped), and the checks run in the same order with the same error
+ * messages. Messages with thousands of points are parsed on several cores, see {@link ParallelPointParser}.
+ * <p>
+ * TARGET_POINTS may also be "@&lt;trajectory id&gt;" to run a path uploaded earlier to the {@link TrajectoryStore},
+ * or "$&lt;content hash&gt;" for one in the {@link TrajectoryCache}.
+ * <p>
+ * An optional field after the ID declares the units of the points, like "UNITS=M;RADIAN"; the points are then
+ * converted to robot units while parsing, see {@link UnitDeclaration}. Other fields after the ID are ignored.
+ * <p>
+ * Short messages that differ from an earlier one only in their ID are not parsed again, see {@link ParsedCommandCache}.
+ */
 public class CommandParser
 {
-    private static final String PRIMARY_DELIMITER = "\\|";
-    private static final String SECONDARY_DELIMITER = ";";
-    private static final String MULTI_POINT_DELIMITER = ",";
+    private static final char PRIMARY_DELIMITER = '|';
+    private static final char SECONDARY_DELIMITER = ';';
+    private static final char MULTI_POINT_DELIMITER = ',';
     private static final String MESSAGE_TERMINATOR = "#";
+    private static final char STORED_TRAJECTORY_MARKER = '@';
+    private static final char CACHED_TRAJECTORY_MARKER = '$';
+    private static final String TRAJECTORY_KIND_AXIS = "AXIS";
+    private static final String TRAJECTORY_KIND_CARTESIAN = "FRAME";
+
+    static final int AXIS_VALUES_PER_POINT = TrajectoryBuffer.AXIS_VALUES_PER_POINT;
+    static final int CARTESIAN_VALUES_PER_POINT = TrajectoryBuffer.CARTESIAN_VALUES_PER_POINT;
+
+    private static final int EXPECTED_MIN_PARTS = MessagePartIndex.values().length;
+
+    private static final ParsedCommandCache PARSED_COMMANDS = new ParsedCommandCache(ParsedCommandCache.DEFAULT_CAPACITY);
+    // Only turned off to benchmark or check the parser itself
+    private static volatile boolean parseCacheEnabled = true;
 
     private CommandParser() {}
 
     public static ParsedCommand parseCommand(String commandString) {
-        Logger.getInstance().log("PARSER", "Attempting to parse command: " + commandString);
-
         if (!commandString.endsWith(MESSAGE_TERMINATOR)) {
             String errorMsg = "Command string must end with '" + MESSAGE_TERMINATOR + "'. Received: " + commandString;
             Logger.getInstance().log("PARSER", "Error: " + errorMsg);
             throw new IllegalArgumentException(errorMsg);
         }
-        String cleanCommand = commandString.substring(0, commandString.length() - MESSAGE_TERMINATOR.length());
+        // The terminator is excluded by length instead of copying the message without it
+        return parseMessage(commandString, commandString.length() - MESSAGE_TERMINATOR.length());
+    }
+
+    /**
+     * Parses a message whose terminator has already been stripped by the frame decoder.
+     */
+    public static ParsedCommand parseMessage(CharSequence cleanCommand) {
+        return parseMessage(cleanCommand, cleanCommand.length());
+    }
 
-        String[] parts = cleanCommand.split(PRIMARY_DELIMITER, -1);
+    /**
+     * Parses the first {@code length} characters of {@code message}.
+     */
+    private static ParsedCommand parseMessage(CharSequence message, int length) {
+        if (Logger.getInstance().isEnabled("PARSER")) {
+            Logger.getInstance().log("PARSER", "Attempting to parse command: " + messageText(message, length));
+        }
 
-        final int EXPECTED_MIN_PARTS = MessagePartIndex.values().length;
-        if (parts.length < EXPECTED_MIN_PARTS) {
-            String errorMsg = "Invalid number of parts. Expected at least " + EXPECTED_MIN_PARTS + ", got " + parts.length + ". Command: " + commandString;
+        // fieldStarts[i]..fieldStarts[i + 1] - 1 is field i; only the first EXPECTED_MIN_PARTS fields are used
+        int[] fieldStarts = new int[EXPECTED_MIN_PARTS + 1];
+        int parts = 1;
+        for (int i = 0; i < length; i++) {
+            if (message.charAt(i) == PRIMARY_DELIMITER) {
+                if (parts < EXPECTED_MIN_PARTS) {
+                    fieldStarts[parts] = i + 1;
+                }
+                parts++;
+            }
+        }
+        if (parts < EXPECTED_MIN_PARTS) {
+            String errorMsg = "Invalid number of parts. Expected at least " + EXPECTED_MIN_PARTS + ", got " + parts + ". Command: " + messageText(message, length) + MESSAGE_TERMINATOR;
             Logger.getInstance().log("PARSER", "Error: " + errorMsg);
             throw new IllegalArgumentException(errorMsg);
         }
+        // End of the last used field: the next delimiter, or the end of the message
+        int lastStart = fieldStarts[EXPECTED_MIN_PARTS - 1];
+        int lastEnd = lastStart;
+        while (lastEnd < length && message.charAt(lastEnd) != PRIMARY_DELIMITER) {
+            lastEnd++;
+        }
+        fieldStarts[EXPECTED_MIN_PARTS] = lastEnd + 1;
+
+        // Messages repeated with a new ID are only parsed the first time
+        String cacheKey = !parseCacheEnabled ? null : ParsedCommandCache.key(message, length, fieldStart(fieldStarts, MessagePartIndex.ID), fieldEnd(fieldStarts, MessagePartIndex.ID));
+        if (cacheKey != null) {
+            ParsedCommand cached = PARSED_COMMANDS.get(cacheKey, field(message, fieldStarts, MessagePartIndex.ID));
+            if (cached != null) {
+                return cached;
+            }
+        }
+        ParsedCommand parsedCommand = parseFields(message, length, fieldStarts);
+        // Stored and cached trajectories may change or go away, commands running them are parsed every time
+        if (cacheKey != null && (parsedCommand.getTrajectory() == null || !parsedCommand.getTrajectory().isStored())) {
+            PARSED_COMMANDS.put(cacheKey, parsedCommand);
+        }
+        return parsedCommand;
+    }
+
+    /**
+     * Number of messages answered from the parsed command cache.
+     */
+    public static long getParseCacheHits() {
+        return PARSED_COMMANDS.getHits();
+    }
+
+    /**
+     * Number of messages short enough for the parsed command cache that had to be parsed.
+     */
+    public static long getParseCacheMisses() {
+        return PARSED_COMMANDS.getMisses();
+    }
 
+    public static String getParseCacheStatistics() {
+        return PARSED_COMMANDS.getStatistics();
+    }
+
+    /**
+     * Turns the parsed command cache on or off and empties it, so every message is parsed in full while it is off.
+     */
+    static void setParseCacheEnabled(boolean enabled) {
+        parseCacheEnabled = enabled;
+        PARSED_COMMANDS.clear();
+    }
+
+    /**
+     * Parses the fields of a message whose delimiters have been located.
+     */
+    private static ParsedCommand parseFields(CharSequence message, int length, int[] fieldStarts) {
         ActionTypes actionType;
         int numPoints;
         String id;
         try {
-            actionType = ActionTypes.fromValue(Integer.parseInt(parts[MessagePartIndex.ACTION_TYPE.getIndex()]));
-            numPoints = Integer.parseInt(parts[MessagePartIndex.NUM_POINTS.getIndex()]);
-            id = parts[MessagePartIndex.ID.getIndex()];
+            actionType = ActionTypes.fromValue(parseInt(message, fieldStart(fieldStarts, MessagePartIndex.ACTION_TYPE), fieldEnd(fieldStarts, MessagePartIndex.ACTION_TYPE)));
+            numPoints = parseInt(message, fieldStart(fieldStarts, MessagePartIndex.NUM_POINTS), fieldEnd(fieldStarts, MessagePartIndex.NUM_POINTS));
+            id = field(message, fieldStarts, MessagePartIndex.ID);
         } catch (NumberFormatException e) {
             String errorMsg = "Invalid number format for ActionType, NumPoints, or ID: " + e.getMessage();
             Logger.getInstance().log("PARSER", "Error: " + errorMsg);
             throw new IllegalArgumentException(errorMsg, e);
-        } catch (ArrayIndexOutOfBoundsException e) {
-            String errorMsg = "Missing ActionType, NumPoints, or ID part in command string: " + e.getMessage();
-            Logger.getInstance().log("PARSER", "Error: " + errorMsg);
-            throw new IllegalArgumentException(errorMsg, e);
         }
 
         boolean isContinuous = MovementType.fromActionType(actionType).isContinuous();
 
-        String tool = "";
-        String base = "";
+        String tool = field(message, fieldStarts, MessagePartIndex.TOOL);
+        String base = field(message, fieldStarts, MessagePartIndex.BASE);
         double speedOverride = 0.0;
         try {
-            tool = parts[MessagePartIndex.TOOL.getIndex()];
-            base = parts[MessagePartIndex.BASE.getIndex()];
-            speedOverride = Double.parseDouble(parts[MessagePartIndex.SPEED_OVERRIDE.getIndex()]);
+            speedOverride = DecimalParser.parseDouble(message, fieldStart(fieldStarts, MessagePartIndex.SPEED_OVERRIDE), fieldEnd(fieldStarts, MessagePartIndex.SPEED_OVERRIDE));
         } catch (NumberFormatException e) {
             Logger.getInstance().log("PARSER", "Warning: Could not parse MotionParameters (NumberFormat). Using defaults. " + e.getMessage());
-        } catch (ArrayIndexOutOfBoundsException e) {
-            Logger.getInstance().log("PARSER", "Warning: MotionParameters fields missing (ArrayIndexOutOfBounds). Using defaults. " + e.getMessage());
         }
         MotionParameters motionParameters = new MotionParameters(speedOverride, tool, base, isContinuous, numPoints);
 
-        List<AxisPosition> axisTargetPoints = null;
-        List<CartesianPosition> cartesianTargetPoints = null;
-        IoCommandData ioCommandData = null;
-        Integer programId = null;
+        int pointsStart = fieldStart(fieldStarts, MessagePartIndex.TARGET_POINTS);
+        int pointsEnd = fieldEnd(fieldStarts, MessagePartIndex.TARGET_POINTS);
+        // Optional field after the ID
+        int unitsStart = fieldStarts[EXPECTED_MIN_PARTS];
+        int unitsEnd = unitsStart <= length ? indexOf(message, PRIMARY_DELIMITER, unitsStart, length) : unitsStart;
 
         switch (actionType) {
             case PTP_AXIS:
             case PTP_AXIS_C:
             case LIN_AXIS:
-            case CIRC_AXIS:
-                try {
-                    axisTargetPoints = parseAxisPositions(parts[MessagePartIndex.TARGET_POINTS.getIndex()]);
-                    if (axisTargetPoints.size() != numPoints) {
-                        String errorMsg = "Parsed NUM_POINTS (" + numPoints + ") does not match actual parsed axis points (" + axisTargetPoints.size() + ").";
-                        Logger.getInstance().log("PARSER", "Error: " + errorMsg);
-                        throw new IllegalArgumentException(errorMsg);
-                    }
-                    return ParsedCommand.forAxisMovement(actionType, id, axisTargetPoints, motionParameters);
-                } catch (ArrayIndexOutOfBoundsException e) {
-                    String errorMsg = "Missing TARGET_POINTS part for Axis movement: " + e.getMessage();
+            case CIRC_AXIS: {
+                TrajectoryBuffer axisTargetPoints = targetPoints(message, pointsStart, pointsEnd, numPoints, false, unitsStart, unitsEnd, id);
+                if (axisTargetPoints.getPointCount() != numPoints) {
+                    axisTargetPoints.release();
+                    String errorMsg = "Parsed NUM_POINTS (" + numPoints + ") does not match actual parsed axis points (" + axisTargetPoints.getPointCount() + ").";
                     Logger.getInstance().log("PARSER", "Error: " + errorMsg);
-                    throw new IllegalArgumentException(errorMsg, e);
+                    throw new IllegalArgumentException(errorMsg);
                 }
+                return ParsedCommand.forMovement(actionType, id, axisTargetPoints, motionParameters);
+            }
 
             case PTP_FRAME:
             case PTP_FRAME_C:
@@ -105,29 +199,24 @@ public class CommandParser
             case LIN_FRAME_C:
             case LIN_REL_TOOL:
             case LIN_REL_BASE:
-            case CIRC_FRAME:
-                try {
-                    cartesianTargetPoints = parseCartesianPositions(parts[MessagePartIndex.TARGET_POINTS.getIndex()]);
-                    if (cartesianTargetPoints.size() != numPoints) {
-                        String errorMsg = "Parsed NUM_POINTS (" + numPoints + ") does not match actual parsed Cartesian points (" + cartesianTargetPoints.size() + ").";
-                        Logger.getInstance().log("PARSER", "Error: " + errorMsg);
-                        throw new IllegalArgumentException(errorMsg);
-                    }
-                    return ParsedCommand.forCartesianMovement(actionType, id, cartesianTargetPoints, motionParameters);
-                } catch (ArrayIndexOutOfBoundsException e) {
-                    String errorMsg = "Missing TARGET_POINTS part for Cartesian movement: " + e.getMessage();
+            case CIRC_FRAME: {
+                TrajectoryBuffer cartesianTargetPoints = targetPoints(message, pointsStart, pointsEnd, numPoints, true, unitsStart, unitsEnd, id);
+                if (cartesianTargetPoints.getPointCount() != numPoints) {
+                    cartesianTargetPoints.release();
+                    String errorMsg = "Parsed NUM_POINTS (" + numPoints + ") does not match actual parsed Cartesian points (" + cartesianTargetPoints.getPointCount() + ").";
                     Logger.getInstance().log("PARSER", "Error: " + errorMsg);
-                    throw new IllegalArgumentException(errorMsg, e);
+                    throw new IllegalArgumentException(errorMsg);
                 }
+                return ParsedCommand.forMovement(actionType, id, cartesianTargetPoints, motionParameters);
+            }
 
             case ACTIVATE_IO:
                 try {
                     int ioPoint = 0; //TODO: Handle ioPoint instead of hardcoding for testing
-                    int ioPin = Integer.parseInt(parts[MessagePartIndex.IO_PIN.getIndex()]);
-                    boolean ioState = Boolean.parseBoolean(parts[MessagePartIndex.IO_STATE.getIndex()]);
-                    ioCommandData = new IoCommandData(ioPoint, ioPin, ioState);
-                    return ParsedCommand.forIo(actionType, id, ioCommandData);
-                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                    int ioPin = parseInt(message, fieldStart(fieldStarts, MessagePartIndex.IO_PIN), fieldEnd(fieldStarts, MessagePartIndex.IO_PIN));
+                    boolean ioState = "true".equalsIgnoreCase(field(message, fieldStarts, MessagePartIndex.IO_STATE));
+                    return ParsedCommand.forIo(actionType, id, new IoCommandData(ioPoint, ioPin, ioState));
+                } catch (NumberFormatException e) {
                     String errorMsg = "Invalid IO command data format for ACTIVATE_IO: " + e.getMessage();
                     Logger.getInstance().log("PARSER", "Error: " + errorMsg);
                     throw new IllegalArgumentException(errorMsg, e);
@@ -135,68 +224,269 @@ public class CommandParser
 
             case UNKNOWN:
             default:
-                String errorMsg = "Unknown or unsupported ActionType: " + actionType.getValue() + " in command: " + commandString;
+                String errorMsg = "Unknown or unsupported ActionType: " + actionType.getValue() + " in command: " + messageText(message, length) + MESSAGE_TERMINATOR;
                 Logger.getInstance().log("PARSER", "Error: " + errorMsg);
                 throw new IllegalArgumentException(errorMsg);
         }
     }
 
-    private static List<AxisPosition> parseAxisPositions(String axisPositionsString) {
-        List<AxisPosition> positions = new ArrayList<>();
-        String[] individualPointStrings = axisPositionsString.split(MULTI_POINT_DELIMITER);
+    /**
+     * The points of a motion: parsed from the field, taken from the {@link TrajectoryStore} for "@&lt;trajectory id&gt;"
+     * or from the {@link TrajectoryCache} for "$&lt;content hash&gt;".
+     */
+    private static TrajectoryBuffer targetPoints(CharSequence message, int start, int end, int numPoints, boolean cartesian, int unitsStart, int unitsEnd, String commandId) {
+        char marker = start < end ? message.charAt(start) : 0;
+        if (marker != STORED_TRAJECTORY_MARKER && marker != CACHED_TRAJECTORY_MARKER) {
+            return parseTrajectory(message, start, end, numPoints, cartesian, unitsStart, unitsEnd);
+        }
+        String key = message.subSequence(start + 1, end).toString();
+        boolean cached = marker == CACHED_TRAJECTORY_MARKER;
+        UnitDeclaration units = UnitDeclaration.parse(message, unitsStart, unitsEnd);
+        if (units != null) {
+            String errorMsg = "Units " + units + " declared for trajectory " + key + ", which is already stored in robot units. Declare them with the upload.";
+            Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+            throw new IllegalArgumentException(errorMsg);
+        }
+        TrajectoryBuffer trajectory = cached ? TrajectoryCache.getInstance().acquire(key) : TrajectoryStore.getInstance().acquire(key);
+        if (trajectory == null && cached) {
+            TrajectoryCacheMissException miss = new TrajectoryCacheMissException(commandId, key);
+            Logger.getInstance().log("PARSER", "Error: " + miss.getMessage());
+            throw miss;
+        }
+        if (trajectory == null || trajectory.isCartesian() != cartesian) {
+            if (trajectory != null) {
+                trajectory.release();
+            }
+            String name = (cached ? "Cached trajectory " : "Stored trajectory ") + key;
+            String errorMsg = trajectory == null
+                              ? "Unknown stored trajectory: " + key
+                              : name + " holds " + (cartesian ? "axis" : "Cartesian") + " points, the ActionType needs " + (cartesian ? "Cartesian" : "axis") + " points.";
+            Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+            throw new IllegalArgumentException(errorMsg);
+        }
+        return trajectory;
+    }
 
-        for (String pointString : individualPointStrings) {
-            String[] jointValues = pointString.split(SECONDARY_DELIMITER);
-            if (jointValues.length != 7) {
-                String errorMsg = "Invalid axis position format: Expected 7 joint values (J1-J7), got " + jointValues.length + " in point string: " + pointString;
-                Logger.getInstance().log("PARSER", "Error: " + errorMsg);
-                throw new IllegalArgumentException(errorMsg);
+    /**
+     * Parses the body of a trajectory upload to the store or the cache, "AXIS|&lt;num points&gt;|&lt;points&gt;" or
+     * "FRAME|...", optionally followed by "|UNITS=...", from {@code start} to the end of {@code message}.
+     * Points and units are written like the TARGET_POINTS and units of a command.
+     */
+    public static TrajectoryBuffer parseTrajectoryUpload(CharSequence message, int start) {
+        int kindEnd = indexOf(message, PRIMARY_DELIMITER, start, message.length());
+        int numPointsEnd = indexOf(message, PRIMARY_DELIMITER, kindEnd + 1, message.length());
+        if (numPointsEnd >= message.length()) {
+            String errorMsg = "Invalid trajectory upload. Expected AXIS or FRAME, number of points and points. Got: " + message.subSequence(start, message.length());
+            Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+            throw new IllegalArgumentException(errorMsg);
+        }
+        String kind = message.subSequence(start, kindEnd).toString();
+        if (!TRAJECTORY_KIND_AXIS.equalsIgnoreCase(kind) && !TRAJECTORY_KIND_CARTESIAN.equalsIgnoreCase(kind)) {
+            String errorMsg = "Invalid trajectory kind: " + kind + ". Expected " + TRAJECTORY_KIND_AXIS + " or " + TRAJECTORY_KIND_CARTESIAN + ".";
+            Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+            throw new IllegalArgumentException(errorMsg);
+        }
+        boolean cartesian = TRAJECTORY_KIND_CARTESIAN.equalsIgnoreCase(kind);
+        int numPoints;
+        try {
+            numPoints = parseInt(message, kindEnd + 1, numPointsEnd);
+        } catch (NumberFormatException e) {
+            String errorMsg = "Invalid number format for NumPoints of trajectory upload: " + e.getMessage();
+            Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+            throw new IllegalArgumentException(errorMsg, e);
+        }
+        // Optional unit declaration after the points
+        int pointsEnd = indexOf(message, PRIMARY_DELIMITER, numPointsEnd + 1, message.length());
+        int unitsEnd = pointsEnd < message.length() ? indexOf(message, PRIMARY_DELIMITER, pointsEnd + 1, message.length()) : pointsEnd;
+        TrajectoryBuffer points = parseTrajectory(message, numPointsEnd + 1, pointsEnd, numPoints, cartesian, pointsEnd + 1, unitsEnd);
+        if (points.getPointCount() != numPoints) {
+            String errorMsg = "Parsed NUM_POINTS (" + numPoints + ") does not match actual parsed " + (cartesian ? "Cartesian" : "axis") + " points (" + points.getPointCount() + ").";
+            Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+            throw new IllegalArgumentException(errorMsg);
+        }
+        return points;
+    }
+
+    /**
+     * Parses the ','-separated points straight into one array, grown like an {@code ArrayList} would be when
+     * NUM_POINTS understates the actual count.
+     */
+    private static TrajectoryBuffer parseTrajectory(CharSequence message, int start, int end, int numPoints, boolean cartesian, int unitsStart, int unitsEnd) {
+        int valuesPerPoint = cartesian ? CARTESIAN_VALUES_PER_POINT : AXIS_VALUES_PER_POINT;
+        int capacity = initialCapacity(numPoints, end - start, valuesPerPoint);
+        int pointsEnd = splitEnd(message, start, end, MULTI_POINT_DELIMITER);
+        double[] values;
+        int points = 0;
+        if (ParallelPointParser.isWorthwhile(capacity)) {
+            values = ParallelPointParser.parse(message, start, pointsEnd, valuesPerPoint);
+            points = values.length / valuesPerPoint;
+        } else {
+            values = new double[Math.max(capacity, 1) * valuesPerPoint];
+            int pointStart = start;
+            while (pointStart <= pointsEnd) {
+                int pointEnd = indexOf(message, MULTI_POINT_DELIMITER, pointStart, pointsEnd);
+                if ((points + 1) * valuesPerPoint > values.length) {
+                    values = Arrays.copyOf(values, values.length + (values.length >> 1) + valuesPerPoint);
+                }
+                parsePoint(message, pointStart, pointEnd, values, points * valuesPerPoint, valuesPerPoint);
+                points++;
+                pointStart = pointEnd + 1;
             }
+        }
+        // Declared units are checked once the points are, so malformed points are reported first as they always were
+        UnitDeclaration units = UnitDeclaration.parse(message, unitsStart, unitsEnd);
+        if (units != null) {
+            units.toRobotUnits(values, points, cartesian);
+        }
+        return cartesian ? TrajectoryBuffer.ofCartesian(values, points) : TrajectoryBuffer.ofAxis(values, points);
+    }
 
-            try {
-                double j1 = Double.parseDouble(jointValues[0]);
-                double j2 = Double.parseDouble(jointValues[1]);
-                double j3 = Double.parseDouble(jointValues[2]);
-                double j4 = Double.parseDouble(jointValues[3]);
-                double j5 = Double.parseDouble(jointValues[4]);
-                double j6 = Double.parseDouble(jointValues[5]);
-                double j7 = Double.parseDouble(jointValues[6]);
-                positions.add(new AxisPosition(j1, j2, j3, j4, j5, j6, j7));
-            } catch (NumberFormatException e) {
-                String errorMsg = "Invalid number format in axis positions: " + e.getMessage() + " for point string: " + pointString;
-                Logger.getInstance().log("PARSER", "Error: " + errorMsg);
-                throw new IllegalArgumentException(errorMsg, e);
+    /**
+     * Parses one point of {@code values.length} values: 7 joint values for axis motions, 6 for Cartesian ones.
+     * Shared with {@link StreamingCommandParser} so both report malformed points the same way.
+     */
+    static void parsePoint(CharSequence message, int start, int end, double[] values) {
+        parsePoint(message, start, end, values, 0, values.length);
+    }
+
+    /**
+     * Parses one point of {@code count} values into {@code values[offset, offset + count)}.
+     */
+    private static void parsePoint(CharSequence message, int start, int end, double[] values, int offset, int count) {
+        boolean axis = count == AXIS_VALUES_PER_POINT;
+        int valueCount = countValues(message, start, end);
+        if (valueCount != count) {
+            String errorMsg = (axis ? "Invalid axis position format: Expected 7 joint values (J1-J7), got " : "Invalid Cartesian position format: Expected 6 values (X;Y;Z;A;B;C), got ") + valueCount + " in point string: " + message.subSequence(start, end);
+            Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+            throw new IllegalArgumentException(errorMsg);
+        }
+
+        try {
+            parseValues(message, start, end, values, offset, count);
+        } catch (NumberFormatException e) {
+            String errorMsg = "Invalid number format in " + (axis ? "axis" : "Cartesian") + " positions: " + e.getMessage() + " for point string: " + message.subSequence(start, end);
+            Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+            throw new IllegalArgumentException(errorMsg, e);
+        }
+    }
+
+    /**
+     * Parses one point of {@code count} values into {@code values[offset, offset + count)} without logging,
+     * for the parallel path. Returns false if the point is malformed; {@link #parsePoint} reports why.
+     */
+    static boolean tryParsePoint(CharSequence message, int start, int end, double[] values, int offset, int count) {
+        if (countValues(message, start, end) != count) {
+            return false;
+        }
+        try {
+            parseValues(message, start, end, values, offset, count);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Number of ';'-separated values in a point, counted like {@code String.split(";").length}.
+     */
+    private static int countValues(CharSequence message, int start, int end) {
+        int valuesEnd = splitEnd(message, start, end, SECONDARY_DELIMITER);
+        int count = 0;
+        for (int i = start; i <= valuesEnd; i++) {
+            if (i == valuesEnd || message.charAt(i) == SECONDARY_DELIMITER) {
+                count++;
             }
         }
-        return positions;
+        return count;
     }
 
-    private static List<CartesianPosition> parseCartesianPositions(String cartesianPositionsString) {
-        List<CartesianPosition> positions = new ArrayList<>();
-        String[] individualPointStrings = cartesianPositionsString.split(MULTI_POINT_DELIMITER);
+    /**
+     * Parses the {@code count} ';'-separated values of a point whose count has already been checked into
+     * {@code values}, starting at {@code offset}.
+     */
+    private static void parseValues(CharSequence message, int start, int end, double[] values, int offset, int count) {
+        int valueStart = start;
+        for (int i = 0; i < count; i++) {
+            int valueEnd = indexOf(message, SECONDARY_DELIMITER, valueStart, end);
+            values[offset + i] = DecimalParser.parseDouble(message, valueStart, valueEnd);
+            valueStart = valueEnd + 1;
+        }
+    }
 
-        for (String pointString : individualPointStrings) {
-            String[] values = pointString.split(SECONDARY_DELIMITER);
-            if (values.length != 6) {
-                String errorMsg = "Invalid Cartesian position format: Expected 6 values (X;Y;Z;A;B;C), got " + values.length + " in point string: " + pointString;
-                Logger.getInstance().log("PARSER", "Error: " + errorMsg);
-                throw new IllegalArgumentException(errorMsg);
+    /**
+     * End of the range [start, end) after dropping trailing empty segments, the way {@code String.split}
+     * does: a range without any delimiter is one segment, even if empty; a range consisting only of
+     * delimiters has no segments at all, which is returned as {@code start - 1}.
+     */
+    private static int splitEnd(CharSequence message, int start, int end, char delimiter) {
+        if (indexOf(message, delimiter, start, end) == end) {
+            return end;
+        }
+        while (end > start && message.charAt(end - 1) == delimiter) {
+            end--;
+        }
+        return end == start ? start - 1 : end;
+    }
+
+    private static int indexOf(CharSequence message, char delimiter, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (message.charAt(i) == delimiter) {
+                return i;
             }
+        }
+        return end;
+    }
 
-            try {
-                double x = Double.parseDouble(values[0]);
-                double y = Double.parseDouble(values[1]);
-                double z = Double.parseDouble(values[2]);
-                double a = Double.parseDouble(values[3]);
-                double b = Double.parseDouble(values[4]);
-                double c = Double.parseDouble(values[5]);
-                positions.add(new CartesianPosition(x, y, z, a, b, c));
-            } catch (NumberFormatException e) {
-                String errorMsg = "Invalid number format in Cartesian positions: " + e.getMessage() + " for point string: " + pointString;
-                Logger.getInstance().log("PARSER", "Error: " + errorMsg);
-                throw new IllegalArgumentException(errorMsg, e);
+    private static int initialCapacity(int numPoints, int fieldLength, int valuesPerPoint) {
+        // NUM_POINTS is not trusted yet: a point takes at least one digit per value plus separators
+        int maxPoints = fieldLength / (2 * valuesPerPoint - 1) + 1;
+        return Math.max(0, Math.min(numPoints, maxPoints));
+    }
+
+    private static int fieldStart(int[] fieldStarts, MessagePartIndex part) {
+        return fieldStarts[part.getIndex()];
+    }
+
+    private static int fieldEnd(int[] fieldStarts, MessagePartIndex part) {
+        return fieldStarts[part.getIndex() + 1] - 1;
+    }
+
+    private static String field(CharSequence message, int[] fieldStarts, MessagePartIndex part) {
+        return message.subSequence(fieldStart(fieldStarts, part), fieldEnd(fieldStarts, part)).toString();
+    }
+
+    /**
+     * The parsed part of the message as text, only built for logs and error messages.
+     */
+    private static String messageText(CharSequence message, int length) {
+        return message.length() == length ? message.toString() : message.subSequence(0, length).toString();
+    }
+
+    /**
+     * Plain decimal integers of up to 9 digits are converted in place; anything else goes through
+     * {@link Integer#parseInt(String)}, so the result and the error message stay exactly the same.
+     */
+    private static int parseInt(CharSequence message, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (message.charAt(i) == '-' || message.charAt(i) == '+')) {
+            negative = message.charAt(i) == '-';
+            i++;
+        }
+        int digits = end - i;
+        if (digits > 0 && digits <= 9) {
+            int value = 0;
+            for (; i < end; i++) {
+                char c = message.charAt(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                value = value * 10 + (c - '0');
+            }
+            if (i == end) {
+                return negative ? -value : value;
             }
         }
-        return positions;
+        return Integer.parseInt(message.subSequence(start, end).toString());
     }
 }
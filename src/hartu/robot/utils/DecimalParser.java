@@ -0,0 +1,146 @@
+package hartu.robot.utils;
+
+/**
+ * Locale-independent decimal parser working directly on a range of a message, without substrings.
+ * <p>
+ * Plain decimals ({@code [+-]digits[.digits][e[+-]digits]}) whose significant digits fit in 53 bits are
+ * converted with at most one correctly rounded multiplication or division by an exact power of ten, which
+ * gives the same bits as {@link Double#parseDouble(String)}. Everything else (more digits, large exponents,
+ * NaN, Infinity, hex, whitespace, malformed input) is handed to {@link Double#parseDouble(String)}, so
+ * results and error messages are always identical to the JDK's.
+ */
+public class DecimalParser
+{
+    // Largest integer with an exact double representation
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    // 10^0 .. 10^22 are exact as doubles
+    private static final double[] EXACT_POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final int MAX_EXACT_POWER = EXACT_POWERS_OF_TEN.length - 1;
+    // Beyond this many significant digits the mantissa may not fit in a long
+    private static final int MAX_MANTISSA_DIGITS = 18;
+
+    private DecimalParser() {}
+
+    public static double parseDouble(CharSequence text) {
+        return parseDouble(text, 0, text.length());
+    }
+
+    /**
+     * Parses {@code text[start, end)} as a double.
+     * @throws NumberFormatException with the same message as {@link Double#parseDouble(String)}.
+     */
+    public static double parseDouble(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end) {
+            char sign = text.charAt(i);
+            if (sign == '-' || sign == '+') {
+                negative = sign == '-';
+                i++;
+            }
+        }
+
+        long mantissa = 0;
+        int significantDigits = 0;
+        int decimalExponent = 0;
+        int digits = 0;
+
+        // Integer part; leading zeros are not significant
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            digits++;
+            if (significantDigits > 0 || c != '0') {
+                if (++significantDigits > MAX_MANTISSA_DIGITS) {
+                    return fallback(text, start, end);
+                }
+                mantissa = mantissa * 10 + (c - '0');
+            }
+        }
+
+        // Fraction part
+        if (i < end && text.charAt(i) == '.') {
+            i++;
+            for (; i < end; i++) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                digits++;
+                decimalExponent--;
+                if (significantDigits > 0 || c != '0') {
+                    if (++significantDigits > MAX_MANTISSA_DIGITS) {
+                        return fallback(text, start, end);
+                    }
+                    mantissa = mantissa * 10 + (c - '0');
+                }
+            }
+        }
+        if (digits == 0) {
+            return fallback(text, start, end);
+        }
+
+        // Exponent
+        if (i < end && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+                negativeExponent = text.charAt(i) == '-';
+                i++;
+            }
+            int exponentStart = i;
+            int exponent = 0;
+            for (; i < end; i++) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9' || exponent > 10000) {
+                    break;
+                }
+                exponent = exponent * 10 + (c - '0');
+            }
+            if (i == exponentStart) {
+                return fallback(text, start, end);
+            }
+            decimalExponent += negativeExponent ? -exponent : exponent;
+        }
+        if (i != end) {
+            // Trailing characters: type suffixes, whitespace or garbage
+            return fallback(text, start, end);
+        }
+
+        double value;
+        if (mantissa == 0) {
+            value = 0.0;
+        } else if (mantissa > MAX_EXACT_MANTISSA) {
+            return fallback(text, start, end);
+        } else if (decimalExponent == 0) {
+            value = mantissa;
+        } else if (decimalExponent < 0 && decimalExponent >= -MAX_EXACT_POWER) {
+            value = mantissa / EXACT_POWERS_OF_TEN[-decimalExponent];
+        } else if (decimalExponent > 0 && decimalExponent <= MAX_EXACT_POWER) {
+            value = mantissa * EXACT_POWERS_OF_TEN[decimalExponent];
+        } else if (decimalExponent > MAX_EXACT_POWER && decimalExponent <= MAX_EXACT_POWER + 15) {
+            // Move the excess exponent into the mantissa while it stays exact, e.g. 12e25 = 12000e22
+            long scaled = mantissa;
+            int excess = decimalExponent - MAX_EXACT_POWER;
+            for (int k = 0; k < excess; k++) {
+                scaled *= 10;
+                if (scaled > MAX_EXACT_MANTISSA) {
+                    return fallback(text, start, end);
+                }
+            }
+            value = scaled * EXACT_POWERS_OF_TEN[MAX_EXACT_POWER];
+        } else {
+            return fallback(text, start, end);
+        }
+        return negative ? -value : value;
+    }
+
+    private static double fallback(CharSequence text, int start, int end) {
+        return Double.parseDouble(text.subSequence(start, end).toString());
+    }
+}
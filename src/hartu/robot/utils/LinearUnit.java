@@ -17,6 +17,43 @@ public enum LinearUnit {
         return (value * this.conversionFactorToMM) / targetUnit.conversionFactorToMM;
     }
 
+    /**
+     * Single factor taking a value in this unit to {@code targetUnit}. Multiplying by it may differ from
+     * {@link #convertTo} in the last bits; converting to the same unit is exactly 1.
+     */
+    public double conversionFactorTo(LinearUnit targetUnit) {
+        return this == targetUnit ? 1.0 : this.conversionFactorToMM / targetUnit.conversionFactorToMM;
+    }
+
+    /**
+     * Converts {@code len} values of {@code buf} from this unit to {@code targetUnit} in place: the values at
+     * {@code offset}, {@code offset + stride}, {@code offset + 2 * stride} and so on, e.g. stride 6 for one
+     * coordinate of back to back Cartesian points. The combined factor is computed once; with stride 1 the loop
+     * is a plain array multiply the JIT can vectorize.
+     * @throws IndexOutOfBoundsException before converting anything if the range does not fit {@code buf}.
+     */
+    public void convertInPlace(double[] buf, int offset, int len, int stride, LinearUnit targetUnit) {
+        if (offset < 0 || len < 0 || stride < 1 || (len > 0 && offset + (long) (len - 1) * stride >= buf.length)) {
+            throw new IndexOutOfBoundsException("Cannot convert " + len + " values from offset " + offset + " with stride " + stride + " in an array of " + buf.length + ".");
+        }
+        double factor = conversionFactorTo(targetUnit);
+        if (factor == 1.0) {
+            return;
+        }
+        if (stride == 1) {
+            int end = offset + len;
+            for (int i = offset; i < end; i++) {
+                buf[i] *= factor;
+            }
+            return;
+        }
+        // Counted, offset + len * stride may not fit an int when the stride runs past the last value
+        int i = offset;
+        for (int n = 0; n < len; n++, i += stride) {
+            buf[i] *= factor;
+        }
+    }
+
     public double getConversionFactorToMM() {
         return conversionFactorToMM;
     }
@@ -0,0 +1,126 @@
+package hartu.robot.utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses the points of very large messages on a fork/join pool for {@link CommandParser}.
+ * <p>
+ * One sequential scan finds the ',' point boundaries; the points are then parsed in chunks on the pool,
+ * each chunk writing straight into its slice of one pre-sized array. Errors are reported exactly like on
+ * the sequential path: the first malformed point in message order is parsed again on the calling thread,
+ * which logs and throws the usual exception.
+ */
+class ParallelPointParser
+{
+    // Below this many points the fork/join overhead outweighs the gain
+    static final int MIN_POINTS = 2048;
+    // Points parsed by one leaf task
+    private static final int POINTS_PER_TASK = 256;
+
+    // Worker threads are only started on first use
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private ParallelPointParser() {}
+
+    /**
+     * Whether a message with this many points should take the parallel path. Never on a single core.
+     */
+    static boolean isWorthwhile(int points) {
+        return points >= MIN_POINTS && POOL.getParallelism() > 1;
+    }
+
+    /**
+     * Parses the points in {@code [start, pointsEnd)}, where {@code pointsEnd} is the end left after dropping
+     * trailing empty points (below {@code start} if there are none).
+     * @return {@code valuesPerPoint} values per point, back to back.
+     * @throws IllegalArgumentException for the first malformed point.
+     */
+    static double[] parse(CharSequence message, int start, int pointsEnd, int valuesPerPoint) {
+        int[] pointStarts = findPointStarts(message, start, pointsEnd);
+        int pointCount = pointStarts.length - 1;
+        double[] values = new double[pointCount * valuesPerPoint];
+        AtomicInteger firstBadPoint = new AtomicInteger(Integer.MAX_VALUE);
+
+        POOL.invoke(new PointRangeTask(message, pointStarts, 0, pointCount, values, valuesPerPoint, firstBadPoint));
+
+        int badPoint = firstBadPoint.get();
+        if (badPoint != Integer.MAX_VALUE) {
+            // Throws and logs the same error as the sequential path
+            CommandParser.parsePoint(message, pointStarts[badPoint], pointStarts[badPoint + 1] - 1, new double[valuesPerPoint]);
+        }
+        return values;
+    }
+
+    /**
+     * Start of every point, plus {@code pointsEnd + 1} as the end marker, so point i is
+     * {@code [starts[i], starts[i + 1] - 1)}.
+     */
+    private static int[] findPointStarts(CharSequence message, int start, int pointsEnd) {
+        if (pointsEnd < start) {
+            return new int[] {pointsEnd + 1};
+        }
+        int delimiters = 0;
+        for (int i = start; i < pointsEnd; i++) {
+            if (message.charAt(i) == ',') {
+                delimiters++;
+            }
+        }
+        int[] pointStarts = new int[delimiters + 2];
+        pointStarts[0] = start;
+        int point = 1;
+        for (int i = start; i < pointsEnd; i++) {
+            if (message.charAt(i) == ',') {
+                pointStarts[point++] = i + 1;
+            }
+        }
+        pointStarts[point] = pointsEnd + 1;
+        return pointStarts;
+    }
+
+    private static final class PointRangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CharSequence message;
+        private final int[] pointStarts;
+        private final int from;
+        private final int to;
+        private final double[] values;
+        private final int valuesPerPoint;
+        private final AtomicInteger firstBadPoint;
+
+        PointRangeTask(CharSequence message, int[] pointStarts, int from, int to, double[] values, int valuesPerPoint, AtomicInteger firstBadPoint) {
+            this.message = message;
+            this.pointStarts = pointStarts;
+            this.from = from;
+            this.to = to;
+            this.values = values;
+            this.valuesPerPoint = valuesPerPoint;
+            this.firstBadPoint = firstBadPoint;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > POINTS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PointRangeTask(message, pointStarts, from, middle, values, valuesPerPoint, firstBadPoint),
+                          new PointRangeTask(message, pointStarts, middle, to, values, valuesPerPoint, firstBadPoint));
+                return;
+            }
+            for (int point = from; point < to; point++) {
+                if (point > firstBadPoint.get()) {
+                    // An earlier point already failed, the rest of this chunk is irrelevant
+                    return;
+                }
+                if (!CommandParser.tryParsePoint(message, pointStarts[point], pointStarts[point + 1] - 1, values, point * valuesPerPoint, valuesPerPoint)) {
+                    int current;
+                    while (point < (current = firstBadPoint.get()) && !firstBadPoint.compareAndSet(current, point)) {
+                        // Retry until this point is recorded or an earlier one is
+                    }
+                    return;
+                }
+            }
+        }
+    }
+}
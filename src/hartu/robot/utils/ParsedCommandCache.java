@@ -0,0 +1,86 @@
+package hartu.robot.utils;
+
+import hartu.robot.commands.ParsedCommand;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parsed commands remembered by {@link CommandParser} for messages that keep coming back with only a new ID,
+ * like the same IO switch or home position sent every cycle.
+ * <p>
+ * The key is the message text with its ID field cut out; the value is the parsed command of the first such
+ * message. {@link ParsedCommand} is immutable, so every hit shares that command's points and parameters and
+ * only gets a copy carrying its own ID. Bounded in entries, least recently used out first; long messages
+ * are not remembered at all, they rarely repeat and would hold on to their points.
+ */
+class ParsedCommandCache
+{
+    static final int DEFAULT_CAPACITY = 256;
+    // Longer messages are parsed every time
+    static final int MAX_MESSAGE_LENGTH = 1024;
+
+    private final Map<String, ParsedCommand> commands;
+    // Guarded by this, like commands
+    private long hits = 0;
+    private long misses = 0;
+
+    ParsedCommandCache(final int capacity) {
+        this.commands = new LinkedHashMap<String, ParsedCommand>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ParsedCommand> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * The message without the ID field {@code [idStart, idEnd)}, or null if the message is too long to be remembered.
+     */
+    static String key(CharSequence message, int length, int idStart, int idEnd) {
+        if (length > MAX_MESSAGE_LENGTH) {
+            return null;
+        }
+        if (idEnd >= length) {
+            return message.subSequence(0, idStart).toString();
+        }
+        return new StringBuilder(length - (idEnd - idStart)).append(message, 0, idStart).append(message, idEnd, length).toString();
+    }
+
+    /**
+     * The remembered command for {@code key}, carrying {@code id}, or null on a miss.
+     */
+    ParsedCommand get(String key, String id) {
+        ParsedCommand cached;
+        synchronized (this) {
+            cached = commands.get(key);
+            if (cached == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        return cached.withId(id);
+    }
+
+    synchronized void put(String key, ParsedCommand command) {
+        commands.put(key, command);
+    }
+
+    synchronized void clear() {
+        commands.clear();
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    synchronized String getStatistics() {
+        long lookups = hits + misses;
+        return "Entries: " + commands.size() + ", hits: " + hits + ", misses: " + misses + (lookups > 0 ? " (hit rate " + (100 * hits / lookups) + "%)" : "");
+    }
+}
@@ -0,0 +1,330 @@
+package hartu.robot.utils;
+
+import hartu.protocols.constants.ActionTypes;
+import hartu.protocols.constants.MovementType;
+import hartu.protocols.constants.ProtocolConstants;
+import hartu.robot.commands.MotionParameters;
+import hartu.robot.commands.ParsedCommand;
+import hartu.robot.commands.StreamingTrajectory;
+import hartu.robot.communication.server.Logger;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental parser for one streamed continuous motion,
+ * {@code STREAM|<action type>|<num points>|<tool>|<base>|<speed override>|<id>|<point>,<point>,...#}.
+ * <p>
+ * In the regular message the tool, base, speed and ID follow the points, so nothing can start before the
+ * whole message is in. The streamed variant moves them into a header; the parser is then fed the message
+ * bytes as they arrive, decodes every complete point straight into a {@link StreamingTrajectory} and
+ * hands the command out for execution as soon as the lookahead number of points is available. The rest
+ * of the trajectory keeps arriving while the robot is already moving.
+ * <p>
+ * Points are checked exactly like in {@link CommandParser}. Once the command has been handed out, an
+ * error further down the message fails its trajectory instead.
+ */
+public class StreamingCommandParser
+{
+    public static final int DEFAULT_LOOKAHEAD = 16;
+
+    private static final int MAX_HEADER_LENGTH = 1024;
+    // "STREAM" plus the six header fields, each closed by '|'
+    private static final int HEADER_DELIMITERS = 7;
+    private static final byte PRIMARY_DELIMITER = '|';
+    private static final char MULTI_POINT_DELIMITER = ',';
+
+    private final int lookahead;
+
+    private final byte[] header = new byte[MAX_HEADER_LENGTH];
+    private int headerLength = 0;
+    private int headerDelimiters = 0;
+
+    private String id;
+    private StreamingTrajectory trajectory;
+    private ParsedCommand command;
+    private double[] pointValues;
+    private final StringBuilder point = new StringBuilder(128);
+    // Empty point segments seen since the last point; only allowed at the very end, like with String.split
+    private int pendingEmptyPoints = 0;
+    private boolean anyPointSegment = false;
+
+    private int consumedBytes = 0;
+    private boolean handedOut = false;
+    private boolean failed = false;
+
+    /**
+     * @param lookahead Number of points that must be available before the command is handed out, at least 1.
+     */
+    public StreamingCommandParser(int lookahead)
+    {
+        if (lookahead < 1)
+        {
+            throw new IllegalArgumentException("Streaming lookahead must be at least 1 point. Got " + lookahead);
+        }
+        this.lookahead = lookahead;
+    }
+
+    /**
+     * Whether the bytes from {@code message}'s position on start a streamed message. Returns false while
+     * fewer bytes than the prefix have arrived.
+     */
+    public static boolean isStreamedMessage(ByteBuffer message)
+    {
+        String prefix = ProtocolConstants.STREAM_MESSAGE_PREFIX;
+        if (message.remaining() < prefix.length())
+        {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++)
+        {
+            if (message.get(message.position() + i) != prefix.charAt(i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Consumes the next bytes of the message, from the buffer's position to its limit.
+     * @return The command, the first time it becomes ready for execution; otherwise null.
+     * @throws IllegalArgumentException if the message is invalid. The parser ignores any further input.
+     */
+    public ParsedCommand feed(ByteBuffer bytes)
+    {
+        if (failed)
+        {
+            skipRemaining(bytes);
+            return null;
+        }
+        try
+        {
+            while (bytes.hasRemaining() && !failed)
+            {
+                byte b = bytes.get();
+                consumedBytes++;
+                if (trajectory == null)
+                {
+                    appendHeaderByte(b);
+                }
+                else if (b == MULTI_POINT_DELIMITER)
+                {
+                    finishPoint();
+                }
+                else
+                {
+                    point.append((char) (b & 0xFF));
+                }
+            }
+            if (failed)
+            {
+                skipRemaining(bytes);
+                return null;
+            }
+            return handOutIfReady(false);
+        }
+        catch (IllegalArgumentException e)
+        {
+            fail(e.getMessage());
+            skipRemaining(bytes);
+            throw e;
+        }
+    }
+
+    /**
+     * Called once the terminator has been received. Parses the last point and checks NUM_POINTS.
+     * @return The command if it had not been handed out yet, otherwise null.
+     * @throws IllegalArgumentException if the message is invalid.
+     */
+    public ParsedCommand finish()
+    {
+        if (failed || (trajectory != null && trajectory.getFailure() != null))
+        {
+            failed = true;
+            return null;
+        }
+        try
+        {
+            if (trajectory == null)
+            {
+                throw error("Streamed command ended inside its header. Expected '" + ProtocolConstants.STREAM_MESSAGE_PREFIX + "<action type>|<num points>|<tool>|<base>|<speed override>|<id>|<points>'.");
+            }
+            if (point.length() > 0 || !anyPointSegment)
+            {
+                finishPoint();
+            }
+            int parsedPoints = trajectory.getAvailablePoints();
+            if (parsedPoints != trajectory.getExpectedPoints())
+            {
+                throw error("Parsed NUM_POINTS (" + trajectory.getExpectedPoints() + ") does not match actual parsed " + pointKind() + " points (" + parsedPoints + ").");
+            }
+            trajectory.complete();
+            return handOutIfReady(true);
+        }
+        catch (IllegalArgumentException e)
+        {
+            fail(e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Gives up on the message, e.g. because the client disconnected in the middle of it.
+     */
+    public void abort(String reason)
+    {
+        if (!failed)
+        {
+            fail(reason);
+        }
+    }
+
+    /**
+     * Whether the command has already been handed out for execution.
+     */
+    public boolean isHandedOut()
+    {
+        return handedOut;
+    }
+
+    /**
+     * The command ID, or null while the header has not been parsed.
+     */
+    public String getId()
+    {
+        return id;
+    }
+
+    /**
+     * Number of message bytes fed so far, the offset at which the next {@link #feed} continues.
+     */
+    public int getConsumedBytes()
+    {
+        return consumedBytes;
+    }
+
+    private void appendHeaderByte(byte b)
+    {
+        if (headerLength == header.length)
+        {
+            throw error("Streamed command header exceeds " + MAX_HEADER_LENGTH + " bytes.");
+        }
+        header[headerLength++] = b;
+        if (b == PRIMARY_DELIMITER && ++headerDelimiters == HEADER_DELIMITERS)
+        {
+            parseHeader(new String(header, 0, headerLength - 1, ProtocolConstants.CHARSET));
+        }
+    }
+
+    private void parseHeader(String headerText)
+    {
+        // STREAM|action|numPoints|tool|base|speed|id, the trailing '|' already stripped
+        String[] fields = headerText.split(ProtocolConstants.PRIMARY_DELIMITER, -1);
+        ActionTypes actionType;
+        int numPoints;
+        try
+        {
+            actionType = ActionTypes.fromValue(Integer.parseInt(fields[1]));
+            numPoints = Integer.parseInt(fields[2]);
+        }
+        catch (NumberFormatException e)
+        {
+            throw error("Invalid number format for ActionType or NumPoints in streamed command: " + e.getMessage());
+        }
+        id = fields[6];
+
+        MovementType movementType = MovementType.fromActionType(actionType);
+        if (!movementType.isContinuous())
+        {
+            throw error("Streaming is only supported for continuous motions (PTP_AXIS_C, PTP_FRAME_C, LIN_FRAME_C). Got: " + actionType + " (" + actionType.getValue() + ")");
+        }
+
+        double speedOverride = 0.0;
+        try
+        {
+            speedOverride = DecimalParser.parseDouble(fields[5]);
+        }
+        catch (NumberFormatException e)
+        {
+            Logger.getInstance().log("PARSER", "Warning: Could not parse MotionParameters (NumberFormat). Using defaults. " + e.getMessage());
+        }
+        MotionParameters motionParameters = new MotionParameters(speedOverride, fields[3], fields[4], true, numPoints);
+
+        int valuesPerPoint = movementType.isAxisMotion() ? CommandParser.AXIS_VALUES_PER_POINT : CommandParser.CARTESIAN_VALUES_PER_POINT;
+        pointValues = new double[valuesPerPoint];
+        trajectory = new StreamingTrajectory(valuesPerPoint, numPoints);
+        command = ParsedCommand.forStreamedMovement(actionType, id, trajectory, motionParameters);
+
+        if (Logger.getInstance().isEnabled("PARSER"))
+        {
+            Logger.getInstance().log("PARSER", "Streaming command ID " + id + ": " + actionType + " with " + numPoints + " points, starting after " + Math.min(lookahead, numPoints) + ".");
+        }
+    }
+
+    private void finishPoint()
+    {
+        anyPointSegment = true;
+        if (point.length() == 0)
+        {
+            pendingEmptyPoints++;
+            return;
+        }
+        if (pendingEmptyPoints > 0)
+        {
+            // An empty point followed by another point: rejected like CommandParser does
+            CommandParser.parsePoint("", 0, 0, pointValues);
+        }
+        CommandParser.parsePoint(point, 0, point.length(), pointValues);
+        point.setLength(0);
+        if (trajectory.getAvailablePoints() == trajectory.getExpectedPoints())
+        {
+            throw error("Parsed NUM_POINTS (" + trajectory.getExpectedPoints() + ") does not match actual parsed " + pointKind() + " points (more than " + trajectory.getExpectedPoints() + ").");
+        }
+        if (!trajectory.appendPoint(pointValues))
+        {
+            // Failed from outside, e.g. refused by a full queue or given up by the executor: skip the rest
+            failed = true;
+        }
+    }
+
+    private ParsedCommand handOutIfReady(boolean messageComplete)
+    {
+        if (handedOut || trajectory == null)
+        {
+            return null;
+        }
+        int expectedPoints = trajectory.getExpectedPoints();
+        if (!messageComplete && (expectedPoints == 0 || trajectory.getAvailablePoints() < Math.min(lookahead, expectedPoints)))
+        {
+            return null;
+        }
+        handedOut = true;
+        return command;
+    }
+
+    private void skipRemaining(ByteBuffer bytes)
+    {
+        consumedBytes += bytes.remaining();
+        bytes.position(bytes.limit());
+    }
+
+    private void fail(String reason)
+    {
+        failed = true;
+        if (trajectory != null)
+        {
+            trajectory.fail(reason);
+        }
+    }
+
+    private String pointKind()
+    {
+        return pointValues.length == CommandParser.AXIS_VALUES_PER_POINT ? "axis" : "Cartesian";
+    }
+
+    private static IllegalArgumentException error(String errorMsg)
+    {
+        Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+        return new IllegalArgumentException(errorMsg);
+    }
+}
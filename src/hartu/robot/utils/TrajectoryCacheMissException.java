@@ -0,0 +1,28 @@
+package hartu.robot.utils;
+
+/**
+ * Thrown by {@link CommandParser} when a command names a trajectory hash that is not (or no longer) in the
+ * {@link hartu.robot.commands.TrajectoryCache}. Unlike other parsing errors the client can recover by
+ * uploading the trajectory again and resending the command, so it is answered with its own reply.
+ */
+public class TrajectoryCacheMissException extends IllegalArgumentException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final String commandId;
+    private final String hash;
+
+    public TrajectoryCacheMissException(String commandId, String hash) {
+        super("Trajectory " + hash + " is not cached. Command ID: " + commandId);
+        this.commandId = commandId;
+        this.hash = hash;
+    }
+
+    public String getCommandId() {
+        return commandId;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+}
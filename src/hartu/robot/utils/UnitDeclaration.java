@@ -0,0 +1,72 @@
+package hartu.robot.utils;
+
+import hartu.robot.commands.TrajectoryBuffer;
+import hartu.robot.communication.server.Logger;
+
+/**
+ * Units a message declares for its points, "UNITS=&lt;linear unit&gt;;&lt;angular unit&gt;" like "UNITS=M;RADIAN",
+ * so clients can send positions as they have them (ROS uses metres and radians).
+ * <p>
+ * {@link CommandParser} converts the points into the units the robot works in, {@link #ROBOT_LINEAR_UNIT} and
+ * {@link #ROBOT_ANGULAR_UNIT}, right after parsing them, with one batched pass per value column. Messages
+ * without a declaration are taken as already being in robot units.
+ */
+final class UnitDeclaration
+{
+    static final LinearUnit ROBOT_LINEAR_UNIT = LinearUnit.MM;
+    static final AngularUnit ROBOT_ANGULAR_UNIT = AngularUnit.RADIAN;
+
+    static final String PREFIX = "UNITS=";
+    private static final char UNIT_DELIMITER = ';';
+
+    private final LinearUnit linearUnit;
+    private final AngularUnit angularUnit;
+
+    private UnitDeclaration(LinearUnit linearUnit, AngularUnit angularUnit) {
+        this.linearUnit = linearUnit;
+        this.angularUnit = angularUnit;
+    }
+
+    /**
+     * Parses the field {@code [start, end)}; null if it is not a unit declaration, other fields there were always ignored.
+     * @throws IllegalArgumentException for a malformed declaration or an unknown unit.
+     */
+    static UnitDeclaration parse(CharSequence message, int start, int end) {
+        if (end - start < PREFIX.length() || !PREFIX.contentEquals(message.subSequence(start, start + PREFIX.length()))) {
+            return null;
+        }
+        String declaration = message.subSequence(start + PREFIX.length(), end).toString();
+        int delimiter = declaration.indexOf(UNIT_DELIMITER);
+        try {
+            if (delimiter < 0) {
+                throw new IllegalArgumentException("Expected <linear unit>;<angular unit>.");
+            }
+            return new UnitDeclaration(LinearUnit.fromString(declaration.substring(0, delimiter).trim()), AngularUnit.fromString(declaration.substring(delimiter + 1).trim()));
+        } catch (IllegalArgumentException e) {
+            String errorMsg = "Invalid unit declaration '" + PREFIX + declaration + "': " + e.getMessage();
+            Logger.getInstance().log("PARSER", "Error: " + errorMsg);
+            throw new IllegalArgumentException(errorMsg, e);
+        }
+    }
+
+    /**
+     * Converts {@code points} back to back points of {@code values} to robot units in place: every joint for
+     * axis points, X;Y;Z and A;B;C for Cartesian ones.
+     */
+    void toRobotUnits(double[] values, int points, boolean cartesian) {
+        if (!cartesian) {
+            angularUnit.convertInPlace(values, 0, points * TrajectoryBuffer.AXIS_VALUES_PER_POINT, 1, ROBOT_ANGULAR_UNIT);
+            return;
+        }
+        int stride = TrajectoryBuffer.CARTESIAN_VALUES_PER_POINT;
+        for (int i = 0; i < 3; i++) {
+            linearUnit.convertInPlace(values, i, points, stride, ROBOT_LINEAR_UNIT);
+            angularUnit.convertInPlace(values, 3 + i, points, stride, ROBOT_ANGULAR_UNIT);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return PREFIX + linearUnit + UNIT_DELIMITER + angularUnit;
+    }
+}
@@ -2,21 +2,31 @@ package hartu.tests;
 
 import com.kuka.generated.ioAccess.Ethercat_x44IOGroup;
 import com.kuka.generated.ioAccess.IOFlangeIOGroup;
-import com.kuka.roboticsAPI.applicationModel.tasks.CycleBehavior;
-import com.kuka.roboticsAPI.applicationModel.tasks.RoboticsAPICyclicBackgroundTask;
+import com.kuka.roboticsAPI.applicationModel.tasks.RoboticsAPIBackgroundTask;
 import com.kuka.roboticsAPI.controllerModel.Controller;
 import com.kuka.roboticsAPI.deviceModel.LBR;
 import hartu.robot.commands.ParsedCommand;
 import hartu.robot.commands.io.IoCommandData;
 import hartu.robot.communication.server.CommandQueue;
 import hartu.robot.communication.server.CommandResultHolder;
+import hartu.robot.communication.server.CommandStage;
 import hartu.robot.communication.server.Logger;
 
 import javax.inject.Inject;
 import java.util.concurrent.TimeUnit;
 
-public class TestExecutingServer extends RoboticsAPICyclicBackgroundTask
+/**
+ * Executes commands from the {@link CommandQueue} as soon as they land in it.
+ * <p>
+ * The task blocks on the queue instead of polling it on a timer, so an idle executor picks a command up
+ * within the time it takes to wake a thread. The wait is bounded only so that a disposed task notices it
+ * has to stop. How long each command waited for the executor is kept as its dispatch latency, see
+ * {@link #getStatistics()}.
+ */
+public class TestExecutingServer extends RoboticsAPIBackgroundTask
 {
+    // Only bounds how long dispose() waits for the loop, a queued command wakes the task right away
+    private static final long IDLE_WAIT_MILLIS = 100;
 
     @Inject
     private Controller robotController;
@@ -29,84 +39,127 @@ public class TestExecutingServer extends RoboticsAPICyclicBackgroundTask
     @Inject
     private Ethercat_x44IOGroup toolControlIO;
 
+    private volatile boolean isRunning = true;
+    // Written by the executing thread only
+    private long lastCompletedNanos = 0;
+    private volatile long commandsDispatched = 0;
+    private volatile long totalDispatchLatencyNanos = 0;
+    private volatile long maxDispatchLatencyNanos = 0;
+
     @Override
     public void initialize()
     {
-
-        initializeCyclic(0, 50, TimeUnit.MILLISECONDS, CycleBehavior.BestEffort);
-
         Logger.getInstance().log("ROBOT_EXEC", "Initializing. Ready to take commands from queue.");
     }
 
     @Override
-    public void runCyclic()
+    public void run()
     {
+        while (isRunning && !Thread.currentThread().isInterrupted())
+        {
+            CommandResultHolder resultHolder = CommandQueue.pollCommand(IDLE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            if (resultHolder != null)
+            {
+                execute(resultHolder);
+                lastCompletedNanos = System.nanoTime();
+            }
+        }
+        Logger.getInstance().log("ROBOT_EXEC", "Stopped taking commands. " + getStatistics());
+    }
 
-        CommandResultHolder resultHolder = CommandQueue.pollCommand(0, TimeUnit.MILLISECONDS);
+    private void execute(CommandResultHolder resultHolder)
+    {
+        long dispatchLatencyNanos = recordDispatchLatency(resultHolder);
+        resultHolder.markStage(CommandStage.STARTED);
+        ParsedCommand command = resultHolder.getCommand();
+        Logger.getInstance().log("ROBOT_EXEC", "Received command ID " + command.getId() + " from queue for execution. Dispatch latency: " + TimeUnit.NANOSECONDS.toMicros(dispatchLatencyNanos) + " us");
+        boolean executionSuccess = false;
 
-        if (resultHolder != null)
+        try
         {
-            ParsedCommand command = resultHolder.getCommand();
-            Logger.getInstance().log("ROBOT_EXEC", "Received command ID " + command.getId() + " from queue for execution.");
-            boolean executionSuccess = false;
-
-            try
+            if (command.isIoCommand())
             {
-                if (command.isIoCommand())
-                {
-                    IoCommandData ioData = command.getIoCommandData();
-                    int ioPin = ioData.getIoPin();
-                    boolean ioState = ioData.getIoState();
-
-                    Logger.getInstance().log("ROBOT_EXEC", "Executing IO command. Pin: " + ioPin + ", State: " + ioState);
-
-                    switch (ioPin)
-                    {
-                        case 1:
-                            gimaticIO.setDO_Flange7(ioState);
-                            Logger.getInstance().log("ROBOT_EXEC", "Set DO_Flange7 to " + ioState);
-                            executionSuccess = true;
-                            break;
-                        case 2:
-                            toolControlIO.setOutput2(ioState);
-                            Logger.getInstance().log("ROBOT_EXEC", "Set Ethercat_x44 Output2 to " + ioState);
-                            executionSuccess = true;
-                            break;
-                        case 3:
-                            toolControlIO.setOutput1(ioState);
-                            Logger.getInstance().log("ROBOT_EXEC", "Set Ethercat_x44 Output1 to " + ioState);
-                            executionSuccess = true;
-                            break;
-                        default:
-                            Logger.getInstance().log(
-                                    "ROBOT_EXEC", "Error: Invalid IO pin in parsed command for direct mapping: " + ioPin);
-                    }
-                }
-                else
-                {
-                    Logger.getInstance().log(
-                            "ROBOT_EXEC", "Warning: Received non-IO command. Only IO commands are supported in this test: " + command.getActionType().name());
+                IoCommandData ioData = command.getIoCommandData();
+                int ioPin = ioData.getIoPin();
+                boolean ioState = ioData.getIoState();
+
+                Logger.getInstance().log("ROBOT_EXEC", "Executing IO command. Pin: " + ioPin + ", State: " + ioState);
 
+                switch (ioPin)
+                {
+                    case 1:
+                        gimaticIO.setDO_Flange7(ioState);
+                        Logger.getInstance().log("ROBOT_EXEC", "Set DO_Flange7 to " + ioState);
+                        executionSuccess = true;
+                        break;
+                    case 2:
+                        toolControlIO.setOutput2(ioState);
+                        Logger.getInstance().log("ROBOT_EXEC", "Set Ethercat_x44 Output2 to " + ioState);
+                        executionSuccess = true;
+                        break;
+                    case 3:
+                        toolControlIO.setOutput1(ioState);
+                        Logger.getInstance().log("ROBOT_EXEC", "Set Ethercat_x44 Output1 to " + ioState);
+                        executionSuccess = true;
+                        break;
+                    default:
+                        Logger.getInstance().log(
+                                "ROBOT_EXEC", "Error: Invalid IO pin in parsed command for direct mapping: " + ioPin);
                 }
             }
-            catch (Exception e)
-            {
-                Logger.getInstance().log("ROBOT_EXEC", "Error: Exception during command execution for ID " + command.getId() + ": " + e.getMessage());
-            }
-            finally
+            else
             {
+                Logger.getInstance().log(
+                        "ROBOT_EXEC", "Warning: Received non-IO command. Only IO commands are supported in this test: " + command.getActionType().name());
 
-                resultHolder.setSuccess(executionSuccess);
-                resultHolder.getLatch().countDown();
-                Logger.getInstance().log("ROBOT_EXEC", "Signaled completion for command ID " + command.getId() + ". Success: " + executionSuccess);
             }
         }
+        catch (Exception e)
+        {
+            Logger.getInstance().log("ROBOT_EXEC", "Error: Exception during command execution for ID " + command.getId() + ": " + e.getMessage());
+        }
+        finally
+        {
+
+            resultHolder.complete(executionSuccess);
+            Logger.getInstance().log("ROBOT_EXEC", "Signaled completion for command ID " + command.getId() + ". Success: " + executionSuccess);
+        }
+    }
+
+    /**
+     * Time the command was ready but not yet started: from landing in the queue, or from the end of the
+     * previous command if it had to wait behind it, until now. Waiting behind other commands is not counted.
+     */
+    private long recordDispatchLatency(CommandResultHolder resultHolder)
+    {
+        long startNanos = System.nanoTime();
+        long readyNanos = resultHolder.getEnqueuedNanos();
+        if (readyNanos == 0 || lastCompletedNanos - readyNanos > 0)
+        {
+            readyNanos = lastCompletedNanos != 0 ? lastCompletedNanos : startNanos;
+        }
+        long latency = Math.max(0, startNanos - readyNanos);
+        commandsDispatched++;
+        totalDispatchLatencyNanos += latency;
+        if (latency > maxDispatchLatencyNanos)
+        {
+            maxDispatchLatencyNanos = latency;
+        }
+        return latency;
+    }
+
+    public String getStatistics()
+    {
+        long dispatched = commandsDispatched;
+        long averageMicros = dispatched == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalDispatchLatencyNanos / dispatched);
+        return "Executed: " + dispatched + ", avg dispatch latency: " + averageMicros + " us, max: " + TimeUnit.NANOSECONDS.toMicros(maxDispatchLatencyNanos) + " us";
     }
 
     @Override
     public void dispose()
     {
-        Logger.getInstance().log("ROBOT_EXEC", "Disposing...");
+        Logger.getInstance().log("ROBOT_EXEC", "Disposing... " + getStatistics());
+        isRunning = false;
         super.dispose();
     }
 }